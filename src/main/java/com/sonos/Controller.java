@@ -9,7 +9,6 @@ import javafx.scene.image.*;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.*;
-import org.apache.commons.scxml2.io.SCXMLReader;
 import org.apache.commons.scxml2.model.*;
 import org.controlsfx.control.PropertySheet;
 import org.controlsfx.dialog.ExceptionDialog;
@@ -239,11 +238,11 @@ public final class Controller {
 		parent.setExpanded(true);
 	}
 
-	private void initialize(String path) throws IOException, ModelException, XMLStreamException, ParseException {
+	private void initialize(String path, byte[] scxmlBytes) throws IOException, ModelException, XMLStreamException, ParseException {
 
 		File file = new File(path);
 		rootDirectory = file.toPath().getParent();
-		SCXML scxml = SCXMLReader.read(file.toURI().toURL());
+		SCXML scxml = SCXMLValidator.read(file, scxmlBytes);
 		Datamodel dm = scxml.getDatamodel();
 		String jsonPath = null;
 		if (dm != null) {
@@ -295,14 +294,12 @@ public final class Controller {
 		Path filePath = file.toPath();
 		String path = filePath.toString();
 		try {
-			SCXMLValidator.validate(path);
+			// Load our xml once and show it.
+			byte[] scxmlBytes = Files.readAllBytes(filePath);
+			xmlViewer.setText(new String(scxmlBytes));
 
-			// Load our xml and show it.
-			String scxmlText = new String(Files.readAllBytes(filePath));
-			xmlViewer.setText(scxmlText);
-
-			// Take that string and parse it.
-			this.initialize(path);
+			// Validate and parse those bytes in a single pass.
+			this.initialize(path, scxmlBytes);
 
 			// See if this path is already in the MRU. If so, remove all instances of it
 			// and let it be inserted at the top again.
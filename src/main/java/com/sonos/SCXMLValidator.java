@@ -1,25 +1,27 @@
 package com.sonos;
 
-import org.w3c.dom.ls.*;
+import org.apache.commons.scxml2.env.URLResolver;
+import org.apache.commons.scxml2.io.SCXMLReader;
+import org.apache.commons.scxml2.io.SCXMLSchema;
+import org.apache.commons.scxml2.model.ModelException;
+import org.apache.commons.scxml2.model.SCXML;
 import org.xml.sax.*;
 
-import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.*;
 import java.io.*;
+import java.net.URL;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.*;
 
 public class SCXMLValidator {
 
 	public static void validate(String pathToInputXML) throws SAXException, IOException {
-		// Create the Validator.
-		SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-		factory.setResourceResolver(new ResourceResolver());
-
-		String xsdPath = "/scxml.xsd";
-		InputStream resourceAsStream = SCXMLValidator.class.getResourceAsStream(xsdPath);
-
-		Schema schema = factory.newSchema(new StreamSource(resourceAsStream));
-		Validator validator = schema.newValidator();
+		// This thread's Validator for the SCXML schema, which is only compiled once.
+		Validator validator = SCXMLSchema.getValidator();
 
 		System.out.println("Validating: " + pathToInputXML);
 		StreamSource source = new StreamSource(new File(pathToInputXML));
@@ -33,6 +35,106 @@ public class SCXMLValidator {
 		}
 	}
 
+	/**
+	 * Validates and parses a chart in a single pass over its content, reporting the validation errors like validate().
+	 */
+	public static SCXML read(File file, byte[] content) throws IOException, ModelException, XMLStreamException {
+		System.out.println("Validating: " + file.getPath());
+		BaseErrorHandler errorHandler = new CommandLineErrorHandler(new PrintWriter(System.err, true));
+
+		URL url = file.toURI().toURL();
+		SCXMLReader.Configuration configuration = new SCXMLReader.Configuration(null, null, null, null, null, null, null,
+				url.toString(), true, new URLResolver(url), null, null, false);
+		configuration.setValidationErrorHandler(errorHandler);
+		if (Runtime.getRuntime().availableProcessors() > 1) {
+			// parse the included fragments concurrently, their validation errors are reported in document order
+			configuration.setIncludePool(ForkJoinPool.commonPool());
+		}
+		SCXML scxml = SCXMLReader.read(new ByteArrayInputStream(content), configuration);
+
+		if (errorHandler.getErrorCount() == 0) {
+			System.out.println("Success!");
+		}
+		return scxml;
+	}
+
+	/**
+	 * Validates all charts (.scxml and .xml files) in a directory and its subdirectories, in parallel.
+	 *
+	 * @return the result per chart, ordered by path
+	 */
+	public static List<Result> validateDirectory(Path directory) throws IOException {
+		List<Path> charts;
+		try (Stream<Path> paths = Files.walk(directory)) {
+			charts = paths.filter(Files::isRegularFile).filter(SCXMLValidator::isChart).sorted().collect(Collectors.toList());
+		}
+		// A pool of our own, so the per-thread validators are released together with its threads.
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			return pool.submit(() -> charts.parallelStream().map(SCXMLValidator::validateChart).collect(Collectors.toList())).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static boolean isChart(Path path) {
+		String name = path.getFileName().toString().toLowerCase();
+		return name.endsWith(".scxml") || name.endsWith(".xml");
+	}
+
+	private static Result validateChart(Path chart) {
+		StringWriter messages = new StringWriter();
+		BaseErrorHandler errorHandler = new CommandLineErrorHandler(new PrintWriter(messages, true));
+		try {
+			Validator validator = SCXMLSchema.getValidator();
+			validator.setErrorHandler(errorHandler);
+			validator.validate(new StreamSource(chart.toFile()));
+		} catch (SAXException | IOException e) {
+			// Fatal parse errors have already been reported to the error handler, anything else (like an unreadable file) not.
+			if (errorHandler.getErrorCount() == 0) {
+				errorHandler._errorWriter.println("FATAL ERROR: " + e.getMessage());
+				errorHandler.errorCount++;
+			}
+		}
+		return new Result(chart, errorHandler.getErrorCount(), messages.toString());
+	}
+
+	/**
+	 * The validation result of one chart.
+	 */
+	public static class Result {
+		private final Path path;
+		private final int errorCount;
+		private final List<String> messages;
+
+		private Result(Path path, int errorCount, String messages) {
+			this.path = path;
+			this.errorCount = errorCount;
+			this.messages = messages.isEmpty()
+					? Collections.emptyList()
+					: Collections.unmodifiableList(Arrays.asList(messages.split("\\R")));
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		public synchronized int getErrorCount() {
+			return errorCount;
+		}
+
+		public boolean isValid() {
+			return errorCount == 0;
+		}
+
+		/**
+		 * @return the reported errors and warnings, one per line
+		 */
+		public List<String> getMessages() {
+			return messages;
+		}
+	}
+
 	private static abstract class BaseErrorHandler implements org.xml.sax.ErrorHandler {
 		protected PrintWriter _errorWriter = null;
 		protected int errorCount = 0;
@@ -51,7 +153,7 @@ public class SCXMLValidator {
 		}
 
 		@Override
-		public void fatalError(SAXParseException exception) throws SAXException {
+		public synchronized void fatalError(SAXParseException exception) throws SAXException {
 			_errorWriter.println("FATAL ERROR: " + exception.getMessage());
 			errorCount++;
 		}
@@ -63,7 +165,7 @@ public class SCXMLValidator {
 		}
 
 		@Override
-		public void error(SAXParseException exception) throws SAXException {
+		public synchronized void error(SAXParseException exception) throws SAXException {
 			String fullMessage = exception.getMessage();
 			String liteMessage = fullMessage.replace("\"http://www.w3.org/2005/07/scxml\":", "");
 			liteMessage = liteMessage.replace(", WC[##other:\"http://www.w3.org/2005/07/scxml\"", "");
@@ -86,102 +188,5 @@ public class SCXMLValidator {
 			errorCount++;
 		}
 	}
-
-	/**
-	 * Custom implementation to find embedded XSD resources.
-	 */
-	private static class ResourceResolver implements LSResourceResolver {
-
-		public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
-			// note: in this sample, the XSD's are expected to be in the root of the classpath
-			InputStream resourceAsStream = this.getClass().getClassLoader().getResourceAsStream(systemId);
-			return new Input(publicId, systemId, resourceAsStream);
-		}
-
-	}
-
-	/**
-	 * Custom implementation to find embedded XSD resources.
-	 */
-	private static class Input implements LSInput {
-
-		private String publicId;
-		private String systemId;
-		final private BufferedInputStream inputStream;
-
-		public Input(String publicId, String sysId, InputStream input) {
-			this.publicId = publicId;
-			this.systemId = sysId;
-			this.inputStream = new BufferedInputStream(input);
-		}
-
-		public String getPublicId() {
-			return publicId;
-		}
-
-		public void setPublicId(String publicId) {
-			this.publicId = publicId;
-		}
-
-		public String getBaseURI() {
-			return null;
-		}
-
-		public void setBaseURI(String baseURI) {
-		}
-
-		public InputStream getByteStream() {
-			return null;
-		}
-
-		public void setByteStream(InputStream byteStream) {
-		}
-
-		public boolean getCertifiedText() {
-			return false;
-		}
-
-		public void setCertifiedText(boolean certifiedText) {
-		}
-
-		public Reader getCharacterStream() {
-			return null;
-		}
-
-		public void setCharacterStream(Reader characterStream) {
-		}
-
-		public String getEncoding() {
-			return null;
-		}
-
-		public void setEncoding(String encoding) {
-		}
-
-		public String getStringData() {
-			synchronized (inputStream) {
-				try {
-					byte[] input = new byte[inputStream.available()];
-					inputStream.read(input);
-					return new String(input);
-				} catch (IOException e) {
-					e.printStackTrace();
-					System.out.println("Exception " + e);
-					return null;
-				}
-			}
-		}
-
-		public void setStringData(String stringData) {
-		}
-
-		public String getSystemId() {
-			return systemId;
-		}
-
-		public void setSystemId(String systemId) {
-			this.systemId = systemId;
-		}
-	}
 }
 
@@ -61,10 +61,8 @@ final class StateMachine {
 	 */
 	public void fireEvent(String event) throws ModelException {
 		TriggerEvent te = new TriggerEvent(event, TriggerEvent.SIGNAL_EVENT);
+		// Listeners are notified once the macro step completes, see initialize().
 		exec.triggerEvent(te);
-
-		// Notify listeners there may be a new state.
-		onActiveStatesChanged();
 	}
 
 	/**
@@ -137,6 +135,9 @@ final class StateMachine {
 
 		// Notify listeners there may be a new state.
 		onActiveStatesChanged();
+
+		// From now on, update the active states once per macro step.
+		exec.addMacroStepListener(result -> onActiveStatesChanged(result.getActiveStates()));
 	}
 
 	/**
@@ -161,8 +162,16 @@ final class StateMachine {
 	 * Announce that something about the active states have changed so UI can update.
 	 */
 	private void onActiveStatesChanged() {
+		onActiveStatesChanged(exec.getStatus().getActiveStates());
+	}
+
+	/**
+	 * Announce that the active states have changed so UI can update.
+	 *
+	 * @param states The active states.
+	 */
+	private void onActiveStatesChanged(Set<EnterableState> states) {
 		activeStatesProperty.clear();
-		Set<EnterableState> states = exec.getStatus().getActiveStates();
 		// Turn the list into a list of StateModels
 		activeStatesProperty.addAll(states.stream().map(TransitionsModel::new).collect(Collectors.toList()));
 
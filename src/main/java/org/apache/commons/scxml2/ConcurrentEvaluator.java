@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2;
+
+/**
+ * Optional capability of an {@link Evaluator} which supports the concurrent evaluation of conditions.
+ * <p>
+ * Evaluators not implementing this interface are assumed not to be thread-safe, and are never used concurrently by
+ * the SCXML engine.
+ * </p>
+ *
+ * @see SCXMLExecutor#setParallelRegionPool(java.util.concurrent.ForkJoinPool)
+ */
+public interface ConcurrentEvaluator extends Evaluator {
+
+    /**
+     * Returns whether {@link #evalCond(Context, String)} may be invoked concurrently by multiple threads, for
+     * different contexts of the same state machine instance, as long as no other evaluation or modification of
+     * the datamodel takes place.
+     *
+     * @return true if conditions can be evaluated concurrently
+     */
+    boolean isConcurrentEvalCondSupported();
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.Transition;
+
+/**
+ * The immutable outcome of a macro step of a state machine, as delivered
+ * to {@link SCXMLMacroStepListener}s.
+ * <p>
+ * The exited and entered states, and the transitions taken, are recorded
+ * in the order in which they were processed, across all micro steps of the
+ * macro step. A state therefore may be both exited and entered (possibly
+ * more than once) within a single macro step.
+ * </p>
+ */
+public final class MacroStepResult {
+
+    private final TriggerEvent event;
+    private final List<EnterableState> exitedStates;
+    private final List<EnterableState> enteredStates;
+    private final List<Transition> transitions;
+    private final Set<EnterableState> states;
+    private final Set<EnterableState> activeStates;
+    private final boolean running;
+
+    /**
+     * Constructor.
+     *
+     * @param event The external event processed, or null for the initial macro step
+     * @param exitedStates The exited states, in exit order
+     * @param enteredStates The entered states, in entry order
+     * @param transitions The transitions taken, in execution order
+     * @param configuration The resulting state configuration
+     * @param running Whether the state machine is still running
+     */
+    public MacroStepResult(final TriggerEvent event, final List<EnterableState> exitedStates,
+                           final List<EnterableState> enteredStates, final List<Transition> transitions,
+                           final StateConfiguration configuration, final boolean running) {
+        this.event = event;
+        this.exitedStates = Collections.unmodifiableList(new ArrayList<EnterableState>(exitedStates));
+        this.enteredStates = Collections.unmodifiableList(new ArrayList<EnterableState>(enteredStates));
+        this.transitions = Collections.unmodifiableList(new ArrayList<Transition>(transitions));
+        this.states = Collections.unmodifiableSet(new LinkedHashSet<EnterableState>(configuration.getStates()));
+        this.activeStates = Collections.unmodifiableSet(
+                new LinkedHashSet<EnterableState>(configuration.getActiveStates()));
+        this.running = running;
+    }
+
+    /**
+     * @return Returns the external event processed, or null for the initial macro step
+     */
+    public TriggerEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * @return Returns the (unmodifiable) list of exited states, in exit order
+     */
+    public List<EnterableState> getExitedStates() {
+        return exitedStates;
+    }
+
+    /**
+     * @return Returns the (unmodifiable) list of entered states, in entry order
+     */
+    public List<EnterableState> getEnteredStates() {
+        return enteredStates;
+    }
+
+    /**
+     * @return Returns the (unmodifiable) list of transitions taken, in execution order
+     */
+    public List<Transition> getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * @return Returns the (unmodifiable) resulting atomic states configuration, in document order
+     */
+    public Set<EnterableState> getStates() {
+        return states;
+    }
+
+    /**
+     * @return Returns the (unmodifiable) resulting active states configuration, including the atomic states and
+     * their ancestors, in document order
+     */
+    public Set<EnterableState> getActiveStates() {
+        return activeStates;
+    }
+
+    /**
+     * @return Returns true if the state machine still is running after the macro step
+     */
+    public boolean isRunning() {
+        return running;
+    }
+}
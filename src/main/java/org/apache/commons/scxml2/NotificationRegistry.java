@@ -16,10 +16,7 @@
  */
 package org.apache.commons.scxml2;
 
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 import org.apache.commons.scxml2.model.EnterableState;
 import org.apache.commons.scxml2.model.Observable;
@@ -33,20 +30,43 @@ import org.apache.commons.scxml2.model.TransitionTarget;
  * The notification registry keeps track of all
  * <code>SCXMLListener</code>s attached and notifies relevant
  * listeners of the events that interest them.
- *
+ * <p>
+ * Registrations are copy-on-write: (de)registering a listener replaces
+ * the registered listeners, while notifications only read the current
+ * registrations, without locking. A listener (de)registered during a
+ * notification therefore only takes effect for later notifications.
+ * Only Observables with a (non-negative) observable id, as assigned
+ * when the document is loaded, can be listened to.
+ * </p>
+ * <p>
+ * {@link SCXMLMacroStepListener}s are kept separately, so registering
+ * only those doesn't enable the per state notifications.
+ * </p>
  */
 public final class NotificationRegistry {
 
     /**
-     * The Map of all listeners keyed by {@link Observable#getObservableId()}.
+     * No registered listeners.
+     */
+    private static final SCXMLListener[][] NO_LISTENERS = new SCXMLListener[0][];
+
+    /**
+     * The registered listeners indexed by {@link Observable#getObservableId()},
+     * null for an Observable without listeners. Never modified once published.
+     */
+    private volatile SCXMLListener[][] regs;
+
+    /**
+     * The registered macro step listeners. Never modified once published.
      */
-    private final Map<Integer, Set<SCXMLListener>> regs;
+    private volatile SCXMLMacroStepListener[] macroStepRegs;
 
     /**
      * Constructor.
      */
     public NotificationRegistry() {
-        this.regs = new HashMap<Integer, Set<SCXMLListener>>();
+        this.regs = NO_LISTENERS;
+        this.macroStepRegs = new SCXMLMacroStepListener[0];
     }
 
     /**
@@ -56,13 +76,23 @@ public final class NotificationRegistry {
      * @param lst The listener
      */
     synchronized void addListener(final Observable source, final SCXMLListener lst) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(source.getObservableId());
+        if (source != null && source.getObservableId() != null && source.getObservableId() >= 0) {
+            int id = source.getObservableId();
+            SCXMLListener[][] listeners = regs;
+            SCXMLListener[] entries = id < listeners.length ? listeners[id] : null;
             if (entries == null) {
-                entries = new LinkedHashSet<SCXMLListener>();
-                regs.put(source.getObservableId(), entries);
+                entries = new SCXMLListener[] { lst };
             }
-            entries.add(lst);
+            else if (indexOf(entries, lst) < 0) {
+                entries = Arrays.copyOf(entries, entries.length + 1);
+                entries[entries.length - 1] = lst;
+            }
+            else {
+                return;
+            }
+            listeners = Arrays.copyOf(listeners, Math.max(listeners.length, id + 1));
+            listeners[id] = entries;
+            regs = listeners;
         }
     }
 
@@ -73,17 +103,84 @@ public final class NotificationRegistry {
      * @param lst The listener
      */
     synchronized void removeListener(final Observable source, final SCXMLListener lst) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(source.getObservableId());
-            if (entries != null) {
-                entries.remove(lst);
-                if (entries.size() == 0) {
-                    regs.remove(source.getObservableId());
+        if (source != null && source.getObservableId() != null && source.getObservableId() >= 0) {
+            int id = source.getObservableId();
+            SCXMLListener[][] listeners = regs;
+            SCXMLListener[] entries = id < listeners.length ? listeners[id] : null;
+            int index = entries != null ? indexOf(entries, lst) : -1;
+            if (index > -1) {
+                SCXMLListener[] remaining = null;
+                if (entries.length > 1) {
+                    remaining = new SCXMLListener[entries.length - 1];
+                    System.arraycopy(entries, 0, remaining, 0, index);
+                    System.arraycopy(entries, index + 1, remaining, index, remaining.length - index);
                 }
+                listeners = listeners.clone();
+                listeners[id] = remaining;
+                int length = listeners.length;
+                while (length > 0 && listeners[length - 1] == null) {
+                    length--;
+                }
+                regs = length > 0 ? Arrays.copyOf(listeners, length) : NO_LISTENERS;
             }
         }
     }
 
+    /**
+     * Register this SCXMLMacroStepListener.
+     *
+     * @param lst The listener
+     */
+    synchronized void addMacroStepListener(final SCXMLMacroStepListener lst) {
+        SCXMLMacroStepListener[] listeners = macroStepRegs;
+        if (lst != null && indexOf(listeners, lst) < 0) {
+            listeners = Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = lst;
+            macroStepRegs = listeners;
+        }
+    }
+
+    /**
+     * Deregister this SCXMLMacroStepListener.
+     *
+     * @param lst The listener
+     */
+    synchronized void removeMacroStepListener(final SCXMLMacroStepListener lst) {
+        SCXMLMacroStepListener[] listeners = macroStepRegs;
+        int index = indexOf(listeners, lst);
+        if (index > -1) {
+            SCXMLMacroStepListener[] remaining = new SCXMLMacroStepListener[listeners.length - 1];
+            System.arraycopy(listeners, 0, remaining, 0, index);
+            System.arraycopy(listeners, index + 1, remaining, index, remaining.length - index);
+            macroStepRegs = remaining;
+        }
+    }
+
+    /**
+     * @return Returns true if any macro step listener is registered
+     */
+    public boolean hasMacroStepListeners() {
+        return macroStepRegs.length > 0;
+    }
+
+    /**
+     * Inform all macro step listeners of a completed macro step.
+     *
+     * @param result The outcome of the macro step
+     */
+    public void fireOnMacroStep(final MacroStepResult result) {
+        for (SCXMLMacroStepListener lst : macroStepRegs) {
+            lst.onMacroStep(result);
+        }
+    }
+
+    /**
+     * @return Returns true if any SCXMLListener is registered
+     */
+    public boolean hasListeners() {
+        return regs.length > 0;
+    }
+
     /**
      * Inform all relevant listeners that a EnterableState has been
      * entered.
@@ -91,14 +188,12 @@ public final class NotificationRegistry {
      * @param source The Observable
      * @param state The EnterableState that was entered
      */
-    public synchronized void fireOnEntry(final Observable source,
+    public void fireOnEntry(final Observable source,
             final EnterableState state) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(source.getObservableId());
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onEntry(state);
-                }
+        SCXMLListener[] entries = getListeners(source);
+        if (entries != null) {
+            for (SCXMLListener lst : entries) {
+                lst.onEntry(state);
             }
         }
     }
@@ -110,14 +205,12 @@ public final class NotificationRegistry {
      * @param source The Observable
      * @param state The EnterableState that was exited
      */
-    public synchronized void fireOnExit(final Observable source,
+    public void fireOnExit(final Observable source,
             final EnterableState state) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(source.getObservableId());
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onExit(state);
-                }
+        SCXMLListener[] entries = getListeners(source);
+        if (entries != null) {
+            for (SCXMLListener lst : entries) {
+                lst.onExit(state);
             }
         }
     }
@@ -131,17 +224,41 @@ public final class NotificationRegistry {
      * @param transition The Transition that was taken
      * @param event The event name triggering the transition
      */
-    public synchronized void fireOnTransition(final Observable source,
+    public void fireOnTransition(final Observable source,
             final TransitionTarget from, final TransitionTarget to,
             final Transition transition, final String event) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(source.getObservableId());
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onTransition(from, to, transition, event);
-                }
+        SCXMLListener[] entries = getListeners(source);
+        if (entries != null) {
+            for (SCXMLListener lst : entries) {
+                lst.onTransition(from, to, transition, event);
             }
         }
     }
-}
 
+    /**
+     * @param source The Observable
+     * @return Returns the listeners currently registered for the Observable, or null if none
+     */
+    private SCXMLListener[] getListeners(final Observable source) {
+        SCXMLListener[][] listeners = regs;
+        if (listeners.length == 0 || source == null) {
+            return null;
+        }
+        Integer id = source.getObservableId();
+        return id != null && id >= 0 && id < listeners.length ? listeners[id] : null;
+    }
+
+    /**
+     * @param entries The listeners
+     * @param lst The listener
+     * @return Returns the index of the listener, or -1 if not included
+     */
+    private static int indexOf(final Object[] entries, final Object lst) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == null ? lst == null : entries[i].equals(lst)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -25,10 +25,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.scxml2.env.SimpleContext;
+import org.apache.commons.scxml2.model.ContextLayout;
 import org.apache.commons.scxml2.model.Data;
 import org.apache.commons.scxml2.model.Datamodel;
 import org.apache.commons.scxml2.model.EnterableState;
@@ -133,6 +135,11 @@ public class SCInstance implements Serializable {
      */
     private boolean singleContext;
 
+    /**
+     * The owner document for the data nodes created for expression based data with the XPath datamodel
+     */
+    private transient Document xpathDataDocument;
+
     /**
      * Constructor
      * @param internalIOProcessor The I/O Processor for the internal event queue
@@ -297,14 +304,9 @@ public class SCInstance implements Serializable {
                 // earlier or externally defined 'initial' value found: do not overwrite
                 continue;
             }
-            Node datumNode = datum.getNode();
-            Node valueNode = null;
-            if (datumNode != null) {
-                valueNode = datumNode.cloneNode(true);
-            }
             // prefer "src" over "expr" over "inline"
             if (datum.getSrc() != null) {
-                ctx.setLocal(datum.getId(), valueNode);
+                ctx.setLocal(datum.getId(), cloneDatumNode(datum.getNode()));
             } else if (datum.getExpr() != null) {
                 Object value;
                 try {
@@ -320,9 +322,12 @@ public class SCInstance implements Serializable {
                 }
                 if (Evaluator.XPATH_DATA_MODEL.equals(evaluator.getSupportedDatamodel())) {
                     try {
-                        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+                        if (xpathDataDocument == null) {
+                            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+                            xpathDataDocument = builder.newDocument();
+                        }
                         // TODO: should use SCXML namespace here?
-                        Element dataNode = document.createElement("data");
+                        Element dataNode = xpathDataDocument.createElement("data");
                         dataNode.setAttribute("id", datum.getId());
                         ctx.setLocal(datum.getId(), dataNode);
                         evaluator.evalAssign(ctx, "$" + datum.getId(), value, Evaluator.AssignType.REPLACE_CHILDREN, null);
@@ -344,11 +349,30 @@ public class SCInstance implements Serializable {
                     ctx.setLocal(datum.getId(), value);
                 }
             } else {
-                ctx.setLocal(datum.getId(), valueNode);
+                ctx.setLocal(datum.getId(), cloneDatumNode(datum.getNode()));
             }
         }
     }
 
+    /**
+     * Deep clones the parsed value of a data element for this instance.
+     * <p>
+     * The parsed value is shared by all instances of the document, which may be initialized concurrently, while DOM
+     * implementations are not thread-safe even for reading, so cloning is serialized on the parsed value.
+     * </p>
+     *
+     * @param datumNode The parsed value of the data element, may be null
+     * @return Returns the private copy of the value, or null if none
+     */
+    private static Node cloneDatumNode(final Node datumNode) {
+        if (datumNode == null) {
+            return null;
+        }
+        synchronized (datumNode) {
+            return datumNode.cloneNode(true);
+        }
+    }
+
     /**
      * @return Returns the state configuration for this instance
      */
@@ -440,6 +464,7 @@ public class SCInstance implements Serializable {
             getSystemContext();
             if (systemContext != null) {
                 globalContext = evaluator.newContext(systemContext);
+                applyContextLayout(globalContext, stateMachine != null ? stateMachine.getContextLayout() : null);
             }
         }
         return globalContext;
@@ -465,6 +490,7 @@ public class SCInstance implements Serializable {
                 } else {
                     context = evaluator.newContext(getContext(parent));
                 }
+                applyContextLayout(context, state.getContextLayout());
             }
             if (state instanceof TransitionalState) {
                 Datamodel datamodel = ((TransitionalState)state).getDatamodel();
@@ -475,6 +501,20 @@ public class SCInstance implements Serializable {
         return context;
     }
 
+    /**
+     * Apply the precomputed variable layout to a newly created context, if supported by the context.
+     *
+     * @param context The new context
+     * @param layout The context layout, may be null
+     */
+    private void applyContextLayout(final Context context, final ContextLayout layout) {
+        if (layout != null && context instanceof SimpleContext
+                && !Evaluator.NULL_DATA_MODEL.equals(evaluator.getSupportedDatamodel())
+                && context.getVars().isEmpty()) {
+            ((SimpleContext)context).setLayout(layout);
+        }
+    }
+
     /**
      * Get the context for an EnterableState if available.
      *
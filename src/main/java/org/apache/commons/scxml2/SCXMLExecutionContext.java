@@ -19,9 +19,13 @@ package org.apache.commons.scxml2;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,9 +34,13 @@ import org.apache.commons.scxml2.env.SimpleErrorReporter;
 import org.apache.commons.scxml2.invoke.Invoker;
 import org.apache.commons.scxml2.invoke.InvokerException;
 import org.apache.commons.scxml2.invoke.SimpleSCXMLInvoker;
+import org.apache.commons.scxml2.model.EnterableState;
 import org.apache.commons.scxml2.model.Invoke;
 import org.apache.commons.scxml2.model.ModelException;
 import org.apache.commons.scxml2.model.SCXML;
+import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionalState;
+import org.apache.commons.scxml2.semantics.Step;
 
 /**
  * SCXMLExecutionContext provides all the services and internal data used during the interpretation of an SCXML
@@ -99,6 +107,57 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor {
      */
     private final Queue<TriggerEvent> internalEventQueue = new LinkedList<TriggerEvent>();
 
+    /**
+     * The reusable Step for processing the (micro) steps of the state machine
+     */
+    private final Step step = new Step(null);
+
+    /**
+     * The reusable set of activated states which invokes need to be invoked at the end of the current macro step
+     */
+    private final Set<TransitionalState> statesToInvoke = new HashSet<TransitionalState>();
+
+    /**
+     * The optional pool for the concurrent transition selection of independent parallel regions
+     */
+    private volatile ForkJoinPool parallelRegionPool;
+
+    /**
+     * The memoized results of datamodel only transition guards, see {@link #getGuardResult(Transition, long)}
+     */
+    private final Map<Transition, GuardResult> guardResults = new HashMap<Transition, GuardResult>();
+
+    /**
+     * The current generation of the memoized guard results, incremented to invalidate all of them
+     */
+    private long guardResultsGeneration;
+
+    /**
+     * Whether the current macro step is recorded for the macro step listeners, see
+     * {@link #beginMacroStep(TriggerEvent)}
+     */
+    private boolean recordingMacroStep;
+
+    /**
+     * The external event of the recorded macro step, null for the initial macro step
+     */
+    private TriggerEvent macroStepEvent;
+
+    /**
+     * The states exited during the recorded macro step
+     */
+    private final List<EnterableState> macroStepExitedStates = new ArrayList<EnterableState>();
+
+    /**
+     * The states entered during the recorded macro step
+     */
+    private final List<EnterableState> macroStepEnteredStates = new ArrayList<EnterableState>();
+
+    /**
+     * The transitions taken during the recorded macro step
+     */
+    private final List<Transition> macroStepTransitions = new ArrayList<Transition>();
+
     /**
      * The Invoker classes map, keyed by invoke target types (specified using "type" attribute).
      */
@@ -179,6 +238,148 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor {
         return actionExecutionContext;
     }
 
+    /**
+     * Returns the reusable Step of this execution context, reset for processing the provided event.
+     * <p>
+     * As the same Step instance is returned on every invocation, a Step obtained earlier must no longer be used after
+     * invoking this method again.
+     * </p>
+     * @param event The event to be processed in the step, or null for processing event-less transitions
+     * @return Returns the reset reusable Step
+     */
+    public Step getStep(final TriggerEvent event) {
+        step.reset(event);
+        return step;
+    }
+
+    /**
+     * @return Returns the pool for the concurrent transition selection of independent parallel regions, or null if
+     * disabled (default)
+     */
+    public ForkJoinPool getParallelRegionPool() {
+        return parallelRegionPool;
+    }
+
+    /**
+     * @param parallelRegionPool The pool for the concurrent transition selection of independent parallel regions,
+     *                           or null to disable it
+     * @see SCXMLExecutor#setParallelRegionPool(ForkJoinPool)
+     */
+    public void setParallelRegionPool(final ForkJoinPool parallelRegionPool) {
+        this.parallelRegionPool = parallelRegionPool;
+    }
+
+    /**
+     * Returns the memoized result of a datamodel only transition guard, if it was evaluated before for the same
+     * datamodel version since the last {@link #resetGuardResults()}.
+     *
+     * @param transition The transition
+     * @param version The current datamodel version of the context of the transition
+     * @return Returns the memoized guard result, or null if not available
+     */
+    public Boolean getGuardResult(final Transition transition, final long version) {
+        GuardResult result = guardResults.get(transition);
+        return result != null && result.generation == guardResultsGeneration && result.version == version
+                ? result.value : null;
+    }
+
+    /**
+     * Memoizes the result of a datamodel only transition guard.
+     *
+     * @param transition The transition
+     * @param version The datamodel version of the context of the transition the guard was evaluated for
+     * @param value The guard result
+     */
+    public void setGuardResult(final Transition transition, final long version, final boolean value) {
+        GuardResult result = guardResults.get(transition);
+        if (result == null) {
+            result = new GuardResult();
+            guardResults.put(transition, result);
+        }
+        result.generation = guardResultsGeneration;
+        result.version = version;
+        result.value = value;
+    }
+
+    /**
+     * Invalidates all memoized guard results, as the datamodel may have been changed outside the state machine
+     * execution, or in place by executable content, since their evaluation.
+     */
+    public void resetGuardResults() {
+        guardResultsGeneration++;
+    }
+
+    /**
+     * Starts recording the outcome of a macro step, if any {@link SCXMLMacroStepListener} is registered.
+     *
+     * @param event The external event to be processed, or null for the initial macro step
+     */
+    public void beginMacroStep(final TriggerEvent event) {
+        recordingMacroStep = notificationRegistry.hasMacroStepListeners();
+        macroStepEvent = event;
+        macroStepExitedStates.clear();
+        macroStepEnteredStates.clear();
+        macroStepTransitions.clear();
+    }
+
+    /**
+     * Records an exited state, if the current macro step is recorded.
+     *
+     * @param state The exited state
+     */
+    public void recordExit(final EnterableState state) {
+        if (recordingMacroStep) {
+            macroStepExitedStates.add(state);
+        }
+    }
+
+    /**
+     * Records an entered state, if the current macro step is recorded.
+     *
+     * @param state The entered state
+     */
+    public void recordEntry(final EnterableState state) {
+        if (recordingMacroStep) {
+            macroStepEnteredStates.add(state);
+        }
+    }
+
+    /**
+     * Records a taken transition, if the current macro step is recorded.
+     *
+     * @param transition The transition taken
+     */
+    public void recordTransition(final Transition transition) {
+        if (recordingMacroStep) {
+            macroStepTransitions.add(transition);
+        }
+    }
+
+    /**
+     * Stops recording the current macro step, and notifies the registered {@link SCXMLMacroStepListener}s of its
+     * outcome, if it was recorded.
+     */
+    public void endMacroStep() {
+        if (recordingMacroStep) {
+            recordingMacroStep = false;
+            MacroStepResult result = new MacroStepResult(macroStepEvent, macroStepExitedStates,
+                    macroStepEnteredStates, macroStepTransitions, scInstance.getStateConfiguration(), isRunning());
+            macroStepEvent = null;
+            macroStepExitedStates.clear();
+            macroStepEnteredStates.clear();
+            macroStepTransitions.clear();
+            notificationRegistry.fireOnMacroStep(result);
+        }
+    }
+
+    /**
+     * @return Returns the reusable set of activated states which invokes need to be invoked at the end of the current
+     * macro step
+     */
+    public Set<TransitionalState> getStatesToInvoke() {
+        return statesToInvoke;
+    }
+
     /**
      * @return Returns true if this state machine is running
      */
@@ -221,6 +422,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor {
             }
         }
         internalEventQueue.clear();
+        statesToInvoke.clear();
         scInstance.initialize();
         initializeIOProcessors();
         scInstance.setRunning(true);
@@ -533,4 +735,13 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor {
     public boolean hasPendingInternalEvent() {
         return !internalEventQueue.isEmpty();
     }
+
+    /**
+     * A memoized guard result
+     */
+    private static final class GuardResult {
+        private long generation;
+        private long version;
+        private boolean value;
+    }
 }
@@ -20,6 +20,13 @@ import java.util.HashSet;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +49,12 @@ import org.apache.commons.scxml2.semantics.SCXMLSemanticsImpl;
  * <p>The executor uses SCXMLExecutionContext to manage the state and
  * provide all the services to the SCXMLSemantics implementation.</p>
  *
+ * <p>By default, external events are only processed when one of the
+ * triggerEvent(s) methods is invoked. Optionally, an
+ * {@link #setEventLoopExecutor(Executor) event loop executor} can be set,
+ * in which case all external events added are processed asynchronously
+ * by that executor instead.</p>
+ *
  * @see SCXMLSemantics
  */
 public class SCXMLExecutor implements SCXMLIOProcessor {
@@ -71,6 +84,30 @@ public class SCXMLExecutor implements SCXMLIOProcessor {
      */
     private final Queue<TriggerEvent> externalEventQueue = new ConcurrentLinkedQueue<TriggerEvent>();
 
+    /**
+     * The optional executor for running the event loop
+     */
+    private volatile Executor eventLoopExecutor;
+
+    /**
+     * The maximum number of events processed per run of the event loop
+     */
+    private volatile int eventLoopBatchSize = Integer.MAX_VALUE;
+
+    /**
+     * Flag indicating if the event loop has been scheduled, or is running
+     */
+    private final AtomicBoolean eventLoopScheduled = new AtomicBoolean();
+
+    /**
+     * The event loop task
+     */
+    private final Runnable eventLoop = new Runnable() {
+        public void run() {
+            runEventLoop();
+        }
+    };
+
     /**
      * Convenience constructor.
      */
@@ -322,6 +359,33 @@ public class SCXMLExecutor implements SCXMLIOProcessor {
         return exctx.isCheckLegalConfiguration();
     }
 
+    /**
+     * Enables (or disables) the concurrent transition selection for the regions of &lt;parallel&gt; states.
+     * <p>
+     * When enabled, the transitions of the regions of an active parallel are selected concurrently on the pool, if
+     * all guards within its regions, of the parallel itself and of its ancestors are known to be side effect free
+     * by the load time guard analysis
+     * ({@link org.apache.commons.scxml2.model.Parallel#hasIndependentRegions()}). The results are merged in document
+     * order, so the selected transitions and the reported guard evaluation errors are the same as for the serial
+     * transition selection. Executable content is always executed serially.
+     * </p>
+     * <p>
+     * Note: this requires a {@link ConcurrentEvaluator} supporting the concurrent evaluation of conditions, like
+     * the JEXL evaluator, and is ignored otherwise. It only pays off for wide parallel states with many guards.
+     * </p>
+     * @param parallelRegionPool The pool for the concurrent transition selection, or null to disable it (default)
+     */
+    public void setParallelRegionPool(final ForkJoinPool parallelRegionPool) {
+        exctx.setParallelRegionPool(parallelRegionPool);
+    }
+
+    /**
+     * @return Returns the pool for the concurrent transition selection of parallel regions, or null if disabled
+     */
+    public ForkJoinPool getParallelRegionPool() {
+        return exctx.getParallelRegionPool();
+    }
+
     /**
      * Get the notification registry.
      *
@@ -352,6 +416,25 @@ public class SCXMLExecutor implements SCXMLIOProcessor {
         exctx.getNotificationRegistry().removeListener(observable, listener);
     }
 
+    /**
+     * Add a listener to be notified once per macro step, after the state machine has been started or has processed
+     * an external event.
+     *
+     * @param listener The SCXMLMacroStepListener.
+     */
+    public void addMacroStepListener(final SCXMLMacroStepListener listener) {
+        exctx.getNotificationRegistry().addMacroStepListener(listener);
+    }
+
+    /**
+     * Remove this macro step listener.
+     *
+     * @param listener The SCXMLMacroStepListener to be removed.
+     */
+    public void removeMacroStepListener(final SCXMLMacroStepListener listener) {
+        exctx.getNotificationRegistry().removeMacroStepListener(listener);
+    }
+
     /**
      * Register an Invoker for this target type.
      *
@@ -426,20 +509,130 @@ public class SCXMLExecutor implements SCXMLIOProcessor {
         externalEventQueue.clear();
 
         // go
+        exctx.beginMacroStep(null);
         semantics.firstStep(exctx);
+        exctx.endMacroStep();
         logState();
     }
 
     /**
      * Add a new external event, which may be done concurrently, and even when the current SCInstance is detached.
      * <p>
-     * No processing of the vent will be done, until the next triggerEvent methods is invoked.
+     * No processing of the vent will be done, until the next triggerEvent methods is invoked, or, when an event loop
+     * executor has been set, until the event loop gets to it.
      * </p>
      * @param evt an external event
      */
     public void addEvent(final TriggerEvent evt) {
         if (evt != null) {
             externalEventQueue.add(evt);
+            if (eventLoopExecutor != null) {
+                scheduleEventLoop();
+            }
+        }
+    }
+
+    /**
+     * @return Returns the executor running the event loop, or null if no event loop is used
+     */
+    public Executor getEventLoopExecutor() {
+        return eventLoopExecutor;
+    }
+
+    /**
+     * Set or remove the executor running the event loop of this state machine.
+     * <p>
+     * When set, every external event added schedules the event loop on the executor (if not already scheduled or
+     * running), which then processes all pending events, up to the {@link #getEventLoopBatchSize() batch size}, in
+     * one run. The event loop never runs concurrently with itself, and no thread is occupied while there are no
+     * pending events.
+     * </p>
+     * <p>
+     * Note: the event loop executor should only be set after the state machine has been started with {@link #go()}.
+     * While set, the triggerEvent(s) methods only add the events, and the processing is left to the event loop.
+     * </p>
+     * @param eventLoopExecutor The executor to run the event loop, or null to process events only through the
+     *                          triggerEvent(s) methods (again)
+     * @see #newEventLoopExecutor()
+     */
+    public void setEventLoopExecutor(final Executor eventLoopExecutor) {
+        this.eventLoopExecutor = eventLoopExecutor;
+        if (eventLoopExecutor != null && hasPendingEvents()) {
+            scheduleEventLoop();
+        }
+    }
+
+    /**
+     * @return Returns the maximum number of events processed per run of the event loop, after which it reschedules
+     *         itself if there are more pending events (default: unlimited)
+     */
+    public int getEventLoopBatchSize() {
+        return eventLoopBatchSize;
+    }
+
+    /**
+     * @param eventLoopBatchSize The maximum number of events processed per run of the event loop
+     */
+    public void setEventLoopBatchSize(final int eventLoopBatchSize) {
+        if (eventLoopBatchSize < 1) {
+            throw new IllegalArgumentException("eventLoopBatchSize must be at least 1");
+        }
+        this.eventLoopBatchSize = eventLoopBatchSize;
+    }
+
+    /**
+     * Creates a new executor suitable for running event loops: using virtual threads when available (Java 21+),
+     * otherwise a cached pool of daemon threads.
+     *
+     * @return a new event loop executor
+     */
+    public static ExecutorService newEventLoopExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(r, "SCXMLExecutor-event-loop");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules the event loop on the event loop executor, if not already scheduled or running
+     */
+    private void scheduleEventLoop() {
+        Executor executor = eventLoopExecutor;
+        if (executor != null && eventLoopScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(eventLoop);
+            }
+            catch (RejectedExecutionException e) {
+                eventLoopScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs the event loop once: processing the pending events, up to the event loop batch size, and rescheduling
+     * itself thereafter if there are still more pending events
+     */
+    protected void runEventLoop() {
+        try {
+            triggerEvents(getEventLoopBatchSize());
+        }
+        catch (ModelException e) {
+            log.error("Event loop failed to process event: " + e.getMessage(), e);
+        }
+        finally {
+            eventLoopScheduled.set(false);
+        }
+        if (isRunning() && hasPendingEvents()) {
+            scheduleEventLoop();
         }
     }
 
@@ -494,17 +687,47 @@ public class SCXMLExecutor implements SCXMLIOProcessor {
 
     /**
      * Trigger all pending and incoming events, until there are no more pending events
+     * <p>
+     * When an event loop executor has been set, this method does nothing as processing the events then is left to
+     * the event loop.
+     * </p>
      * @throws ModelException in case there is a fatal SCXML object model problem.
      */
     public void triggerEvents() throws ModelException {
+        if (eventLoopExecutor != null) {
+            // processing is left to the event loop
+            return;
+        }
         TriggerEvent evt;
         while (exctx.isRunning() && (evt = externalEventQueue.poll()) != null) {
             eventStep(evt);
         }
     }
 
+    /**
+     * Trigger pending and incoming events, until there are no more pending events or the maximum number of events
+     * has been processed.
+     * <p>
+     * This allows (for instance) a worker processing many state machine instances to limit the time spent on each.
+     * </p>
+     * @param maxEvents The maximum number of events to process
+     * @return the number of events processed
+     * @throws ModelException in case there is a fatal SCXML object model problem.
+     */
+    public int triggerEvents(final int maxEvents) throws ModelException {
+        int count = 0;
+        TriggerEvent evt;
+        while (count < maxEvents && exctx.isRunning() && (evt = externalEventQueue.poll()) != null) {
+            eventStep(evt);
+            count++;
+        }
+        return count;
+    }
+
     protected void eventStep(TriggerEvent event) throws ModelException {
+        exctx.beginMacroStep(event);
         semantics.nextStep(exctx, event);
+        exctx.endMacroStep();
         logState();
     }
 
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2;
+
+/**
+ * Listener interface for the batched notification of the outcome of a
+ * complete macro step of a state machine, as an alternative to the
+ * per state and per transition notifications of {@link SCXMLListener}.
+ * <p>
+ * A macro step listener is notified once, after the state machine has
+ * been started or has processed an external event and reached a stable
+ * configuration again. When only macro step listeners are registered, no
+ * per state notifications are performed at all.
+ * </p>
+ *
+ * @see SCXMLExecutor#addMacroStepListener(SCXMLMacroStepListener)
+ */
+public interface SCXMLMacroStepListener {
+
+    /**
+     * Handle the completion of a macro step.
+     *
+     * @param result The (immutable) outcome of the macro step
+     */
+    void onMacroStep(MacroStepResult result);
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.scxml2.env.SimpleErrorReporter;
+import org.apache.commons.scxml2.env.TimerWheelDispatcher;
+import org.apache.commons.scxml2.model.ModelException;
+import org.apache.commons.scxml2.model.SCXML;
+import org.apache.commons.scxml2.semantics.SCXMLSemanticsImpl;
+
+/**
+ * <p>Executes many concurrent sessions (state machine instances) of one and the same SCXML document.</p>
+ *
+ * <p>The state machine model, the {@link SCXMLSemantics} and the {@link ErrorReporter} are shared by all sessions,
+ * while each session only maintains its own {@link SCXMLExecutor} state: its {@link SCInstance}, event queues,
+ * dispatcher and invokers. Delayed events of all sessions are scheduled on one shared timer wheel
+ * (see {@link TimerWheelDispatcher}), instead of on a dedicated timer thread per event.</p>
+ *
+ * <p>Events for a session are processed by its {@link SCXMLExecutor#setEventLoopExecutor(java.util.concurrent.Executor)
+ * event loop} on a bounded pool of worker threads. At most one worker processes the events of a session at any time,
+ * and always in the order in which they were added, while the events of different sessions are processed
+ * concurrently. To keep the workers fair to all sessions, a worker processes at most {@link #getMaxEventsPerRun()}
+ * events of a session before rescheduling it.</p>
+ *
+ * <p>Sessions which have reached a top level final state are removed from the pool automatically.</p>
+ */
+public class SCXMLSessionPool {
+
+    /**
+     * The default maximum number of events processed for a session before it is rescheduled.
+     */
+    public static final int DEFAULT_MAX_EVENTS_PER_RUN = 32;
+
+    /**
+     * The shared state machine
+     */
+    private final SCXML stateMachine;
+
+    /**
+     * The shared interpretation semantics
+     */
+    private final SCXMLSemantics semantics;
+
+    /**
+     * The shared error reporter
+     */
+    private final ErrorReporter errorReporter;
+
+    /**
+     * The workers processing the session events
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The active sessions, keyed by session key
+     */
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    /**
+     * The maximum number of events processed for a session before it is rescheduled
+     */
+    private volatile int maxEventsPerRun = DEFAULT_MAX_EVENTS_PER_RUN;
+
+    /**
+     * Constructor, using a fixed pool of worker threads.
+     *
+     * @param stateMachine The state machine to execute for all sessions
+     * @param workerThreads The number of worker threads
+     * @throws ModelException if the state machine is not valid
+     */
+    public SCXMLSessionPool(final SCXML stateMachine, final int workerThreads) throws ModelException {
+        this(stateMachine, null, null, Executors.newFixedThreadPool(workerThreads));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stateMachine The state machine to execute for all sessions
+     * @param semantics The SCXML semantics, if null a SCXMLSemanticsImpl instance will be used
+     * @param errorReporter The error reporter, if null a SimpleErrorReporter instance will be used
+     * @param workers The (bounded) worker pool processing the session events, which will be shutdown together with
+     *                this pool
+     * @throws ModelException if the state machine is not valid
+     */
+    public SCXMLSessionPool(final SCXML stateMachine, final SCXMLSemantics semantics,
+                            final ErrorReporter errorReporter, final ExecutorService workers)
+            throws ModelException {
+        if (stateMachine == null) {
+            throw new IllegalArgumentException("SCXMLSessionPool: stateMachine may not be null");
+        }
+        if (workers == null) {
+            throw new IllegalArgumentException("SCXMLSessionPool: workers may not be null");
+        }
+        this.semantics = semantics != null ? semantics : new SCXMLSemanticsImpl();
+        this.errorReporter = errorReporter != null ? errorReporter : new SimpleErrorReporter();
+        // normalize once, so the sessions can share the model without further modifications
+        this.stateMachine = this.semantics.normalizeStateMachine(stateMachine, this.errorReporter);
+        this.workers = workers;
+    }
+
+    /**
+     * @return Returns the state machine shared by all sessions
+     */
+    public SCXML getStateMachine() {
+        return stateMachine;
+    }
+
+    /**
+     * @return Returns the maximum number of events processed for a session before it is rescheduled
+     */
+    public int getMaxEventsPerRun() {
+        return maxEventsPerRun;
+    }
+
+    /**
+     * @param maxEventsPerRun The maximum number of events processed for a session before it is rescheduled
+     */
+    public void setMaxEventsPerRun(final int maxEventsPerRun) {
+        if (maxEventsPerRun < 1) {
+            throw new IllegalArgumentException("SCXMLSessionPool: maxEventsPerRun must be at least 1");
+        }
+        this.maxEventsPerRun = maxEventsPerRun;
+    }
+
+    /**
+     * Create and start a new session.
+     * <p>
+     * The session is started (entering its initial configuration) on the calling thread, thereafter all its events
+     * are processed by the workers of this pool.
+     * </p>
+     * <p>
+     * Note: the returned executor may be used to inspect the session status or to add events, but while the session
+     * is part of this pool its triggerEvent(s) methods only add events, leaving their processing to the pool.
+     * </p>
+     * @param sessionKey The unique key for the new session
+     * @param rootContext The root context for the new session, may be null
+     * @return The executor of the new session
+     * @throws ModelException if the session failed to start
+     * @throws IllegalStateException if a session with the same key already exists
+     */
+    public SCXMLExecutor startSession(final String sessionKey, final Context rootContext) throws ModelException {
+        if (sessions.containsKey(sessionKey)) {
+            throw new IllegalStateException("SCXMLSessionPool: session \"" + sessionKey + "\" already exists");
+        }
+        Session session = new Session(sessionKey);
+        session.setStateMachine(stateMachine);
+        if (rootContext != null) {
+            session.setRootContext(rootContext);
+        }
+        session.go();
+        if (sessions.putIfAbsent(sessionKey, session) != null) {
+            throw new IllegalStateException("SCXMLSessionPool: session \"" + sessionKey + "\" already exists");
+        }
+        if (session.isRunning()) {
+            // from now on, events (including those added while starting) are processed by the workers
+            session.setEventLoopExecutor(workers);
+        }
+        else {
+            sessions.remove(sessionKey, session);
+        }
+        return session;
+    }
+
+    /**
+     * @param sessionKey The session key
+     * @return Returns the executor of the session, or null if no such session exists (anymore)
+     */
+    public SCXMLExecutor getSession(final String sessionKey) {
+        return sessions.get(sessionKey);
+    }
+
+    /**
+     * @return Returns the (live) set of keys of all sessions in this pool
+     */
+    public Set<String> getSessionKeys() {
+        return sessions.keySet();
+    }
+
+    /**
+     * @return Returns the current number of sessions in this pool
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Add an event to a session, to be processed asynchronously by the workers of this pool.
+     *
+     * @param sessionKey The session key
+     * @param evt The event
+     * @return Returns true if the session exists and the event was added, false otherwise
+     */
+    public boolean addEvent(final String sessionKey, final TriggerEvent evt) {
+        Session session = sessions.get(sessionKey);
+        if (session == null) {
+            return false;
+        }
+        session.addEvent(evt);
+        return true;
+    }
+
+    /**
+     * Remove a session from this pool.
+     * <p>
+     * Pending events of the session will no longer be processed, an event being processed at the time of removal
+     * will still be completed.
+     * </p>
+     * @param sessionKey The session key
+     * @return Returns the executor of the removed session, or null if no such session exists (anymore)
+     */
+    public SCXMLExecutor removeSession(final String sessionKey) {
+        Session session = sessions.remove(sessionKey);
+        if (session != null) {
+            session.setEventLoopExecutor(null);
+        }
+        return session;
+    }
+
+    /**
+     * Shutdown the workers of this pool and remove all sessions.
+     *
+     * @param timeout The maximum time to wait for the workers to complete processing of their current events
+     * @param unit The time unit of the timeout argument
+     * @return Returns true if the workers terminated within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+        for (String sessionKey : sessions.keySet()) {
+            removeSession(sessionKey);
+        }
+        workers.shutdown();
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * The executor of a single session, which leaves the session when it has reached a final state.
+     */
+    private class Session extends SCXMLExecutor {
+
+        /**
+         * The session key
+         */
+        private final String sessionKey;
+
+        private Session(final String sessionKey) {
+            super(null, new TimerWheelDispatcher(), errorReporter, semantics);
+            this.sessionKey = sessionKey;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Always uses the current maximum number of events per run of the pool.
+         * </p>
+         */
+        @Override
+        public int getEventLoopBatchSize() {
+            return maxEventsPerRun;
+        }
+
+        @Override
+        protected void runEventLoop() {
+            super.runEventLoop();
+            if (!isRunning() && sessions.remove(sessionKey, this)) {
+                setEventLoopExecutor(null);
+            }
+        }
+    }
+}
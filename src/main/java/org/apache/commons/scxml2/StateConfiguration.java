@@ -17,49 +17,50 @@
 package org.apache.commons.scxml2;
 
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.EnterableStateSet;
 
 /**
  * The current active states of a state machine
+ * <p>
+ * The active and atomic states are maintained as {@link EnterableStateSet}s, indexed by the state ordinals.
+ * </p>
  */
 public class StateConfiguration implements Serializable {
     /**
      * Serial version UID.
      */
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     /**
      * The states that are currently active.
      */
-    private final Set<EnterableState> activeStates = new HashSet<EnterableState>();
-    private final Set<EnterableState> activeStatesSet = Collections.unmodifiableSet(activeStates);
+    private final EnterableStateSet activeStates = new EnterableStateSet();
+    private final EnterableStateSet activeStatesSet = activeStates.readOnlyView();
 
     /**
      * The atomic states that are currently active.
      */
-    private final Set<EnterableState> atomicStates = new HashSet<EnterableState>();
-    private final Set<EnterableState> atomicStatesSet = Collections.unmodifiableSet(atomicStates);
+    private final EnterableStateSet atomicStates = new EnterableStateSet();
+    private final EnterableStateSet atomicStatesSet = atomicStates.readOnlyView();
 
     /**
      * Get the active states
      *
      * @return active states including simple states and their
-     *         complex ancestors up to the root.
+     *         complex ancestors up to the root, in document order.
      */
-    public Set<EnterableState> getActiveStates() {
+    public EnterableStateSet getActiveStates() {
         return  activeStatesSet;
     }
 
     /**
      * Get the current atomic states (leaf only).
      *
-     * @return Returns the atomic states - simple (leaf) states only.
+     * @return Returns the atomic states - simple (leaf) states only, in document order.
      */
-    public Set<EnterableState> getStates() {
+    public EnterableStateSet getStates() {
         return  atomicStatesSet;
     }
 
@@ -18,7 +18,9 @@ package org.apache.commons.scxml2.env;
 
 import java.io.Serializable;
 import java.util.AbstractMap;
-import java.util.HashSet;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.commons.scxml2.Context;
@@ -42,16 +44,45 @@ public final class EffectiveContextMap extends AbstractMap<String, Object> imple
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Returns a live view of the variables of the context chain, in which a variable of a child context hides a
+     * variable with the same name of its parent contexts.
+     * </p>
      */
     @Override
     public Set<Entry<String, Object>> entrySet() {
-        Set<Entry<String, Object>> entrySet = new HashSet<Entry<String, Object>>();
-        Context current = leaf;
-        while (current != null) {
-            entrySet.addAll(current.getVars().entrySet());
-            current = current.getParent();
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EffectiveEntryIterator();
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (Iterator<Entry<String, Object>> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                    size++;
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        if (key != null) {
+            Context current = leaf;
+            while (current != null) {
+                if (current.getVars().containsKey(key.toString())) {
+                    return true;
+                }
+                current = current.getParent();
+            }
         }
-        return entrySet;
+        return false;
     }
 
     /**
@@ -84,4 +115,56 @@ public final class EffectiveContextMap extends AbstractMap<String, Object> imple
         }
         return null;
     }
+
+    /**
+     * Iterates the entries of the context chain from the leaf to the root, skipping the entries hidden by an
+     * entry with the same name of a child context.
+     */
+    private final class EffectiveEntryIterator implements Iterator<Entry<String, Object>> {
+
+        private Context current = leaf;
+        private Iterator<Entry<String, Object>> currentIterator;
+        private Entry<String, Object> next;
+
+        public boolean hasNext() {
+            while (next == null && current != null) {
+                if (currentIterator == null) {
+                    currentIterator = current.getVars().entrySet().iterator();
+                }
+                if (currentIterator.hasNext()) {
+                    Entry<String, Object> entry = currentIterator.next();
+                    if (!isHidden(entry.getKey())) {
+                        next = entry;
+                    }
+                }
+                else {
+                    current = current.getParent();
+                    currentIterator = null;
+                }
+            }
+            return next != null;
+        }
+
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private boolean isHidden(final String name) {
+            for (Context child = leaf; child != current; child = child.getParent()) {
+                if (child.getVars().containsKey(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
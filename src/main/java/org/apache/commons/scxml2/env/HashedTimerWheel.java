@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.env;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>A hashed timer wheel, executing (short) delayed tasks on a single daemon thread.</p>
+ *
+ * <p>The wheel consists of a fixed number of buckets, each covering one tick. A task is put in the bucket for its
+ * deadline tick (modulo the number of buckets) together with the number of remaining wheel rounds, making both
+ * scheduling and cancelling a task O(1), independent of the number of pending tasks. Once per tick, all due tasks of
+ * the current bucket are collected and then executed as one batch.</p>
+ *
+ * <p>Tasks are executed with a precision of one tick, and should not block as they are executed on the timer thread
+ * itself. The timer thread is started on the first scheduled task.</p>
+ */
+public class HashedTimerWheel {
+
+    /**
+     * The default tick duration in milliseconds
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10L;
+
+    /**
+     * The default number of ticks (buckets) per wheel round
+     */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    /**
+     * A scheduled task, which can be cancelled until it has been executed.
+     */
+    public static final class Timeout {
+
+        private static final int ST_PENDING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HashedTimerWheel wheel;
+        private final Runnable task;
+        /** The deadline, in nanoseconds since the start of the wheel */
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+
+        // the following fields are only accessed by the timer thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(final HashedTimerWheel wheel, final Runnable task, final long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel this timeout, if not already cancelled or executed.
+         * @return Returns true if this timeout was cancelled by this invocation
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(ST_PENDING, ST_CANCELLED)) {
+                wheel.cancelledTimeouts.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return Returns true if this timeout has been cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        /**
+         * @return Returns true if the task of this timeout has been (or is being) executed
+         */
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+    }
+
+    /**
+     * A bucket of the wheel: a doubly linked list of timeouts, only accessed by the timer thread.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            }
+            else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private Timeout remove(final Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+
+    private final Log log = LogFactory.getLog(HashedTimerWheel.class);
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final String threadName;
+
+    /** Newly scheduled timeouts, to be put in their bucket by the timer thread */
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    /** Cancelled timeouts, to be removed from their bucket by the timer thread */
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    /** The batch of due timeouts collected per tick, only accessed by the timer thread */
+    private final List<Timeout> expiredTimeouts = new ArrayList<Timeout>();
+
+    private Thread thread;
+    private volatile long startTime;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor, using the default tick duration and number of ticks per wheel
+     * @param threadName The name of the timer thread
+     */
+    public HashedTimerWheel(final String threadName) {
+        this(threadName, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threadName The name of the timer thread
+     * @param tickDuration The duration of a tick
+     * @param unit The time unit of the tick duration
+     * @param ticksPerWheel The number of ticks per wheel round, which will be rounded up to a power of two
+     */
+    public HashedTimerWheel(final String threadName, final long tickDuration, final TimeUnit unit,
+                            final int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30");
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.threadName = threadName;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedule a task for execution on the timer thread after the specified delay.
+     *
+     * @param task The task to execute
+     * @param delay The delay
+     * @param unit The time unit of the delay
+     * @return The timeout for the scheduled task, which can be used to cancel it
+     * @throws IllegalStateException if this timer wheel has been stopped
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("HashedTimerWheel " + threadName + " has been stopped");
+        }
+        start();
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(delay) - startTime);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return Returns the number of scheduled timeouts not yet expired or removed after cancellation (approximate)
+     */
+    public int getPendingTimeouts() {
+        int count = pendingTimeouts.size();
+        synchronized (this) {
+            for (Bucket bucket : buckets) {
+                for (Timeout t = bucket.head; t != null; t = t.next) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stop the timer thread, discarding all not yet expired timeouts.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private synchronized void start() {
+        if (thread == null) {
+            startTime = System.nanoTime();
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    runWorker();
+                }
+            }, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void runWorker() {
+        long tick = 0L;
+        while (!stopped) {
+            long deadline = waitForNextTick(tick);
+            if (deadline < 0L) {
+                continue;
+            }
+            synchronized (this) {
+                removeCancelledTimeouts();
+                transferPendingTimeouts(tick);
+                collectExpiredTimeouts(buckets[(int)(tick & mask)], deadline);
+            }
+            for (int i = 0; i < expiredTimeouts.size(); i++) {
+                Timeout timeout = expiredTimeouts.get(i);
+                try {
+                    timeout.task.run();
+                }
+                catch (Throwable t) {
+                    log.warn("HashedTimerWheel " + threadName + ": task failed: " + t.getMessage(), t);
+                }
+            }
+            expiredTimeouts.clear();
+            tick++;
+        }
+    }
+
+    /**
+     * @param tick the current tick
+     * @return the current time relative to the start time, at or after the end of the current tick, or -1 if
+     * interrupted
+     */
+    private long waitForNextTick(final long tick) {
+        long deadline = tickNanos * (tick + 1);
+        for (;;) {
+            long current = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - current + 999999L) / 1000000L;
+            if (sleepMillis <= 0L) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            }
+            catch (InterruptedException e) {
+                return -1L;
+            }
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPendingTimeouts(final long tick) {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long deadlineTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (deadlineTick - tick) / buckets.length;
+            // timeouts already due are executed in the current tick
+            buckets[(int)(Math.max(deadlineTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void collectExpiredTimeouts(final Bucket bucket, final long deadline) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            if (timeout.remainingRounds <= 0L && timeout.deadline <= deadline) {
+                Timeout next = bucket.remove(timeout);
+                if (timeout.state.compareAndSet(Timeout.ST_PENDING, Timeout.ST_EXPIRED)) {
+                    expiredTimeouts.add(timeout);
+                }
+                timeout = next;
+            }
+            else {
+                if (timeout.remainingRounds > 0L) {
+                    timeout.remainingRounds--;
+                }
+                timeout = timeout.next;
+            }
+        }
+    }
+}
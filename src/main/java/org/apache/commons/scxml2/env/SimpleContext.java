@@ -24,10 +24,19 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.scxml2.Context;
 import org.apache.commons.scxml2.SCXMLSystemContext;
+import org.apache.commons.scxml2.model.ContextLayout;
 
 /**
  * Simple Context wrapping a map of variables.
- *
+ * <p>
+ * If a {@link ContextLayout} is set, the declared variables are stored in a flat, slot indexed map and looking up a
+ * declared variable uses the precomputed resolution of the layout instead of searching the chain of parent
+ * Contexts one by one.
+ * </p>
+ * <p>
+ * A chain of SimpleContexts shares a {@link #getVersion() datamodel version}, which is incremented on every change
+ * of a variable in any of them.
+ * </p>
  */
 public class SimpleContext implements Context, Serializable {
 
@@ -40,6 +49,10 @@ public class SimpleContext implements Context, Serializable {
     private Context parent;
     /** The Map of variables and their values in this Context. */
     private Map<String, Object> vars;
+    /** The static variable layout of this Context, may be null. */
+    private ContextLayout layout;
+    /** The datamodel version, shared with the parent Context if that is a SimpleContext as well. */
+    private final Version version;
 
     protected final SCXMLSystemContext systemContext;
 
@@ -68,6 +81,7 @@ public class SimpleContext implements Context, Serializable {
      */
     public SimpleContext(final Context parent, final Map<String, Object> initialVars) {
         this.parent = parent;
+        this.version = parent instanceof SimpleContext ? ((SimpleContext)parent).version : new Version();
         this.systemContext = parent instanceof SCXMLSystemContext ?
                 (SCXMLSystemContext) parent : parent != null ? parent.getSystemContext() : null;
         if (initialVars == null) {
@@ -87,6 +101,14 @@ public class SimpleContext implements Context, Serializable {
      * @see org.apache.commons.scxml2.Context#set(String, Object)
      */
     public void set(final String name, final Object value) {
+        if (layout != null) {
+            int reference = layout.resolve(name);
+            SimpleContext declaring = reference > -1 ? resolveDeclaring(name, reference) : null;
+            if (declaring != null && ((SlotMap)declaring.getVars()).isDefined(ContextLayout.getSlot(reference))) {
+                declaring.setLocal(name, value);
+                return;
+            }
+        }
         if (getVars().containsKey(name)) { //first try to override local
             setLocal(name, value);
         } else if (parent != null && parent.has(name)) { //then check for global
@@ -104,6 +126,16 @@ public class SimpleContext implements Context, Serializable {
      * @see org.apache.commons.scxml2.Context#get(java.lang.String)
      */
     public Object get(final String name) {
+        if (layout != null) {
+            int reference = layout.resolve(name);
+            SimpleContext declaring = reference > -1 ? resolveDeclaring(name, reference) : null;
+            if (declaring != null) {
+                Object value = ((SlotMap)declaring.getVars()).getValue(ContextLayout.getSlot(reference));
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
         Object localValue = getVars().get(name);
         if (localValue != null) {
             return localValue;
@@ -122,6 +154,13 @@ public class SimpleContext implements Context, Serializable {
      * @see org.apache.commons.scxml2.Context#has(java.lang.String)
      */
     public boolean has(final String name) {
+        if (layout != null) {
+            int reference = layout.resolve(name);
+            SimpleContext declaring = reference > -1 ? resolveDeclaring(name, reference) : null;
+            if (declaring != null && ((SlotMap)declaring.getVars()).isDefined(ContextLayout.getSlot(reference))) {
+                return true;
+            }
+        }
         return (hasLocal(name) || (parent != null && parent.has(name)));
     }
 
@@ -143,6 +182,7 @@ public class SimpleContext implements Context, Serializable {
      */
     public void reset() {
         getVars().clear();
+        version.value++;
     }
 
     /**
@@ -175,17 +215,105 @@ public class SimpleContext implements Context, Serializable {
      */
     public void setLocal(final String name, final Object value) {
         getVars().put(name, value);
+        if (!NAMESPACES_KEY.equals(name)) {
+            // the namespaces are set and cleared around each expression evaluation, and are no datamodel variable
+            version.value++;
+        }
         if (log.isDebugEnabled()) {
             log.debug(name + " = " + String.valueOf(value));
         }
     }
 
+    /**
+     * Get the datamodel version of this Context and its parent SimpleContexts, which is incremented on every change
+     * of a variable in any of them.
+     * <p>
+     * As long as the version is unchanged, the result of an expression only reading datamodel variables is known to
+     * be unchanged as well, provided that variable values modified in place are reported through
+     * {@link #incrementVersion()}.
+     * </p>
+     *
+     * @return Returns the current datamodel version
+     */
+    public long getVersion() {
+        return version.value;
+    }
+
+    /**
+     * Increment the datamodel version, for a change of the datamodel not made through this Context, like a variable
+     * value modified in place by an assign expression or a script.
+     */
+    public void incrementVersion() {
+        version.value++;
+    }
+
+    /**
+     * Get the static variable layout of this Context.
+     *
+     * @return Returns the layout, or null if none
+     */
+    public ContextLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Set the static variable layout of this Context, replacing its variables map with a flat, slot indexed map for
+     * the declared variables.
+     * <p>
+     * The layout of a Context must match the layouts of its parent Contexts, and can only be set as long as
+     * no variables have been defined yet.
+     * </p>
+     *
+     * @param layout The layout, or null to use a plain variables map
+     */
+    public void setLayout(final ContextLayout layout) {
+        if (getVars() != null && !getVars().isEmpty()) {
+            throw new IllegalStateException("Context layout cannot be set after variables have been defined");
+        }
+        this.layout = layout;
+        setVars(layout != null ? new SlotMap(layout) : new HashMap<String, Object>());
+    }
+
+    /**
+     * Find the Context declaring a variable using a resolved layout reference, skipping the parent Contexts in
+     * between.
+     *
+     * @param name The variable name
+     * @param reference The resolved reference for the variable name
+     * @return The declaring Context, or null if the Context chain doesn't (or no longer) match the layouts, or if
+     * the variable is shadowed by a dynamically created variable
+     */
+    private SimpleContext resolveDeclaring(final String name, final int reference) {
+        SimpleContext current = this;
+        ContextLayout currentLayout = layout;
+        for (int depth = ContextLayout.getDepth(reference); ; depth--) {
+            if (current.layout != currentLayout || !(current.getVars() instanceof SlotMap)) {
+                return null;
+            }
+            if (depth == 0) {
+                return current;
+            }
+            SlotMap slotMap = (SlotMap)current.getVars();
+            if (slotMap.hasDynamicVars() && slotMap.containsKey(name)) {
+                return null;
+            }
+            if (!(current.getParent() instanceof SimpleContext)) {
+                return null;
+            }
+            current = (SimpleContext)current.getParent();
+            currentLayout = currentLayout.getParent();
+        }
+    }
+
     /**
      * Set the variables map.
      *
      * @param vars The new Map of variables.
      */
     protected void setVars(final Map<String, Object> vars) {
+        if (this.vars != null && this.vars != vars && !this.vars.isEmpty()) {
+            version.value++;
+        }
         this.vars = vars;
     }
 
@@ -216,5 +344,16 @@ public class SimpleContext implements Context, Serializable {
         return log;
     }
 
+    /**
+     * The mutable datamodel version shared by a chain of SimpleContexts.
+     */
+    private static final class Version implements Serializable {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        private long value;
+    }
+
 }
 
@@ -159,6 +159,27 @@ public class SimpleDispatcher implements EventDispatcher, Serializable {
         timers.remove(sendId);
     }
 
+    /**
+     * Schedule the delivery of a delayed event to the target io processor.
+     * <p>
+     * This implementation uses a dedicated <code>Timer</code> per event.
+     * Subclasses overriding this method to use another scheduling mechanism
+     * should override {@link #cancel(String)} as well.
+     * </p>
+     *
+     * @param id The ID of the send element.
+     * @param event The name of the event to be triggered.
+     * @param payload The event payload, if any.
+     * @param ioProcessor The target io processor
+     * @param delay The delay in milliseconds
+     */
+    protected void schedule(final String id, final String event, final Object payload,
+                            final SCXMLIOProcessor ioProcessor, final long delay) {
+        Timer timer = new Timer(true);
+        timer.schedule(new DelayedEventTask(id, event, payload, ioProcessor), delay);
+        timers.put(id, timer);
+    }
+
     /**
     @see EventDispatcher#send(java.util.Map, String, String, String, String, Object, Object, long)
      */
@@ -217,9 +238,7 @@ public class SimpleDispatcher implements EventDispatcher, Serializable {
 
             else if (!internal && delay > 0L) {
                 // Need to schedule this one
-                Timer timer = new Timer(true);
-                timer.schedule(new DelayedEventTask(id, event, data, ioProcessor), delay);
-                timers.put(id, timer);
+                schedule(id, event, data, ioProcessor, delay);
                 if (log.isDebugEnabled()) {
                     log.debug("Scheduled event '" + event + "' with delay "
                             + delay + "ms, as specified by <send> with id '"
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.env;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.scxml2.model.ContextLayout;
+
+/**
+ * The variables map of a {@link SimpleContext} with a {@link ContextLayout}: the values of the variables declared
+ * by the layout are stored in a flat array, indexed by their slot, while any other (dynamically created) variables
+ * are stored in a lazily created <code>HashMap</code>.
+ */
+final class SlotMap extends AbstractMap<String, Object> implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The layout of the declared variables */
+    private final ContextLayout layout;
+
+    /** The values of the declared variables, by slot */
+    private final Object[] values;
+
+    /** Whether a declared variable currently is defined, by slot */
+    private final boolean[] defined;
+
+    /** The number of currently defined declared variables */
+    private int definedCount;
+
+    /** The dynamically created variables, null until needed */
+    private Map<String, Object> dynamicVars;
+
+    /** The entry set view, created on demand */
+    private transient Set<Entry<String, Object>> entrySet;
+
+    SlotMap(final ContextLayout layout) {
+        this.layout = layout;
+        this.values = new Object[layout.getSlotCount()];
+        this.defined = new boolean[values.length];
+    }
+
+    ContextLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return true if any dynamically created (not declared) variable exists
+     */
+    boolean hasDynamicVars() {
+        return dynamicVars != null && !dynamicVars.isEmpty();
+    }
+
+    /**
+     * @param slot the slot of a declared variable
+     * @return true if the declared variable currently is defined
+     */
+    boolean isDefined(final int slot) {
+        return defined[slot];
+    }
+
+    /**
+     * @param slot the slot of a declared variable
+     * @return the value of the declared variable
+     */
+    Object getValue(final int slot) {
+        return values[slot];
+    }
+
+    @Override
+    public Object get(final Object key) {
+        if (key instanceof String) {
+            int slot = layout.getSlot((String)key);
+            if (slot > -1) {
+                return values[slot];
+            }
+        }
+        return dynamicVars != null ? dynamicVars.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        if (key instanceof String) {
+            int slot = layout.getSlot((String)key);
+            if (slot > -1) {
+                return defined[slot];
+            }
+        }
+        return dynamicVars != null && dynamicVars.containsKey(key);
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        int slot = key != null ? layout.getSlot(key) : -1;
+        if (slot > -1) {
+            Object old = values[slot];
+            values[slot] = value;
+            if (!defined[slot]) {
+                defined[slot] = true;
+                definedCount++;
+            }
+            return old;
+        }
+        if (dynamicVars == null) {
+            dynamicVars = new HashMap<String, Object>();
+        }
+        return dynamicVars.put(key, value);
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        if (key instanceof String) {
+            int slot = layout.getSlot((String)key);
+            if (slot > -1) {
+                return removeSlot(slot);
+            }
+        }
+        return dynamicVars != null ? dynamicVars.remove(key) : null;
+    }
+
+    private Object removeSlot(final int slot) {
+        Object old = values[slot];
+        values[slot] = null;
+        if (defined[slot]) {
+            defined[slot] = false;
+            definedCount--;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+            defined[i] = false;
+        }
+        definedCount = 0;
+        dynamicVars = null;
+    }
+
+    @Override
+    public int size() {
+        return definedCount + (dynamicVars != null ? dynamicVars.size() : 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SlotMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    SlotMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * A declared variable entry, writing through to its slot
+     */
+    private final class SlotEntry implements Entry<String, Object> {
+
+        private final int slot;
+
+        private SlotEntry(final int slot) {
+            this.slot = slot;
+        }
+
+        public String getKey() {
+            return layout.getName(slot);
+        }
+
+        public Object getValue() {
+            return values[slot];
+        }
+
+        public Object setValue(final Object value) {
+            Object old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>)o;
+            Object value = values[slot];
+            return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = values[slot];
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + values[slot];
+        }
+    }
+
+    /**
+     * Iterates the defined declared variables in slot order, followed by the dynamically created variables
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private int nextSlot = -1;
+        private int lastSlot = -1;
+        private Iterator<Entry<String, Object>> dynamicIterator;
+
+        private EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                nextSlot++;
+            } while (nextSlot < values.length && !defined[nextSlot]);
+        }
+
+        public boolean hasNext() {
+            if (nextSlot < values.length) {
+                return true;
+            }
+            if (dynamicIterator == null) {
+                if (dynamicVars == null) {
+                    return false;
+                }
+                dynamicIterator = dynamicVars.entrySet().iterator();
+            }
+            return dynamicIterator.hasNext();
+        }
+
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextSlot < values.length) {
+                lastSlot = nextSlot;
+                advance();
+                return new SlotEntry(lastSlot);
+            }
+            lastSlot = -1;
+            return dynamicIterator.next();
+        }
+
+        public void remove() {
+            if (lastSlot > -1) {
+                removeSlot(lastSlot);
+                lastSlot = -1;
+            }
+            else if (dynamicIterator != null) {
+                dynamicIterator.remove();
+            }
+            else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
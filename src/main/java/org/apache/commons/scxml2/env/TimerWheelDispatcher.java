@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.env;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.scxml2.EventDispatcher;
+import org.apache.commons.scxml2.SCXMLIOProcessor;
+import org.apache.commons.scxml2.TriggerEvent;
+
+/**
+ * <p>{@link SimpleDispatcher} extension which schedules <code>delay</code>ed &lt;send&gt; events on a
+ * {@link HashedTimerWheel}, instead of using a dedicated J2SE <code>Timer</code> (and thus thread) per event.</p>
+ *
+ * <p>By default all instances share one timer wheel (and thread), making this dispatcher suitable for running
+ * many state machine instances concurrently. Scheduling and cancelling an event by its &lt;send&gt; id are O(1), and
+ * all events due within the same tick are delivered as one batch.</p>
+ */
+public class TimerWheelDispatcher extends SimpleDispatcher {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lazy holder of the shared timer wheel
+     */
+    private static final class SharedTimerWheel {
+        private static final HashedTimerWheel INSTANCE = new HashedTimerWheel("SCXML-TimerWheelDispatcher");
+    }
+
+    /**
+     * The timer wheel used by this dispatcher
+     */
+    private transient HashedTimerWheel timerWheel;
+
+    /**
+     * The <code>Map</code> of pending delayed events, keyed by &lt;send&gt; element <code>id</code>s.
+     */
+    private transient Map<String, DelayedEvent> timeouts;
+
+    /**
+     * Constructor, using the shared timer wheel
+     */
+    public TimerWheelDispatcher() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param timerWheel the timer wheel to use, if null the shared timer wheel will be used
+     */
+    public TimerWheelDispatcher(final HashedTimerWheel timerWheel) {
+        this.timerWheel = timerWheel != null ? timerWheel : getSharedTimerWheel();
+        this.timeouts = new ConcurrentHashMap<String, DelayedEvent>();
+    }
+
+    /**
+     * @return Returns the timer wheel shared by all TimerWheelDispatcher instances created without a dedicated one
+     */
+    public static HashedTimerWheel getSharedTimerWheel() {
+        return SharedTimerWheel.INSTANCE;
+    }
+
+    /**
+     * @return Returns the timer wheel used by this dispatcher
+     */
+    public HashedTimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    /**
+     * @return Returns the number of pending (not yet delivered or cancelled) delayed events
+     */
+    public int getPendingEvents() {
+        return timeouts.size();
+    }
+
+    /**
+     * @see EventDispatcher#cancel(String)
+     */
+    @Override
+    public void cancel(final String sendId) {
+        if (getLog().isInfoEnabled()) {
+            getLog().info("cancel( sendId: " + sendId + ")");
+        }
+        DelayedEvent delayedEvent = timeouts.remove(sendId);
+        if (delayedEvent != null && delayedEvent.cancel() && getLog().isDebugEnabled()) {
+            getLog().debug("Cancelled event scheduled by <send> with id '" + sendId + "'");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation schedules the event on the timer wheel.
+     * </p>
+     */
+    @Override
+    protected void schedule(final String id, final String event, final Object payload,
+                            final SCXMLIOProcessor ioProcessor, final long delay) {
+        DelayedEvent delayedEvent = new DelayedEvent(id, event, payload, ioProcessor);
+        if (id != null) {
+            // registered before it is scheduled, so that it can't fire (and remove itself) before being registered
+            DelayedEvent previous = timeouts.put(id, delayedEvent);
+            if (previous != null) {
+                // a new event with the same <send> id replaces the previous one, like for SimpleDispatcher
+                previous.cancel();
+            }
+        }
+        delayedEvent.timeout = timerWheel.schedule(delayedEvent, delay, TimeUnit.MILLISECONDS);
+        if (delayedEvent.cancelled) {
+            // cancelled while being scheduled
+            delayedEvent.timeout.cancel();
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // pending events are not serialized
+        timerWheel = getSharedTimerWheel();
+        timeouts = new ConcurrentHashMap<String, DelayedEvent>();
+    }
+
+    /**
+     * The timer wheel task delivering a delayed event.
+     */
+    private class DelayedEvent implements Runnable {
+
+        private final String id;
+        private final String event;
+        private final Object payload;
+        private final SCXMLIOProcessor target;
+        private volatile HashedTimerWheel.Timeout timeout;
+        private volatile boolean cancelled;
+
+        private DelayedEvent(final String id, final String event, final Object payload,
+                             final SCXMLIOProcessor target) {
+            this.id = id;
+            this.event = event;
+            this.payload = payload;
+            this.target = target;
+        }
+
+        /**
+         * Cancels this event, also if it isn't scheduled on the timer wheel yet.
+         *
+         * @return true if the event was pending (not yet delivered or cancelled)
+         */
+        private boolean cancel() {
+            cancelled = true;
+            HashedTimerWheel.Timeout scheduled = timeout;
+            return scheduled == null || scheduled.cancel();
+        }
+
+        public void run() {
+            if (id != null) {
+                timeouts.remove(id, this);
+            }
+            if (cancelled) {
+                return;
+            }
+            target.addEvent(new TriggerEvent(event, TriggerEvent.SIGNAL_EVENT, payload));
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("Fired event '" + event + "' as scheduled by <send> with id '" + id + "'");
+            }
+        }
+    }
+}
@@ -49,6 +49,13 @@ public class URLResolver implements PathResolver, Serializable {
         this.baseURL = baseURL;
     }
 
+    /**
+     * @return Returns the base URL to resolve against
+     */
+    public URL getBaseURL() {
+        return baseURL;
+    }
+
     /**
      * Uses URL(URL, String) constructor to combine URL's.
      * @see org.apache.commons.scxml2.PathResolver#resolvePath(java.lang.String)
@@ -20,9 +20,15 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.security.AccessController;
+import java.security.CodeSource;
 import java.security.PrivilegedAction;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
 
 import groovy.lang.GroovyClassLoader;
@@ -34,7 +40,16 @@ import groovy.lang.Script;
  * GroovyExtendableScriptCache is a general purpose and <em>{@link Serializable}</em> Groovy Script cache.
  * <p>
  * It provides automatic compilation of scripts and caches the resulting class(es) internally, and after de-serialization
- * re-compiles the cached scripts automatically.
+ * lazily re-compiles the cached scripts automatically, on their first use.
+ * </p>
+ * <p>
+ * The cache is bounded by a {@link #getMaxCacheSize() maximum size}, beyond which the (approximately) least recently
+ * used scripts are evicted, along with their compiled classes in the underlying GroovyClassLoader, so that these can be
+ * unloaded. Lookups of compiled scripts take no lock, and a script is compiled only once when requested concurrently,
+ * without blocking the lookups of other scripts.
+ * The {@link #getHitCount() hit}, {@link #getMissCount() miss}, {@link #getEvictionCount() eviction} and
+ * {@link #getCompileCount() compile} counters, as well as the {@link #getCompileTimeNanos() total compile time},
+ * can be used to monitor the effectiveness of the cache.
  * </p>
  * <p>
  * It also provides easy support for (and scoped) script compilation with a specific {@link Script} base class.
@@ -70,7 +85,10 @@ import groovy.lang.Script;
  */
 public class GroovyExtendableScriptCache implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
+
+    /** Default maximum number of cached scripts */
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
 
     /**
      * Serializable factory interface providing the Groovy parent ClassLoader,
@@ -115,7 +133,9 @@ public class GroovyExtendableScriptCache implements Serializable {
         protected final String baseClass;
         protected final String scriptSource;
         protected String scriptName;
-        protected transient Class<? extends Script> scriptClass;
+        protected transient volatile Class<? extends Script> scriptClass;
+        protected transient volatile List<String> compiledClassNames;
+        protected transient volatile long lastAccess;
 
         public ScriptCacheElement(String baseClass, String scriptSource) {
             this.baseClass = baseClass;
@@ -146,6 +166,22 @@ public class GroovyExtendableScriptCache implements Serializable {
             this.scriptClass = scriptClass;
         }
 
+        public List<String> getCompiledClassNames() {
+            return compiledClassNames;
+        }
+
+        public void setCompiledClassNames(final List<String> compiledClassNames) {
+            this.compiledClassNames = compiledClassNames;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        public void setLastAccess(final long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+
         @Override
         public boolean equals(final Object o) {
             if (this == o) {
@@ -170,7 +206,88 @@ public class GroovyExtendableScriptCache implements Serializable {
         }
     }
 
-    private final LinkedHashMap<ScriptCacheElement, ScriptCacheElement> scriptCache = new LinkedHashMap<ScriptCacheElement, ScriptCacheElement>();
+    /**
+     * The GroovyClassLoader keeping track of the classes compiled for each script, to remove them from its class cache
+     * when the script is evicted, and compiling each script with its own CompilerConfiguration
+     */
+    private static class ScriptClassLoader extends GroovyClassLoader {
+
+        /** The names of the classes compiled by the current thread, if recorded */
+        private final ThreadLocal<List<String>> compiledClassNames = new ThreadLocal<List<String>>();
+
+        /** The CompilerConfiguration for the script parsed by the current thread, if any */
+        private final ThreadLocal<CompilerConfiguration> scriptConfiguration = new ThreadLocal<CompilerConfiguration>();
+
+        public ScriptClassLoader(final ClassLoader parent, final CompilerConfiguration config) {
+            super(parent, config);
+        }
+
+        @Override
+        protected CompilationUnit createCompilationUnit(final CompilerConfiguration config, final CodeSource source) {
+            CompilerConfiguration configuration = scriptConfiguration.get();
+            return super.createCompilationUnit(configuration != null ? configuration : config, source);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        protected void setClassCacheEntry(final Class cls) {
+            super.setClassCacheEntry(cls);
+            List<String> classNames = compiledClassNames.get();
+            if (classNames != null) {
+                classNames.add(cls.getName());
+            }
+        }
+
+        /**
+         * Records the names of all classes compiled by the current thread (a script class and its closures) in the
+         * provided list, or stops recording if null
+         */
+        public void recordCompiledClassNames(final List<String> classNames) {
+            if (classNames != null) {
+                compiledClassNames.set(classNames);
+            }
+            else {
+                compiledClassNames.remove();
+            }
+        }
+
+        /**
+         * Parses a script with a specific CompilerConfiguration
+         */
+        @SuppressWarnings("rawtypes")
+        public Class parseClass(final GroovyCodeSource codeSource, final CompilerConfiguration configuration) {
+            scriptConfiguration.set(configuration);
+            try {
+                return parseClass(codeSource, false);
+            }
+            finally {
+                scriptConfiguration.remove();
+            }
+        }
+
+        /**
+         * Removes the classes compiled for a script from the class cache, so that they can be unloaded
+         */
+        public void removeClassCacheEntries(final List<String> classNames) {
+            for (String className : classNames) {
+                removeClassCacheEntry(className);
+            }
+        }
+    }
+
+    /** The cached scripts, its monitor serializing the eviction */
+    private final ConcurrentHashMap<ScriptCacheElement, ScriptCacheElement> scriptCache =
+            new ConcurrentHashMap<ScriptCacheElement, ScriptCacheElement>();
+
+    private volatile int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+    private final AtomicInteger scriptCount = new AtomicInteger();
+
+    /* statistics, not serialized: initialized lazily after de-serialization */
+    private transient AtomicLong hitCount;
+    private transient AtomicLong missCount;
+    private transient AtomicLong evictionCount;
+    private transient AtomicLong compileCount;
+    private transient AtomicLong compileTimeNanos;
 
     private String scriptCodeBase = DEFAULT_SCRIPT_CODE_BASE;
     private String scriptBaseClass;
@@ -179,21 +296,32 @@ public class GroovyExtendableScriptCache implements Serializable {
     private ScriptPreProcessor scriptPreProcessor;
 
     /* non-serializable thus transient GroovyClassLoader and CompilerConfiguration */
-    private transient GroovyClassLoader groovyClassLoader;
-    private transient CompilerConfiguration compilerConfiguration;
+    private transient volatile ScriptClassLoader groovyClassLoader;
+    private transient volatile CompilerConfiguration compilerConfiguration;
 
     public GroovyExtendableScriptCache() {
+        initStatistics();
     }
 
     /**
-     * Hook into the de-serialization process, reloading the transient GroovyClassLoader, CompilerConfiguration and
-     * re-generate Script classes through {@link #ensureInitializedOrReloaded()}
+     * Hook into the de-serialization process, reloading the transient GroovyClassLoader and CompilerConfiguration
+     * through {@link #ensureInitializedOrReloaded()}.
+     * The previously cached Script classes are re-generated lazily, on their first use.
      */
     private void readObject(ObjectInputStream in) throws IOException,ClassNotFoundException {
         in.defaultReadObject();
+        initStatistics();
         ensureInitializedOrReloaded();
     }
 
+    private void initStatistics() {
+        hitCount = new AtomicLong();
+        missCount = new AtomicLong();
+        evictionCount = new AtomicLong();
+        compileCount = new AtomicLong();
+        compileTimeNanos = new AtomicLong();
+    }
+
     public ClassLoader getGroovyClassLoader() {
         return groovyClassLoader;
     }
@@ -209,22 +337,27 @@ public class GroovyExtendableScriptCache implements Serializable {
     }
 
     public Script getScript(String scriptBaseClass, String scriptSource) {
-        Class<? extends Script> scriptClass;
-        synchronized (scriptCache) {
-            ensureInitializedOrReloaded();
-            ScriptCacheElement cacheKey = new ScriptCacheElement(scriptBaseClass, scriptSource);
-            ScriptCacheElement cacheElement = scriptCache.get(cacheKey);
-            if (cacheElement != null) {
-                scriptClass = cacheElement.getScriptClass();
-            }
-            else {
-                String scriptName = generatedScriptName(scriptSource, scriptCache.size());
-                scriptClass = compileScript(scriptBaseClass, scriptSource, scriptName);
-                cacheKey.setScriptName(scriptName);
-                cacheKey.setScriptClass(scriptClass);
-                scriptCache.put(cacheKey, cacheKey);
+        ScriptCacheElement cacheKey = new ScriptCacheElement(scriptBaseClass, scriptSource);
+        ScriptCacheElement cacheElement = scriptCache.get(cacheKey);
+        Class<? extends Script> scriptClass = cacheElement != null ? cacheElement.getScriptClass() : null;
+        if (scriptClass != null) {
+            hitCount.incrementAndGet();
+        }
+        else {
+            missCount.incrementAndGet();
+            if (cacheElement == null) {
+                cacheKey.setScriptName(generatedScriptName(scriptSource, scriptCount.getAndIncrement()));
+                cacheKey.setLastAccess(System.nanoTime());
+                cacheElement = scriptCache.putIfAbsent(cacheKey, cacheKey);
+                if (cacheElement == null) {
+                    cacheElement = cacheKey;
+                    evictLeastRecentlyUsed();
+                }
             }
+            // new, or de-serialized and not yet re-compiled: only threads requesting this script wait for it
+            scriptClass = compileIfNeeded(cacheElement);
         }
+        cacheElement.setLastAccess(System.nanoTime());
         try {
             return scriptClass.newInstance();
         } catch (Exception e) {
@@ -232,23 +365,81 @@ public class GroovyExtendableScriptCache implements Serializable {
         }
     }
 
+    /**
+     * Compiles the script of a cache element, unless already done by another thread, recording the names of its
+     * compiled classes so these can be removed from the GroovyClassLoader class cache when the script is evicted.
+     */
+    private Class<? extends Script> compileIfNeeded(final ScriptCacheElement cacheElement) {
+        synchronized (cacheElement) {
+            Class<? extends Script> scriptClass = cacheElement.getScriptClass();
+            if (scriptClass == null) {
+                ensureInitializedOrReloaded();
+                List<String> compiledClassNames = new ArrayList<String>();
+                long start = System.nanoTime();
+                groovyClassLoader.recordCompiledClassNames(compiledClassNames);
+                try {
+                    scriptClass = compileScript(cacheElement.getBaseClass(), cacheElement.getScriptSource(),
+                            cacheElement.getScriptName());
+                }
+                finally {
+                    groovyClassLoader.recordCompiledClassNames(null);
+                }
+                compileTimeNanos.addAndGet(System.nanoTime() - start);
+                compileCount.incrementAndGet();
+                cacheElement.setCompiledClassNames(compiledClassNames);
+                cacheElement.setScriptClass(scriptClass);
+                if (scriptCache.get(cacheElement) != cacheElement) {
+                    // evicted (or cleared) while compiling: used once, but not kept in the class cache
+                    groovyClassLoader.removeClassCacheEntries(compiledClassNames);
+                }
+            }
+            return scriptClass;
+        }
+    }
+
     protected void ensureInitializedOrReloaded() {
         if (groovyClassLoader == null) {
-            compilerConfiguration = new CompilerConfiguration(getCompilerConfigurationFactory().getCompilerConfiguration());
-            if (getScriptBaseClass() != null) {
-                compilerConfiguration.setScriptBaseClass(getScriptBaseClass());
+            synchronized (this) {
+                if (groovyClassLoader == null) {
+                    compilerConfiguration = new CompilerConfiguration(getCompilerConfigurationFactory().getCompilerConfiguration());
+                    if (getScriptBaseClass() != null) {
+                        compilerConfiguration.setScriptBaseClass(getScriptBaseClass());
+                    }
+
+                    groovyClassLoader = AccessController.doPrivileged(new PrivilegedAction<ScriptClassLoader>() {
+                        public ScriptClassLoader run() {
+                            return new ScriptClassLoader(getParentClassLoaderFactory().getClassLoader(), compilerConfiguration);
+                        }
+                    });
+                    // when de-serialized, previously compiled scripts are re-generated on their first use
+                }
             }
+        }
+    }
 
-            groovyClassLoader = AccessController.doPrivileged(new PrivilegedAction<GroovyClassLoader>() {
-                public GroovyClassLoader run() {
-                    return new GroovyClassLoader(getParentClassLoaderFactory().getClassLoader(), compilerConfiguration);
-                }
-            });
-            if (!scriptCache.isEmpty()) {
-                // de-serialized: need to re-generate all previously compiled scripts (this can cause a hick-up...):
+    /**
+     * Evicts the least recently used script(s) while the cache exceeds its maximum size, and removes their compiled
+     * classes from the GroovyClassLoader class cache.
+     * The eviction is serialized on the scriptCache monitor, which lookups don't take. As the last access times are
+     * updated without locking, the eviction order is approximate.
+     */
+    protected void evictLeastRecentlyUsed() {
+        synchronized (scriptCache) {
+            while (scriptCache.size() > maxCacheSize) {
+                ScriptCacheElement eldest = null;
                 for (ScriptCacheElement element : scriptCache.keySet()) {
-                    element.setScriptClass(compileScript(element.getBaseClass(), element.getScriptSource(), element.getScriptName()));
+                    if (eldest == null || element.getLastAccess() < eldest.getLastAccess()) {
+                        eldest = element;
+                    }
+                }
+                if (eldest == null || !scriptCache.remove(eldest, eldest)) {
+                    break;
+                }
+                List<String> compiledClassNames = eldest.getCompiledClassNames();
+                if (groovyClassLoader != null && compiledClassNames != null) {
+                    groovyClassLoader.removeClassCacheEntries(compiledClassNames);
                 }
+                evictionCount.incrementAndGet();
             }
         }
     }
@@ -263,16 +454,13 @@ public class GroovyExtendableScriptCache implements Serializable {
             }
         });
 
-        String currentScriptBaseClass = compilerConfiguration.getScriptBaseClass();
-        try {
-            if (scriptBaseClass != null) {
-                compilerConfiguration.setScriptBaseClass(scriptBaseClass);
-            }
-            return groovyClassLoader.parseClass(codeSource, false);
-        }
-        finally {
-            compilerConfiguration.setScriptBaseClass(currentScriptBaseClass);
+        // compile with a copy of the CompilerConfiguration, as other scripts may be compiled concurrently
+        CompilerConfiguration configuration = compilerConfiguration;
+        if (scriptBaseClass != null) {
+            configuration = new CompilerConfiguration(compilerConfiguration);
+            configuration.setScriptBaseClass(scriptBaseClass);
         }
+        return groovyClassLoader.parseClass(codeSource, configuration);
     }
 
     protected String preProcessScript(String scriptSource) {
@@ -337,11 +525,56 @@ public class GroovyExtendableScriptCache implements Serializable {
         this.scriptPreProcessor = scriptPreProcessor;
     }
 
-    public boolean isEmpty() {
-        synchronized (scriptCache) {
-            return scriptCache.isEmpty();
+    /** @return The maximum number of cached scripts */
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize The maximum number of cached scripts, beyond which the least recently used scripts are evicted
+     */
+    public void setMaxCacheSize(final int maxCacheSize) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("maxCacheSize must be at least 1");
         }
+        this.maxCacheSize = maxCacheSize;
+        evictLeastRecentlyUsed();
+    }
+
+    /** @return The current number of cached scripts */
+    public int size() {
+        return scriptCache.size();
     }
+
+    /** @return The number of script lookups served by an already compiled cached script */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** @return The number of script lookups which required a script to be compiled (or awaiting its compilation) */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** @return The number of scripts evicted from the cache */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /** @return The number of script compilations, including re-compilations after de-serialization */
+    public long getCompileCount() {
+        return compileCount.get();
+    }
+
+    /** @return The total time spent compiling scripts, in nanoseconds */
+    public long getCompileTimeNanos() {
+        return compileTimeNanos.get();
+    }
+
+    public boolean isEmpty() {
+        return scriptCache.isEmpty();
+    }
+
     public void clearCache() {
         synchronized (scriptCache) {
             scriptCache.clear();
@@ -17,9 +17,11 @@
 
 package org.apache.commons.scxml2.env.javascript;
 
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.script.Bindings;
@@ -86,20 +88,30 @@ public class JSBindings implements Bindings {
     }
 
     /**
-     * Returns a union of the wrapped Bindings entry set and the
-     * SCXML context entry set.
+     * Returns a (live) union of the wrapped Bindings key set and the
+     * SCXML context key set.
      * <p>
      * NOTE: doesn't seem to be invoked ever. Not thread-safe.
      *
      */
     @Override
     public Set<String> keySet() {
-        Set<String> keys = new HashSet<String>();
-
-        keys.addAll(context.getVars().keySet());
-        keys.addAll(bindings.keySet());
-
-        return keys;
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new KeyIterator();
+            }
+
+            @Override
+            public int size() {
+                return JSBindings.this.size();
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return context.getVars().containsKey(key) || bindings.containsKey(key);
+            }
+        };
     }
 
     /**
@@ -112,12 +124,13 @@ public class JSBindings implements Bindings {
      */
     @Override
     public int size() {
-        Set<String> keys = new HashSet<String>();
-
-        keys.addAll(context.getVars().keySet());
-        keys.addAll(bindings.keySet());
-
-        return keys.size();
+        Map<String, Object> vars = context.getVars();
+        int size = vars.size();
+        for (String key : bindings.keySet()) {
+            if (!vars.containsKey(key))
+                size++;
+        }
+        return size;
     }
 
     /**
@@ -271,5 +284,39 @@ public class JSBindings implements Bindings {
         return set;
     }
 
-}
+    /**
+     * Iterates the SCXML context keys followed by the wrapped Bindings keys
+     * not also in the SCXML context.
+     */
+    private class KeyIterator implements Iterator<String> {
+
+        private final Iterator<String> contextKeys = context.getVars().keySet().iterator();
+        private final Iterator<String> bindingsKeys = bindings.keySet().iterator();
+        private String next;
+
+        public boolean hasNext() {
+            if (next == null && contextKeys.hasNext()) {
+                next = contextKeys.next();
+            }
+            while (next == null && bindingsKeys.hasNext()) {
+                String key = bindingsKeys.next();
+                if (!context.getVars().containsKey(key))
+                    next = key;
+            }
+            return next != null;
+        }
+
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            String key = next;
+            next = null;
+            return key;
+        }
 
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
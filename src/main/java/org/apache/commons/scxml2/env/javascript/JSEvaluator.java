@@ -17,13 +17,19 @@
 
 package org.apache.commons.scxml2.env.javascript;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
 
 import org.apache.commons.scxml2.Context;
 import org.apache.commons.scxml2.Evaluator;
@@ -42,6 +48,14 @@ import org.apache.commons.scxml2.model.SCXML;
  * the Data() function, for example,
  * &lt;assign location="Data(hotelbooking,'hotel/rooms')" expr="2" /&gt;
  * <p>
+ * By default every evaluation uses a new Javascript engine. Optionally, a
+ * JSEvaluator can be created which keeps and reuses one engine, and caches
+ * the compiled script for each expression, with its built-in functions
+ * already rewritten, so that (e.g. guard condition) expressions evaluated
+ * repeatedly are parsed and compiled only once. Each evaluation still gets
+ * new engine scope bindings, so that (undeclared) global variables set by a
+ * script don't persist across evaluations, like with a new engine.
+ * </p>
  */
 
 public class JSEvaluator implements Evaluator {
@@ -55,6 +69,25 @@ public class JSEvaluator implements Evaluator {
 
     public static class JSEvaluatorProvider implements EvaluatorProvider {
 
+        private final boolean cacheCompiledScripts;
+
+        /**
+         * Creates a provider of evaluators using a new Javascript engine for every evaluation.
+         */
+        public JSEvaluatorProvider() {
+            this(false);
+        }
+
+        /**
+         * Creates a provider of evaluators.
+         *
+         * @param cacheCompiledScripts if true, the evaluators reuse one Javascript engine and cache the compiled
+         *                             script for each expression, see {@link JSEvaluator#JSEvaluator(boolean)}
+         */
+        public JSEvaluatorProvider(final boolean cacheCompiledScripts) {
+            this.cacheCompiledScripts = cacheCompiledScripts;
+        }
+
         @Override
         public String getSupportedDatamodel() {
             return SUPPORTED_DATA_MODEL;
@@ -62,12 +95,12 @@ public class JSEvaluator implements Evaluator {
 
         @Override
         public Evaluator getEvaluator() {
-            return new JSEvaluator();
+            return new JSEvaluator(cacheCompiledScripts);
         }
 
         @Override
         public Evaluator getEvaluator(final SCXML document) {
-            return new JSEvaluator();
+            return new JSEvaluator(cacheCompiledScripts);
         }
     }
 
@@ -82,17 +115,75 @@ public class JSEvaluator implements Evaluator {
 
     private ScriptEngineManager factory;
 
+    /** Flag indicating if the engine is reused and compiled scripts are cached. */
+    private final boolean cacheCompiledScripts;
+
+    /** The reused Javascript engine, if cacheCompiledScripts. */
+    private ScriptEngine scriptEngine;
+
+    /** The default maximum number of cached compiled scripts. */
+    public static final int DEFAULT_MAX_CACHED_SCRIPTS = 1024;
+
+    /**
+     * The cached compiled scripts (or rewritten expressions, if the engine cannot compile), keyed by expression,
+     * in least recently used order.
+     */
+    private final Map<String, Object> compiledScripts;
+
     // CONSTRUCTORS
 
     /**
      * Initialises the internal Javascript engine factory.
      */
     public JSEvaluator() {
+        this(false);
+    }
+
+    /**
+     * Initialises the internal Javascript engine factory.
+     *
+     * @param cacheCompiledScripts if true, one Javascript engine will be reused for all evaluations, and the compiled
+     *                             script for each expression will be cached
+     */
+    public JSEvaluator(final boolean cacheCompiledScripts) {
+        this(cacheCompiledScripts, DEFAULT_MAX_CACHED_SCRIPTS);
+    }
+
+    /**
+     * Initialises the internal Javascript engine factory.
+     *
+     * @param cacheCompiledScripts if true, one Javascript engine will be reused for all evaluations, and the compiled
+     *                             script for each expression will be cached
+     * @param maxCachedScripts the maximum number of cached compiled scripts, the least recently used one is evicted
+     *                         when exceeded
+     */
+    public JSEvaluator(final boolean cacheCompiledScripts, final int maxCachedScripts) {
+        if (maxCachedScripts < 1) {
+            throw new IllegalArgumentException("The maximum number of cached scripts must be positive: "
+                    + maxCachedScripts);
+        }
         factory = new ScriptEngineManager();
+        this.cacheCompiledScripts = cacheCompiledScripts;
+        this.compiledScripts = Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Object> eldest) {
+                return size() > maxCachedScripts;
+            }
+        });
     }
 
     // INSTANCE METHODS
 
+    /**
+     * @return Returns true if one Javascript engine is reused for all evaluations, and the compiled script for each
+     * expression is cached
+     */
+    public boolean isCacheCompiledScripts() {
+        return cacheCompiledScripts;
+    }
+
     @Override
     public String getSupportedDatamodel() {
         return SUPPORTED_DATA_MODEL;
@@ -125,6 +216,13 @@ public class JSEvaluator implements Evaluator {
      */
     @Override
     public Object eval(Context context,String expression) throws SCXMLExpressionException {
+        if (cacheCompiledScripts) {
+            try {
+                return evalCompiled(context, expression);
+            } catch (Exception x) {
+                throw new SCXMLExpressionException("Error evaluating ['" + expression + "'] " + x);
+            }
+        }
         try {
 
             // ... initialize
@@ -132,9 +230,7 @@ public class JSEvaluator implements Evaluator {
             Bindings     bindings = engine.getBindings     (ScriptContext.ENGINE_SCOPE);
 
             // ... replace built-in functions
-            String jsExpression = IN_FN.matcher(expression).replaceAll("_builtin.In(");
-            jsExpression = DATA_FN.matcher(jsExpression).replaceAll("_builtin.Data(");
-            jsExpression = LOCATION_FN.matcher(jsExpression).replaceAll("_builtin.Location(");
+            String jsExpression = replaceBuiltins(expression);
 
             // ... evaluate
             JSBindings jsBindings = new JSBindings(context, bindings);
@@ -146,6 +242,57 @@ public class JSEvaluator implements Evaluator {
         }
     }
 
+    /**
+     * Evaluates the expression using the reused Javascript engine and the
+     * cached compiled script for the expression, compiling (and caching) it
+     * first if needed. The script is evaluated with new engine scope bindings.
+     *
+     * @param context    SCXML context.
+     * @param expression Expression to evaluate.
+     *
+     * @return Result of expression evaluation or <code>null</code>.
+     *
+     * @throws ScriptException Thrown if the expression was invalid.
+     */
+    private Object evalCompiled(final Context context, final String expression) throws ScriptException {
+        ScriptEngine engine = getEngine();
+        Object script = compiledScripts.get(expression);
+        if (script == null) {
+            String jsExpression = replaceBuiltins(expression);
+            script = engine instanceof Compilable ? ((Compilable)engine).compile(jsExpression) : jsExpression;
+            compiledScripts.put(expression, script);
+        }
+        JSBindings jsBindings = new JSBindings(context, engine.createBindings());
+        jsBindings.put("_builtin", new JSFunctions(context));
+        if (script instanceof CompiledScript) {
+            return ((CompiledScript)script).eval(jsBindings);
+        }
+        return engine.eval((String)script, jsBindings);
+    }
+
+    /**
+     * @return Returns the reused Javascript engine, creating it first if needed.
+     */
+    private synchronized ScriptEngine getEngine() {
+        if (scriptEngine == null) {
+            scriptEngine = factory.getEngineByName("JavaScript");
+        }
+        return scriptEngine;
+    }
+
+    /**
+     * Replaces the Commons SCXML built-in functions in an expression with
+     * their equivalent internal Javascript functions.
+     *
+     * @param expression Expression to rewrite.
+     * @return the rewritten expression
+     */
+    private static String replaceBuiltins(final String expression) {
+        String jsExpression = IN_FN.matcher(expression).replaceAll("_builtin.In(");
+        jsExpression = DATA_FN.matcher(jsExpression).replaceAll("_builtin.Data(");
+        return LOCATION_FN.matcher(jsExpression).replaceAll("_builtin.Location(");
+    }
+
     /**
      * Evaluates a conditional expression using the <code>eval()</code> method and
      * casting the result to a Boolean.
@@ -24,6 +24,7 @@ import java.util.UUID;
 import org.apache.commons.jexl2.Expression;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.Script;
+import org.apache.commons.scxml2.ConcurrentEvaluator;
 import org.apache.commons.scxml2.Context;
 import org.apache.commons.scxml2.Evaluator;
 import org.apache.commons.scxml2.EvaluatorProvider;
@@ -40,7 +41,7 @@ import org.apache.commons.scxml2.model.SCXML;
  * for efficiency of the internal <code>JexlEngine</code> member.
  * </P>
  */
-public class JexlEvaluator implements Evaluator, Serializable {
+public class JexlEvaluator implements ConcurrentEvaluator, Serializable {
 
     /** Serial version UID. */
     private static final long serialVersionUID = 1L;
@@ -66,7 +67,7 @@ public class JexlEvaluator implements Evaluator, Serializable {
 
         @Override
         public Evaluator getEvaluator(final SCXML document) {
-            return new JexlEvaluator();
+            return new JexlEvaluator(JexlExpressionCache.getInstance(document));
         }
     }
 
@@ -84,13 +85,37 @@ public class JexlEvaluator implements Evaluator, Serializable {
     /** The current JexlEngine strict mode, stored locally to be reapplied after deserialization of the engine */
     private boolean jexlEngineStrict;
 
+    /** The precompiled expressions of the document, not used after deserialization */
+    private transient JexlExpressionCache expressionCache;
+
     /** Constructor. */
     public JexlEvaluator() {
+        this(null);
+    }
+
+    /**
+     * Constructor using the precompiled expressions and scripts of a document.
+     * <p>
+     * The expression cache is only used as long as the JexlEngine silent and strict modes of this evaluator are the
+     * same as those of the engine of the cache, and should not be used by subclasses which configure a different
+     * JexlEngine through {@link #createJexlEngine()}.
+     * </p>
+     * @param expressionCache The expression cache of the document, may be null
+     */
+    public JexlEvaluator(final JexlExpressionCache expressionCache) {
         super();
         // create the internal JexlEngine initially
         jexlEngine = createJexlEngine();
         jexlEngineSilent = jexlEngine.isSilent();
         jexlEngineStrict = jexlEngine.isStrict();
+        this.expressionCache = expressionCache;
+    }
+
+    /**
+     * @return Returns the precompiled expression cache used by this evaluator, or null if none
+     */
+    public JexlExpressionCache getExpressionCache() {
+        return expressionCache;
     }
 
     /**
@@ -143,6 +168,15 @@ public class JexlEvaluator implements Evaluator, Serializable {
         return SUPPORTED_DATA_MODEL;
     }
 
+    /**
+     * @return Returns true, as conditions are evaluated against a private effective context by the thread-safe
+     * JexlEngine
+     */
+    @Override
+    public boolean isConcurrentEvalCondSupported() {
+        return true;
+    }
+
     /**
      * Evaluate an expression.
      *
@@ -162,7 +196,7 @@ public class JexlEvaluator implements Evaluator, Serializable {
         }
         try {
             final JexlContext effective = getEffectiveContext((JexlContext)ctx);
-            Expression exp = getJexlEngine().createExpression(expr);
+            Expression exp = getExpression(expr);
             return exp.evaluate(effective);
         } catch (Exception e) {
             String exMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getCanonicalName();
@@ -183,7 +217,7 @@ public class JexlEvaluator implements Evaluator, Serializable {
         }
         try {
             final JexlContext effective = getEffectiveContext((JexlContext)ctx);
-            Expression exp = getJexlEngine().createExpression(expr);
+            Expression exp = getExpression(expr);
             final Object result = exp.evaluate(effective);
             return result == null ? Boolean.FALSE : (Boolean)result;
         } catch (Exception e) {
@@ -209,7 +243,7 @@ public class JexlEvaluator implements Evaluator, Serializable {
         }
         try {
             final JexlContext effective = getEffectiveContext((JexlContext)ctx);
-            Expression exp = getJexlEngine().createExpression(expr);
+            Expression exp = getExpression(expr);
             return exp.evaluate(effective);
         } catch (Exception e) {
             String exMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getCanonicalName();
@@ -230,10 +264,9 @@ public class JexlEvaluator implements Evaluator, Serializable {
                 XPathBuiltin.assign(ctx, loc, data, type, attr);
             }
             else {
-                StringBuilder sb = new StringBuilder(location).append("=").append(ASSIGN_VARIABLE_NAME);
                 try {
                     ctx.getVars().put(ASSIGN_VARIABLE_NAME, data);
-                    eval(ctx, sb.toString());
+                    eval(ctx, getAssignExpression(location));
                 }
                 finally {
                     ctx.getVars().remove(ASSIGN_VARIABLE_NAME);
@@ -258,7 +291,7 @@ public class JexlEvaluator implements Evaluator, Serializable {
         }
         try {
             final JexlContext effective = getEffectiveContext((JexlContext) ctx);
-            final Script jexlScript = getJexlEngine().createScript(script);
+            final Script jexlScript = getScript(script);
             return jexlScript.execute(effective);
         } catch (Exception e) {
             String exMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getCanonicalName();
@@ -284,13 +317,21 @@ public class JexlEvaluator implements Evaluator, Serializable {
      * @return new JexlEngine instance
      */
     protected JexlEngine createJexlEngine() {
+        JexlEngine engine = createDefaultJexlEngine();
+        engine.setCache(256);
+        return engine;
+    }
+
+    /**
+     * @return a new JexlEngine instance with the default configuration, without expression cache
+     */
+    static JexlEngine createDefaultJexlEngine() {
         JexlEngine engine = new JexlEngine();
         // With null prefix, define top-level user defined functions.
         // See javadoc of org.apache.commons.jexl2.JexlEngine#setFunctions(Map<String,Object> funcs) for detail.
         Map<String, Object> funcs = new HashMap<String, Object>();
         funcs.put(null, JexlBuiltin.class);
         engine.setFunctions(funcs);
-        engine.setCache(256);
         return engine;
     }
 
@@ -317,6 +358,54 @@ public class JexlEvaluator implements Evaluator, Serializable {
         return engine;
     }
 
+    /**
+     * @param location An assignment location
+     * @return the expression used by {@link #evalAssign(Context, String, Object, AssignType, String)} to assign the
+     * (temporary) data variable to the location
+     */
+    static String getAssignExpression(final String location) {
+        return location + "=" + ASSIGN_VARIABLE_NAME;
+    }
+
+    /**
+     * Returns the precompiled expression if available, or otherwise creates it using the internal JexlEngine.
+     * @param expr The expression
+     * @return the expression
+     */
+    private Expression getExpression(final String expr) {
+        if (isExpressionCacheUsable()) {
+            Expression exp = expressionCache.getExpression(expr);
+            if (exp != null) {
+                return exp;
+            }
+        }
+        return getJexlEngine().createExpression(expr);
+    }
+
+    /**
+     * Returns the precompiled script if available, or otherwise creates it using the internal JexlEngine.
+     * @param script The script
+     * @return the script
+     */
+    private Script getScript(final String script) {
+        if (isExpressionCacheUsable()) {
+            Script jexlScript = expressionCache.getScript(script);
+            if (jexlScript != null) {
+                return jexlScript;
+            }
+        }
+        return getJexlEngine().createScript(script);
+    }
+
+    /**
+     * @return true if an expression cache is available and its engine is configured the same as the internal
+     * JexlEngine
+     */
+    private boolean isExpressionCacheUsable() {
+        return expressionCache != null && expressionCache.getEngine().isSilent() == jexlEngineSilent
+                && expressionCache.getEngine().isStrict() == jexlEngineStrict;
+    }
+
     /**
      * Create a new context which is the summation of contexts from the
      * current state to document root, child has priority over parent
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.env.jexl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.JexlException;
+import org.apache.commons.jexl2.Script;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.scxml2.model.DocumentExpressions;
+import org.apache.commons.scxml2.model.SCXML;
+
+/**
+ * An immutable cache of the JEXL expressions and scripts of a SCXML document, all compiled once when the cache is
+ * created, and shared by all {@link JexlEvaluator} instances for that document.
+ * <p>
+ * The expressions are compiled with a JexlEngine configured like the default JexlEvaluator engine, and therefore
+ * only can be used by JexlEvaluator instances using the default engine configuration. Expressions which cannot be
+ * compiled (or are only constructed at runtime) are not cached, and thus left to the evaluator itself.
+ * </p>
+ */
+public final class JexlExpressionCache {
+
+    private static final Log log = LogFactory.getLog(JexlExpressionCache.class);
+
+    /**
+     * The expression caches per document, as long as the document is in use
+     */
+    private static final Map<SCXML, JexlExpressionCache> documentCaches = new WeakHashMap<SCXML, JexlExpressionCache>();
+
+    /** The JexlEngine used to compile (and evaluate) the cached expressions and scripts */
+    private final JexlEngine engine;
+
+    /** The compiled expressions, keyed by their source */
+    private final Map<String, Expression> expressions;
+
+    /** The compiled scripts, keyed by their source */
+    private final Map<String, Script> scripts;
+
+    /**
+     * Returns the (shared) expression cache for a document, compiling it on first use.
+     *
+     * @param document The SCXML document
+     * @return Returns the expression cache for the document
+     */
+    public static JexlExpressionCache getInstance(final SCXML document) {
+        synchronized (documentCaches) {
+            JexlExpressionCache cache = documentCaches.get(document);
+            if (cache == null) {
+                cache = new JexlExpressionCache(document);
+                documentCaches.put(document, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Constructor, compiling all expressions and scripts of the provided document.
+     *
+     * @param document The SCXML document
+     */
+    public JexlExpressionCache(final SCXML document) {
+        engine = JexlEvaluator.createDefaultJexlEngine();
+        DocumentExpressions documentExpressions = new DocumentExpressions(document);
+        Map<String, Expression> expressions = new HashMap<String, Expression>();
+        for (String expr : documentExpressions.getConditions()) {
+            addExpression(expressions, expr);
+        }
+        for (String expr : documentExpressions.getValues()) {
+            addExpression(expressions, expr);
+        }
+        for (String location : documentExpressions.getLocations()) {
+            addExpression(expressions, location);
+            addExpression(expressions, JexlEvaluator.getAssignExpression(location));
+        }
+        Map<String, Script> scripts = new HashMap<String, Script>();
+        for (String script : documentExpressions.getScripts()) {
+            try {
+                scripts.put(script, engine.createScript(script));
+            }
+            catch (JexlException e) {
+                logSkipped(script, e);
+            }
+        }
+        this.expressions = Collections.unmodifiableMap(expressions);
+        this.scripts = Collections.unmodifiableMap(scripts);
+    }
+
+    private void addExpression(final Map<String, Expression> expressions, final String expr) {
+        if (!expressions.containsKey(expr)) {
+            try {
+                expressions.put(expr, engine.createExpression(expr));
+            }
+            catch (JexlException e) {
+                logSkipped(expr, e);
+            }
+        }
+    }
+
+    private static void logSkipped(final String source, final JexlException e) {
+        if (log.isDebugEnabled()) {
+            log.debug("Not caching invalid JEXL expression or script '" + source + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Returns the JexlEngine used to compile the cached expressions and scripts
+     */
+    JexlEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @param expr The expression source
+     * @return Returns the compiled expression, or null if not cached
+     */
+    public Expression getExpression(final String expr) {
+        return expressions.get(expr);
+    }
+
+    /**
+     * @param script The script source
+     * @return Returns the compiled script, or null if not cached
+     */
+    public Script getScript(final String script) {
+        return scripts.get(script);
+    }
+
+    /**
+     * @return Returns the number of cached expressions and scripts
+     */
+    public int size() {
+        return expressions.size() + scripts.size();
+    }
+}
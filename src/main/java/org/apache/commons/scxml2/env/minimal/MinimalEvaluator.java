@@ -19,6 +19,7 @@ package org.apache.commons.scxml2.env.minimal;
 import java.io.Serializable;
 
 import org.apache.commons.scxml2.Builtin;
+import org.apache.commons.scxml2.ConcurrentEvaluator;
 import org.apache.commons.scxml2.Context;
 import org.apache.commons.scxml2.Evaluator;
 import org.apache.commons.scxml2.EvaluatorProvider;
@@ -31,7 +32,7 @@ import org.apache.commons.scxml2.model.SCXML;
  * The SCXML Null Data Model only supports the SCXML "In(stateId)" builtin function.
  * </p>
  */
-public class MinimalEvaluator implements Evaluator, Serializable {
+public class MinimalEvaluator implements ConcurrentEvaluator, Serializable {
 
     /** Serial version UID. */
     private static final long serialVersionUID = 1L;
@@ -61,6 +62,11 @@ public class MinimalEvaluator implements Evaluator, Serializable {
         return SUPPORTED_DATA_MODEL;
     }
 
+    @Override
+    public boolean isConcurrentEvalCondSupported() {
+        return true;
+    }
+
     @Override
     public Object eval(final Context ctx, final String expr) throws SCXMLExpressionException {
         return expr;
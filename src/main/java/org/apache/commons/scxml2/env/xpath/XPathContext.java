@@ -16,6 +16,9 @@
  */
 package org.apache.commons.scxml2.env.xpath;
 
+import java.util.Map;
+
+import org.apache.commons.jxpath.JXPathContext;
 import org.apache.commons.jxpath.Variables;
 import org.apache.commons.scxml2.Context;
 import org.apache.commons.scxml2.env.SimpleContext;
@@ -30,6 +33,13 @@ implements Context, Variables {
     /** Serial version UID. */
     private static final long serialVersionUID = -6803159294612685806L;
 
+    /** The JXPathContext for evaluating expressions within this context, reused by the XPathEvaluator */
+    private transient JXPathContext jxpathContext;
+    /** The parent JXPathContext of the evaluator for which the jxpathContext was created */
+    private transient JXPathContext jxpathParentContext;
+    /** The namespaces in scope for which the jxpathContext was created */
+    private transient Map<String, String> jxpathNamespaces;
+
     /**
      * No argument constructor.
      *
@@ -47,6 +57,28 @@ implements Context, Variables {
         super(parent);
     }
 
+    /**
+     * @param parentContext The parent JXPathContext of the evaluator
+     * @param namespaces The namespaces currently in scope
+     * @return the JXPathContext previously created for the same evaluator parent JXPathContext and namespaces, or
+     * null if none
+     */
+    JXPathContext getJXPathContext(final JXPathContext parentContext, final Map<String, String> namespaces) {
+        return jxpathParentContext == parentContext && jxpathNamespaces == namespaces ? jxpathContext : null;
+    }
+
+    /**
+     * @param parentContext The parent JXPathContext of the evaluator
+     * @param namespaces The namespaces in scope
+     * @param context The JXPathContext created for the evaluator parent JXPathContext and namespaces
+     */
+    void setJXPathContext(final JXPathContext parentContext, final Map<String, String> namespaces,
+                          final JXPathContext context) {
+        this.jxpathParentContext = parentContext;
+        this.jxpathNamespaces = namespaces;
+        this.jxpathContext = context;
+    }
+
     @Override
     public boolean isDeclaredVariable(final String varName) {
         return has(varName);
@@ -73,6 +105,7 @@ implements Context, Variables {
                 }
             }
             ctx.getVars().remove(varName);
+            incrementVersion();
         }
     }
 }
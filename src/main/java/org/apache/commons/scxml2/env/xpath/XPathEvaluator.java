@@ -21,8 +21,11 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.jxpath.ClassFunctions;
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.FunctionLibrary;
 import org.apache.commons.jxpath.Functions;
 import org.apache.commons.jxpath.JXPathContext;
@@ -47,6 +50,10 @@ import org.w3c.dom.NodeList;
  *
  * <p>Does not support the &lt;script&gt; module, throws
  * {@link UnsupportedOperationException} if attempted.</p>
+ *
+ * <p>XPath expressions are compiled only once and cached (up to {@link #MAX_COMPILED_EXPRESSIONS} expressions) per
+ * evaluator instance, and the JXPathContext for evaluating expressions is created only once per
+ * {@link XPathContext}, until the namespaces in scope change.</p>
  */
 public class XPathEvaluator implements Evaluator, Serializable {
 
@@ -55,6 +62,11 @@ public class XPathEvaluator implements Evaluator, Serializable {
 
     public static final String SUPPORTED_DATA_MODEL = Evaluator.XPATH_DATA_MODEL;
 
+    /**
+     * The maximum number of compiled expressions cached per evaluator instance
+     */
+    public static final int MAX_COMPILED_EXPRESSIONS = 1000;
+
     /**
      * Internal 'marker' list used for collecting the NodePointer results of an {@link #evalLocation(Context, String)}
      */
@@ -91,6 +103,11 @@ public class XPathEvaluator implements Evaluator, Serializable {
 
     private JXPathContext jxpathContext;
 
+    /**
+     * The compiled expressions, keyed by XPath expression
+     */
+    private transient volatile ConcurrentMap<String, CompiledExpression> compiledExpressions;
+
     /**
      * No argument constructor.
      */
@@ -120,12 +137,18 @@ public class XPathEvaluator implements Evaluator, Serializable {
     public Object eval(final Context ctx, final String expr)
             throws SCXMLExpressionException {
         try {
-            List list = getContext(ctx).selectNodes(expr);
-            if (list.isEmpty()) {
+            Iterator iterator = compile(expr).iteratePointers(getContext(ctx));
+            if (!iterator.hasNext()) {
                 return null;
             }
-            else if (list.size() == 1) {
-                return list.get(0);
+            Object first = ((NodePointer)iterator.next()).getNode();
+            if (!iterator.hasNext()) {
+                return first;
+            }
+            List<Object> list = new ArrayList<Object>();
+            list.add(first);
+            while (iterator.hasNext()) {
+                list.add(((NodePointer)iterator.next()).getNode());
             }
             return list;
         } catch (JXPathException xee) {
@@ -140,7 +163,7 @@ public class XPathEvaluator implements Evaluator, Serializable {
     public Boolean evalCond(final Context ctx, final String expr)
             throws SCXMLExpressionException {
         try {
-            return (Boolean)getContext(ctx).getValue(expr, Boolean.class);
+            return (Boolean)compile(expr).getValue(getContext(ctx), Boolean.class);
         } catch (JXPathException xee) {
             throw new SCXMLExpressionException(xee.getMessage(), xee);
         }
@@ -153,7 +176,7 @@ public class XPathEvaluator implements Evaluator, Serializable {
     public Object evalLocation(final Context ctx, final String expr) throws SCXMLExpressionException {
         JXPathContext context = getContext(ctx);
         try {
-            Iterator iterator = context.iteratePointers(expr);
+            Iterator iterator = compile(expr).iteratePointers(context);
             Object pointer;
             NodePointerList pointerList = null;
             while (iterator.hasNext()) {
@@ -363,14 +386,67 @@ public class XPathEvaluator implements Evaluator, Serializable {
     }
 
 
+    /**
+     * Returns the compiled form of an XPath expression, compiling and caching it if needed.
+     *
+     * @param expr The XPath expression
+     * @return The compiled expression
+     * @throws JXPathException if the expression is invalid
+     */
+    protected CompiledExpression compile(final String expr) {
+        if (expr == null) {
+            return JXPathContext.compile(expr);
+        }
+        ConcurrentMap<String, CompiledExpression> cache = compiledExpressions;
+        if (cache == null) {
+            synchronized (this) {
+                cache = compiledExpressions;
+                if (cache == null) {
+                    compiledExpressions = cache = new ConcurrentHashMap<String, CompiledExpression>();
+                }
+            }
+        }
+        CompiledExpression compiled = cache.get(expr);
+        if (compiled == null) {
+            compiled = JXPathContext.compile(expr);
+            if (cache.size() < MAX_COMPILED_EXPRESSIONS) {
+                cache.put(expr, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the JXPathContext for evaluating expressions within a Context.
+     * <p>
+     * For an {@link XPathContext} the JXPathContext is created only once and reused, as long as the namespaces in
+     * scope do not change.
+     * </p>
+     * @param ctx The variable context
+     * @return The JXPathContext
+     * @throws SCXMLExpressionException never thrown by this implementation
+     */
     @SuppressWarnings("unchecked")
     protected JXPathContext getContext(final Context ctx) throws SCXMLExpressionException {
+        Map<String, String> namespaces = (Map<String, String>) ctx.get(Context.NAMESPACES_KEY);
+        if (ctx instanceof XPathContext) {
+            XPathContext xpathCtx = (XPathContext)ctx;
+            JXPathContext context = xpathCtx.getJXPathContext(jxpathContext, namespaces);
+            if (context == null) {
+                context = newContext(ctx, namespaces);
+                xpathCtx.setJXPathContext(jxpathContext, namespaces, context);
+            }
+            return context;
+        }
+        return newContext(ctx, namespaces);
+    }
+
+    private JXPathContext newContext(final Context ctx, final Map<String, String> namespaces) {
         JXPathContext context = JXPathContext.newContext(jxpathContext, new EffectiveContextMap(ctx));
         context.setVariables(new ContextVariables(ctx));
-        Map<String, String> namespaces = (Map<String, String>) ctx.get(Context.NAMESPACES_KEY);
         if (namespaces != null) {
-            for (String prefix : namespaces.keySet()) {
-                context.registerNamespace(prefix, namespaces.get(prefix));
+            for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                context.registerNamespace(namespace.getKey(), namespace.getValue());
             }
         }
         return context;
@@ -20,8 +20,14 @@ import org.apache.commons.scxml2.SCXMLIOProcessor;
 import org.apache.commons.scxml2.TriggerEvent;
 
 /**
- * Trigger the given {@link TriggerEvent} on the given
- * state machine executor asynchronously, once.
+ * Hand the given {@link TriggerEvent} over to the given
+ * state machine executor, once.
+ * <p>
+ * The event is added to the I/O Processor synchronously, on the calling
+ * thread, which only queues it: the event is processed later, by the next
+ * triggerEvent(s) invocation or by the event loop of the target state
+ * machine executor. No dedicated thread is started per event.
+ * </p>
  */
 class AsyncTrigger implements Runnable {
 
@@ -42,10 +48,11 @@ class AsyncTrigger implements Runnable {
     }
 
     /**
-     * Fire the trigger asynchronously.
+     * Fire the trigger: queue the event on the calling thread, without
+     * waiting for it to be processed.
      */
     public void start() {
-        new Thread(this).start();
+        run();
     }
 
     /**
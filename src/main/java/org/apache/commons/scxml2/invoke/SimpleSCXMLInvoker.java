@@ -28,6 +28,7 @@ import org.apache.commons.scxml2.SCXMLExecutor;
 import org.apache.commons.scxml2.SCXMLIOProcessor;
 import org.apache.commons.scxml2.TriggerEvent;
 import org.apache.commons.scxml2.env.SimpleSCXMLListener;
+import org.apache.commons.scxml2.io.SCXMLDocumentCache;
 import org.apache.commons.scxml2.io.SCXMLReader;
 import org.apache.commons.scxml2.model.ModelException;
 import org.apache.commons.scxml2.model.SCXML;
@@ -35,11 +36,16 @@ import org.apache.commons.scxml2.model.SCXML;
 /**
  * A simple {@link Invoker} for SCXML documents. Invoked SCXML document
  * may not contain external namespace elements, further invokes etc.
+ * <p>
+ * The parsed SCXML documents are cached, see {@link #getDocumentCache()}.
+ * </p>
  */
 public class SimpleSCXMLInvoker implements Invoker, Serializable {
 
     /** Serial version UID. */
     private static final long serialVersionUID = 1L;
+    /** The document cache shared by all SimpleSCXMLInvokers by default. */
+    private static final SCXMLDocumentCache DOCUMENT_CACHE = new SCXMLDocumentCache();
     /** Parent state ID. */
     private String parentStateId;
     /** Invoking parent SCXMLExecutor */
@@ -92,7 +98,12 @@ public class SimpleSCXMLInvoker implements Invoker, Serializable {
     throws InvokerException {
         SCXML scxml;
         try {
-            scxml = SCXMLReader.read(new URL(source));
+            SCXMLDocumentCache documentCache = getDocumentCache();
+            if (documentCache != null) {
+                scxml = documentCache.getStateMachine(new URL(source));
+            } else {
+                scxml = SCXMLReader.read(new URL(source));
+            }
         } catch (ModelException me) {
             throw new InvokerException(me.getMessage(), me.getCause());
         } catch (IOException ioe) {
@@ -123,6 +134,17 @@ public class SimpleSCXMLInvoker implements Invoker, Serializable {
         }
     }
 
+    /**
+     * Returns the cache for the parsed SCXML documents to invoke. By default this is a cache shared by all
+     * SimpleSCXMLInvokers, so that a document invoked repeatedly is only parsed once (as long as it isn't modified).
+     * Subclasses may override this to use another cache, or return null to parse the document on each invoke.
+     *
+     * @return The document cache, or null
+     */
+    protected SCXMLDocumentCache getDocumentCache() {
+        return DOCUMENT_CACHE;
+    }
+
     /**
      * {@inheritDoc}.
      */
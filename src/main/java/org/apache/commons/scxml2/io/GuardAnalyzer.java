@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.scxml2.Evaluator;
+import org.apache.commons.scxml2.model.Data;
+import org.apache.commons.scxml2.model.Datamodel;
+import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.Guard;
+import org.apache.commons.scxml2.model.Parallel;
+import org.apache.commons.scxml2.model.SCXML;
+import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionTarget;
+import org.apache.commons.scxml2.model.TransitionalState;
+
+/**
+ * The load time analysis of the transition guard conditions of a SCXML document, which classifies each
+ * <code>cond</code> attribute as a {@link Guard}.
+ * <p>
+ * The analysis is purely lexical and deliberately conservative: any condition which isn't recognized with
+ * certainty is classified as {@link Guard.Kind#GENERAL}, which leaves it to the Evaluator at runtime.
+ * </p>
+ */
+final class GuardAnalyzer {
+
+    /** The datamodel assumed for documents not specifying one (the default EvaluatorFactory provider) */
+    private static final String DEFAULT_DATAMODEL = "jexl";
+
+    private static final String GROOVY_DATAMODEL = "groovy";
+
+    /** The literals and operator keywords common to the jexl, groovy and ecmascript datamodels */
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("true", "false", "null"));
+
+    /** The JEXL operator keywords, also supported by the groovy datamodel as operator aliases */
+    private static final Set<String> OPERATOR_KEYWORDS = new HashSet<String>(Arrays.asList(
+            "and", "or", "not", "eq", "ne", "lt", "le", "gt", "ge", "div", "mod"));
+
+    /** The XPath operator keywords */
+    private static final Set<String> XPATH_OPERATOR_KEYWORDS = new HashSet<String>(Arrays.asList(
+            "and", "or", "div", "mod"));
+
+    /** The XPath tokens after which a name is a step (or predicate) within an anchored location path */
+    private static final Set<String> XPATH_STEP_PREFIXES = new HashSet<String>(Arrays.asList("/", "@", "::", "["));
+
+    /** The operators with side effects or introducing statements */
+    private static final Set<String> SIDE_EFFECT_OPERATORS = new HashSet<String>(Arrays.asList(
+            "=", "++", "--", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", ";", "{", "}"));
+
+    /** The two character operators recognized as a single token */
+    private static final Set<String> TWO_CHAR_OPERATORS = new HashSet<String>(Arrays.asList(
+            "&&", "||", "==", "!=", "<=", ">=", "=~", "!~", "++", "--", "+=", "-=", "*=", "/=", "%=", "&=", "|=",
+            "^=", "::"));
+
+    private final String datamodel;
+    private final boolean xpath;
+    private final Map<String, TransitionTarget> targets;
+    private final Set<String> dataIds;
+
+    private GuardAnalyzer(final SCXML scxml) {
+        String name = scxml.getDatamodelName();
+        this.datamodel = name == null || name.length() == 0 ? DEFAULT_DATAMODEL : name;
+        this.xpath = Evaluator.XPATH_DATA_MODEL.equals(datamodel);
+        this.targets = scxml.getTargets();
+        this.dataIds = new HashSet<String>();
+        addDataIds(scxml.getDatamodel());
+    }
+
+    /**
+     * Analyze the guard conditions of all transitions in a SCXML document.
+     *
+     * @param scxml The SCXML document, after all transition targets have been resolved
+     */
+    static void analyze(final SCXML scxml) {
+        GuardAnalyzer analyzer = new GuardAnalyzer(scxml);
+        analyzer.collectDataIds(scxml.getChildren());
+        analyzer.analyzeStates(scxml.getChildren(), true);
+    }
+
+    private void addDataIds(final Datamodel datamodel) {
+        if (datamodel != null) {
+            for (Data datum : datamodel.getData()) {
+                if (datum.getId() != null) {
+                    dataIds.add(datum.getId());
+                }
+            }
+        }
+    }
+
+    private void collectDataIds(final List<EnterableState> states) {
+        for (EnterableState es : states) {
+            if (es instanceof TransitionalState) {
+                addDataIds(((TransitionalState)es).getDatamodel());
+                collectDataIds(((TransitionalState)es).getChildren());
+            }
+        }
+    }
+
+    /**
+     * @param states The states to analyze the transition guards of, including those of their descendants
+     * @param ancestorsSideEffectFree true if none of the guards of the ancestors of the states is a
+     *                                {@link Guard.Kind#GENERAL} guard
+     * @return true if none of the analyzed guards is a {@link Guard.Kind#GENERAL} guard
+     */
+    private boolean analyzeStates(final List<EnterableState> states, final boolean ancestorsSideEffectFree) {
+        boolean sideEffectFree = true;
+        for (EnterableState es : states) {
+            if (es instanceof TransitionalState) {
+                TransitionalState ts = (TransitionalState)es;
+                boolean stateSideEffectFree = true;
+                for (Transition t : ts.getTransitionsList()) {
+                    t.setGuard(t.getCond() != null ? analyze(t.getCond()) : null);
+                    if (t.getGuard() != null && t.getGuard().getKind() == Guard.Kind.GENERAL) {
+                        stateSideEffectFree = false;
+                    }
+                }
+                boolean pathSideEffectFree = ancestorsSideEffectFree && stateSideEffectFree;
+                boolean regionsSideEffectFree = analyzeStates(ts.getChildren(), pathSideEffectFree);
+                if (ts instanceof Parallel) {
+                    ((Parallel)ts).setIndependentRegions(pathSideEffectFree && regionsSideEffectFree
+                            && ts.getChildren().size() > 1);
+                }
+                sideEffectFree &= stateSideEffectFree && regionsSideEffectFree;
+            }
+        }
+        return sideEffectFree;
+    }
+
+    /**
+     * @param cond A guard condition
+     * @return the analyzed guard
+     */
+    Guard analyze(final String cond) {
+        String expr = cond.trim();
+        if (Evaluator.NULL_DATA_MODEL.equals(datamodel)) {
+            // mirrors the MinimalEvaluator, which only supports the In(stateId) predicate
+            if (expr.startsWith("In(") && expr.endsWith(")")) {
+                return Guard.newStatePredicate(datamodel,
+                        new EnterableState[] {resolveState(expr.substring(3, expr.length() - 1))},
+                        new boolean[] {false}, true);
+            }
+            return Guard.newConstant(datamodel, false);
+        }
+        List<String> tokens = tokenize(expr);
+        if (tokens == null || tokens.isEmpty()) {
+            return Guard.newGeneral(datamodel);
+        }
+        String constant = xpath
+                ? (tokens.size() == 3 && "(".equals(tokens.get(1)) && ")".equals(tokens.get(2)) ? tokens.get(0) : null)
+                : (tokens.size() == 1 ? tokens.get(0) : null);
+        if ("true".equals(constant) || "false".equals(constant)) {
+            return Guard.newConstant(datamodel, "true".equals(constant));
+        }
+        Guard guard = analyzeStatePredicate(tokens);
+        if (guard != null) {
+            return guard;
+        }
+        Set<String> readSet = xpath ? analyzeXPathReadSet(tokens) : analyzeReadSet(tokens);
+        if (readSet != null) {
+            return Guard.newData(datamodel, readSet);
+        }
+        return Guard.newGeneral(datamodel);
+    }
+
+    /**
+     * @param tokens The condition tokens
+     * @return a state predicate guard, or null if the condition is not a combination of In() predicates only
+     */
+    private Guard analyzeStatePredicate(final List<String> tokens) {
+        List<EnterableState> states = new ArrayList<EnterableState>();
+        List<Boolean> negated = new ArrayList<Boolean>();
+        Boolean conjunction = null;
+        int i = 0;
+        int size = tokens.size();
+        for (;;) {
+            boolean negate = false;
+            if (xpath) {
+                if (i + 1 < size && "not".equals(tokens.get(i)) && "(".equals(tokens.get(i + 1))) {
+                    negate = true;
+                    i += 2;
+                }
+            }
+            else if (i < size && ("!".equals(tokens.get(i))
+                    || "not".equals(tokens.get(i)) && DEFAULT_DATAMODEL.equals(datamodel))) {
+                negate = true;
+                i++;
+            }
+            if (i + 3 >= size || !"In".equals(tokens.get(i)) || !"(".equals(tokens.get(i + 1))
+                    || !isStringLiteral(tokens.get(i + 2)) || !")".equals(tokens.get(i + 3))) {
+                return null;
+            }
+            String literal = tokens.get(i + 2);
+            states.add(resolveState(literal.substring(1, literal.length() - 1)));
+            negated.add(negate);
+            i += 4;
+            if (xpath && negate) {
+                if (i >= size || !")".equals(tokens.get(i))) {
+                    return null;
+                }
+                i++;
+            }
+            if (i == size) {
+                break;
+            }
+            String operator = tokens.get(i++);
+            boolean and;
+            if (!xpath && "&&".equals(operator) || (xpath || DEFAULT_DATAMODEL.equals(datamodel)) && "and".equals(operator)) {
+                and = true;
+            }
+            else if (!xpath && "||".equals(operator) || (xpath || DEFAULT_DATAMODEL.equals(datamodel)) && "or".equals(operator)) {
+                and = false;
+            }
+            else {
+                return null;
+            }
+            if (conjunction != null && conjunction != and) {
+                // mixed operators: would require precedence handling
+                return null;
+            }
+            conjunction = and;
+        }
+        boolean[] negatedArray = new boolean[negated.size()];
+        for (int j = 0; j < negatedArray.length; j++) {
+            negatedArray[j] = negated.get(j);
+        }
+        return Guard.newStatePredicate(datamodel, states.toArray(new EnterableState[states.size()]), negatedArray,
+                conjunction == null || conjunction);
+    }
+
+    /**
+     * @param tokens The (jexl, groovy or ecmascript) condition tokens
+     * @return the datamodel variables read by the condition, or null if the condition might call functions, have
+     * side effects or read anything else than declared datamodel variables
+     */
+    private Set<String> analyzeReadSet(final List<String> tokens) {
+        Set<String> readSet = new LinkedHashSet<String>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (SIDE_EFFECT_OPERATORS.contains(token)) {
+                return null;
+            }
+            if (!isIdentifier(token)) {
+                continue;
+            }
+            if (i + 1 < tokens.size() && "(".equals(tokens.get(i + 1))) {
+                // function or method call
+                return null;
+            }
+            if (i > 0 && ".".equals(tokens.get(i - 1))) {
+                // property access
+                continue;
+            }
+            if (KEYWORDS.contains(token) || (DEFAULT_DATAMODEL.equals(datamodel) || GROOVY_DATAMODEL.equals(datamodel))
+                    && OPERATOR_KEYWORDS.contains(token)) {
+                continue;
+            }
+            if (!dataIds.contains(token)) {
+                return null;
+            }
+            readSet.add(token);
+        }
+        return readSet;
+    }
+
+    /**
+     * @param tokens The XPath condition tokens
+     * @return the datamodel variables read by the condition, or null if the condition uses the In() predicate,
+     * reads other variables than declared datamodel variables or contains a location path not anchored on a variable
+     */
+    private Set<String> analyzeXPathReadSet(final List<String> tokens) {
+        Set<String> readSet = new LinkedHashSet<String>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("$".equals(token)) {
+                if (i + 1 >= tokens.size() || !dataIds.contains(tokens.get(i + 1))) {
+                    return null;
+                }
+                readSet.add(tokens.get(++i));
+            }
+            else if (isIdentifier(token)) {
+                String previous = i > 0 ? tokens.get(i - 1) : null;
+                String next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+                if ("(".equals(next)) {
+                    if ("In".equals(token) || token.indexOf('.') > -1) {
+                        // the state configuration or (JXPath) extension functions
+                        return null;
+                    }
+                }
+                else if (!XPATH_OPERATOR_KEYWORDS.contains(token) && !"::".equals(next)
+                        && !XPATH_STEP_PREFIXES.contains(previous)) {
+                    // a relative location path, not anchored on a datamodel variable
+                    return null;
+                }
+            }
+        }
+        return readSet;
+    }
+
+    private EnterableState resolveState(final String id) {
+        TransitionTarget target = targets.get(id);
+        return target instanceof EnterableState ? (EnterableState)target : null;
+    }
+
+    private static boolean isStringLiteral(final String token) {
+        char c = token.charAt(0);
+        return c == '\'' || c == '"';
+    }
+
+    private static boolean isIdentifier(final String token) {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    /**
+     * Split a condition into identifier, number, string literal and operator tokens.
+     * <p>
+     * For XPath, <code>$</code> is a separate token and names may contain <code>-</code> and <code>.</code>.
+     * </p>
+     * @param expr The condition
+     * @return the tokens, or null if the condition contains constructs not supported by the analysis
+     */
+    private List<String> tokenize(final String expr) {
+        List<String> tokens = new ArrayList<String>();
+        int length = expr.length();
+        int i = 0;
+        while (i < length) {
+            char c = expr.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                i++;
+                while (i < length && expr.charAt(i) != c) {
+                    if (expr.charAt(i) == '\\' || !xpath && expr.charAt(i) == '$') {
+                        // escapes and (groovy) interpolation are not supported
+                        return null;
+                    }
+                    i++;
+                }
+                if (i == length) {
+                    return null;
+                }
+                i++;
+            }
+            else if (xpath ? (Character.isLetter(c) || c == '_') : Character.isJavaIdentifierStart(c)) {
+                i++;
+                while (i < length && (Character.isJavaIdentifierPart(expr.charAt(i)) && (!xpath || expr.charAt(i) != '$')
+                        || xpath && (expr.charAt(i) == '-' || expr.charAt(i) == '.'))) {
+                    i++;
+                }
+            }
+            else if (Character.isDigit(c)) {
+                i++;
+                while (i < length && (Character.isLetterOrDigit(expr.charAt(i)) || expr.charAt(i) == '.')) {
+                    i++;
+                }
+            }
+            else if (i + 1 < length && TWO_CHAR_OPERATORS.contains(expr.substring(i, i + 2))) {
+                i += 2;
+            }
+            else {
+                i++;
+            }
+            tokens.add(expr.substring(start, i));
+        }
+        return tokens;
+    }
+}
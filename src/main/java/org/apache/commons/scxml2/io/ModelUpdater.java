@@ -23,6 +23,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.commons.logging.LogFactory;
+import org.apache.commons.scxml2.model.ContextLayout;
 import org.apache.commons.scxml2.model.EnterableState;
 import org.apache.commons.scxml2.model.History;
 import org.apache.commons.scxml2.model.Initial;
@@ -33,6 +34,7 @@ import org.apache.commons.scxml2.model.SCXML;
 import org.apache.commons.scxml2.model.SimpleTransition;
 import org.apache.commons.scxml2.model.State;
 import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionIndex;
 import org.apache.commons.scxml2.model.TransitionTarget;
 import org.apache.commons.scxml2.model.TransitionalState;
 
@@ -136,8 +138,6 @@ final class ModelUpdater {
      * @throws ModelException If the object model is flawed
      */
     static void updateSCXML(final SCXML scxml) throws ModelException {
-        initDocumentOrder(scxml.getChildren(), 1);
-
         String initial = scxml.getInitial();
         SimpleTransition initialTransition = new SimpleTransition();
 
@@ -166,8 +166,62 @@ final class ModelUpdater {
             }
         }
 
+        initSCXML(scxml);
+    }
+
+    /**
+     * Initialize the document order, ordinals, transition domains, observable ids, transition index, context layouts
+     * and guards of a SCXML object model in which all transition targets (including the initial transitions) already
+     * have been resolved, without validating it again.
+     * <p>
+     * This is the final part of {@link #updateSCXML(SCXML)}, and also is used for a SCXML object model loaded from
+     * its binary form.
+     * </p>
+     *
+     * @param scxml The SCXML object with all transition targets resolved
+     */
+    static void initSCXML(final SCXML scxml) {
+        initDocumentOrder(scxml.getChildren(), 1);
+        scxml.initOrdinals();
+
+        initTransitionDomains(scxml);
+
         scxml.getInitialTransition().setObservableId(1);
         initObservables(scxml.getChildren(), 2);
+
+        scxml.setTransitionIndex(new TransitionIndex(scxml));
+        initContextLayouts(scxml);
+        GuardAnalyzer.analyze(scxml);
+    }
+
+    /**
+     * Initialize the {@link ContextLayout}s of the global context and of the contexts of all states in the SCXML
+     * document, from their datamodel declarations.
+     * @param scxml The SCXML document
+     */
+    private static void initContextLayouts(final SCXML scxml) {
+        ContextLayout globalLayout = ContextLayout.newLayout(null, scxml.getDatamodel());
+        scxml.setContextLayout(globalLayout);
+        initContextLayouts(scxml.getChildren(), globalLayout);
+    }
+
+    /**
+     * Initialize the {@link ContextLayout}s of the provided states and their descendants.
+     * @param states The list of children states of a parent TransitionalState or the SCXML document itself
+     * @param parentLayout The context layout of the parent state, or the global context layout
+     */
+    private static void initContextLayouts(final List<EnterableState> states, final ContextLayout parentLayout) {
+        for (EnterableState es : states) {
+            if (es instanceof TransitionalState) {
+                TransitionalState ts = (TransitionalState)es;
+                ContextLayout layout = ContextLayout.newLayout(parentLayout, ts.getDatamodel());
+                ts.setContextLayout(layout);
+                initContextLayouts(ts.getChildren(), layout);
+            }
+            else {
+                es.setContextLayout(ContextLayout.newLayout(parentLayout, null));
+            }
+        }
     }
 
     /**
@@ -191,6 +245,43 @@ final class ModelUpdater {
         return nextOrder;
     }
 
+    /**
+     * Precompute the transition domain of all transitions in the SCXML document, after all their targets have been
+     * resolved.
+     * @param scxml The SCXML document
+     */
+    private static void initTransitionDomains(final SCXML scxml) {
+        scxml.getInitialTransition().initTransitionDomain();
+        initTransitionDomains(scxml.getChildren());
+    }
+
+    /**
+     * Precompute the transition domain of all transitions of the provided states and their descendants.
+     * @param states The list of children states of a parent TransitionalState or the SCXML document itself
+     */
+    private static void initTransitionDomains(final List<EnterableState> states) {
+        for (EnterableState es : states) {
+            if (es instanceof TransitionalState) {
+                TransitionalState ts = (TransitionalState)es;
+                if (ts instanceof State) {
+                    State s = (State)ts;
+                    if (s.getInitial() != null && s.getInitial().getTransition() != null) {
+                        s.getInitial().getTransition().initTransitionDomain();
+                    }
+                }
+                for (Transition t : ts.getTransitionsList()) {
+                    t.initTransitionDomain();
+                }
+                for (History h : ts.getHistory()) {
+                    if (h.getTransition() != null) {
+                        h.getTransition().initTransitionDomain();
+                    }
+                }
+                initTransitionDomains(ts.getChildren());
+            }
+        }
+    }
+
     /**
      * Initialize all {@link org.apache.commons.scxml2.model.Observable} instances in the SCXML document
      * by iterating them in document order and seeding them with a unique obeservable id.
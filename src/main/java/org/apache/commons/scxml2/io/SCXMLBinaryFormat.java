@@ -0,0 +1,1227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.scxml2.Evaluator;
+import org.apache.commons.scxml2.PathResolver;
+import org.apache.commons.scxml2.env.URLResolver;
+import org.apache.commons.scxml2.model.Action;
+import org.apache.commons.scxml2.model.ActionsContainer;
+import org.apache.commons.scxml2.model.Assign;
+import org.apache.commons.scxml2.model.Cancel;
+import org.apache.commons.scxml2.model.Content;
+import org.apache.commons.scxml2.model.ContentContainer;
+import org.apache.commons.scxml2.model.Data;
+import org.apache.commons.scxml2.model.Datamodel;
+import org.apache.commons.scxml2.model.Else;
+import org.apache.commons.scxml2.model.ElseIf;
+import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.Executable;
+import org.apache.commons.scxml2.model.Final;
+import org.apache.commons.scxml2.model.Finalize;
+import org.apache.commons.scxml2.model.Foreach;
+import org.apache.commons.scxml2.model.History;
+import org.apache.commons.scxml2.model.If;
+import org.apache.commons.scxml2.model.Initial;
+import org.apache.commons.scxml2.model.Invoke;
+import org.apache.commons.scxml2.model.Log;
+import org.apache.commons.scxml2.model.OnEntry;
+import org.apache.commons.scxml2.model.OnExit;
+import org.apache.commons.scxml2.model.Parallel;
+import org.apache.commons.scxml2.model.Param;
+import org.apache.commons.scxml2.model.ParamsContainer;
+import org.apache.commons.scxml2.model.Raise;
+import org.apache.commons.scxml2.model.SCXML;
+import org.apache.commons.scxml2.model.Script;
+import org.apache.commons.scxml2.model.Send;
+import org.apache.commons.scxml2.model.SimpleTransition;
+import org.apache.commons.scxml2.model.State;
+import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionTarget;
+import org.apache.commons.scxml2.model.TransitionType;
+import org.apache.commons.scxml2.model.TransitionalState;
+import org.apache.commons.scxml2.model.Var;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The binary form of a resolved Commons SCXML object model, written by
+ * {@link SCXMLWriter#writeBinary(SCXML, OutputStream)} and loaded by {@link SCXMLReader#readBinary(InputStream)}.
+ * <p>
+ * The binary form records the object model as produced by the {@link SCXMLReader}, with all transition targets
+ * already resolved, so that loading it skips parsing, validating and resolving the SCXML document. The states are
+ * written as a tree in document order, transition targets are referenced by their position in that order, strings,
+ * namespace maps and path resolvers are written only once and referenced afterwards, and the XML content of
+ * &lt;data&gt; and &lt;content&gt; elements is written as a DOM node tree. Path resolvers are written as their base
+ * URL only, and loaded as {@link URLResolver}. The derived state of the object model
+ * (document order, ordinals, transition domains, observable ids, transition index, context layouts and guards) is
+ * not written, but initialized again when loading.
+ * </p>
+ * <p>
+ * Only the standard SCXML actions (and the Commons SCXML &lt;var&gt; action) are supported: an object model with
+ * custom actions can not be written in binary form.
+ * </p>
+ * <p>
+ * The {@link SCXMLDocumentCache} also uses the binary form to copy the (not yet resolved) object models of included
+ * documents.
+ * </p>
+ */
+final class SCXMLBinaryFormat {
+
+    /** The magic number at the start of the binary form: "SCXB". */
+    private static final int MAGIC = 0x53435842;
+
+    /** The version of the binary form. */
+    private static final int VERSION = 2;
+
+    //---- STATE TAGS ----//
+    private static final int TAG_STATE = 1;
+    private static final int TAG_PARALLEL = 2;
+    private static final int TAG_FINAL = 3;
+
+    //---- INITIAL KINDS ----//
+    private static final int INITIAL_NONE = 0;
+    private static final int INITIAL_GENERATED = 1;
+    private static final int INITIAL_EXPLICIT = 2;
+
+    //---- TRANSITION KINDS ----//
+    private static final int TRANSITION_NONE = 0;
+    private static final int TRANSITION_SIMPLE = 1;
+    private static final int TRANSITION_EVENT = 2;
+
+    //---- ACTION TAGS ----//
+    private static final int TAG_ASSIGN = 1;
+    private static final int TAG_CANCEL = 2;
+    private static final int TAG_ELSE = 3;
+    private static final int TAG_ELSEIF = 4;
+    private static final int TAG_FOREACH = 5;
+    private static final int TAG_IF = 6;
+    private static final int TAG_LOG = 7;
+    private static final int TAG_RAISE = 8;
+    private static final int TAG_SCRIPT = 9;
+    private static final int TAG_SEND = 10;
+    private static final int TAG_VAR = 11;
+
+    //---- CONTENT BODY KINDS ----//
+    private static final int BODY_NONE = 0;
+    private static final int BODY_TEXT = 1;
+    private static final int BODY_NODE = 2;
+
+    //---- TABLE REFERENCES ----//
+    private static final int REF_NULL = 0;
+    private static final int REF_NEW = 1;
+    private static final int REF_FIRST = 2;
+
+    //---- PATH RESOLVER REFERENCES ----//
+    private static final int RESOLVER_NULL = 0;
+    private static final int RESOLVER_URL = 1;
+    private static final int RESOLVER_FIRST = 2;
+
+    //---- ERROR MESSAGES ----//
+    private static final String ERR_NOT_RESOLVED = "Cannot write an unresolved SCXML object model, use the SCXML "
+            + "object model as returned by the SCXMLReader";
+    private static final String ERR_NOT_BINARY = "Not a binary SCXML document";
+    private static final String ERR_VERSION = "Unsupported binary SCXML format version: ";
+    private static final String ERR_CORRUPT = "Corrupt binary SCXML document: ";
+    private static final String ERR_UNSUPPORTED = "Unsupported in binary SCXML format: ";
+
+    /**
+     * Discourage instantiation since this is a utility class.
+     */
+    private SCXMLBinaryFormat() {
+        super();
+    }
+
+    /**
+     * Write the binary form of a resolved SCXML object model.
+     *
+     * @param scxml The SCXML object model, as returned by the SCXMLReader
+     * @param out The stream to write to, which is flushed but not closed
+     * @throws IOException An IO error, or the object model contains elements not supported by the binary form
+     * @throws IllegalArgumentException If the object model has not been resolved
+     */
+    static void write(final SCXML scxml, final OutputStream out) throws IOException {
+        if (scxml.getInitialTransition() == null) {
+            throw new IllegalArgumentException(ERR_NOT_RESOLVED);
+        }
+        writeDocument(scxml, out);
+    }
+
+    /**
+     * Write the binary form of a SCXML object model, which may not have been resolved yet.
+     *
+     * @param scxml The SCXML object model
+     * @param out The stream to write to, which is flushed but not closed
+     * @throws IOException An IO error, or the object model contains elements not supported by the binary form
+     */
+    static void writeDocument(final SCXML scxml, final OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        new BinaryWriter(dos).writeSCXML(scxml);
+        dos.flush();
+    }
+
+    /**
+     * Load a SCXML object model from its binary form.
+     *
+     * @param in The stream to read from, which is not closed
+     * @return The resolved and initialized SCXML object model
+     * @throws IOException An IO error, or the stream doesn't contain a supported binary SCXML document
+     */
+    static SCXML read(final InputStream in) throws IOException {
+        SCXML scxml = readDocument(in);
+        if (scxml.getInitialTransition() == null) {
+            throw new IOException(ERR_CORRUPT + "missing initial transition");
+        }
+        ModelUpdater.initSCXML(scxml);
+        return scxml;
+    }
+
+    /**
+     * Load a SCXML object model from its binary form, as written, without initializing it.
+     *
+     * @param in The stream to read from, which is not closed
+     * @return The SCXML object model
+     * @throws IOException An IO error, or the stream doesn't contain a supported binary SCXML document
+     */
+    static SCXML readDocument(final InputStream in) throws IOException {
+        InputStream buffered = in instanceof BufferedInputStream || in instanceof ByteArrayInputStream
+                ? in : new BufferedInputStream(in);
+        return new BinaryReader(new DataInputStream(buffered)).readSCXML();
+    }
+
+    /**
+     * Writes the binary form of one SCXML object model.
+     */
+    private static final class BinaryWriter {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final Map<Map<String, String>, Integer> namespaces = new HashMap<Map<String, String>, Integer>();
+        private final Map<PathResolver, Integer> resolvers = new IdentityHashMap<PathResolver, Integer>();
+        private final Map<TransitionTarget, Integer> targets = new IdentityHashMap<TransitionTarget, Integer>();
+
+        private BinaryWriter(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeSCXML(final SCXML scxml) throws IOException {
+            out.writeInt(MAGIC);
+            writeInt(VERSION);
+            indexTargets(scxml.getChildren());
+
+            writeString(scxml.getXmlns());
+            writeString(scxml.getVersion());
+            writeString(scxml.getInitial());
+            writeString(scxml.getName());
+            writeString(scxml.getProfile());
+            writeString(scxml.getExmode());
+            writeString(scxml.getDatamodelName());
+            writeNamespaces(scxml.getNamespaces());
+            writeDatamodel(scxml.getDatamodel());
+            Script globalScript = scxml.getGlobalScript();
+            writeBoolean(globalScript != null);
+            if (globalScript != null) {
+                writeNamespaces(globalScript.getNamespaces());
+                writeString(globalScript.getBody());
+            }
+            writeStates(scxml.getChildren());
+            writeAnyTransition(scxml.getInitialTransition());
+        }
+
+        /**
+         * Numbers the transition targets in document order: each state, followed by its histories and then its
+         * children.
+         */
+        private void indexTargets(final List<EnterableState> states) {
+            for (EnterableState es : states) {
+                targets.put(es, targets.size());
+                if (es instanceof TransitionalState) {
+                    TransitionalState ts = (TransitionalState)es;
+                    for (History h : ts.getHistory()) {
+                        targets.put(h, targets.size());
+                    }
+                    indexTargets(ts.getChildren());
+                }
+            }
+        }
+
+        private void writeStates(final List<EnterableState> states) throws IOException {
+            writeInt(states.size());
+            for (EnterableState es : states) {
+                writeState(es);
+            }
+        }
+
+        private void writeState(final EnterableState es) throws IOException {
+            Class<?> type = es.getClass();
+            if (type == Final.class) {
+                writeInt(TAG_FINAL);
+            } else if (type == State.class) {
+                writeInt(TAG_STATE);
+            } else if (type == Parallel.class) {
+                writeInt(TAG_PARALLEL);
+            } else {
+                throw new IOException(ERR_UNSUPPORTED + type.getName());
+            }
+            writeString(es.getId());
+            writeInt(es.getOnEntries().size());
+            for (OnEntry onEntry : es.getOnEntries()) {
+                writeBoolean(onEntry.getRaiseEvent());
+                writeActions(onEntry.getActions());
+            }
+            writeInt(es.getOnExits().size());
+            for (OnExit onExit : es.getOnExits()) {
+                writeBoolean(onExit.getRaiseEvent());
+                writeActions(onExit.getActions());
+            }
+            if (!(es instanceof TransitionalState)) {
+                return;
+            }
+            TransitionalState ts = (TransitionalState)es;
+            writeDatamodel(ts.getDatamodel());
+            writeInt(ts.getHistory().size());
+            for (History h : ts.getHistory()) {
+                writeString(h.getId());
+                writeBoolean(h.isDeep());
+                writeAnyTransition(h.getTransition());
+            }
+            writeInt(ts.getTransitionsList().size());
+            for (Transition t : ts.getTransitionsList()) {
+                if (t.getClass() != Transition.class) {
+                    throw new IOException(ERR_UNSUPPORTED + t.getClass().getName());
+                }
+                writeTransition(t);
+            }
+            writeInt(ts.getInvokes().size());
+            for (Invoke invoke : ts.getInvokes()) {
+                writeInvoke(invoke);
+            }
+            if (ts instanceof State) {
+                State state = (State)ts;
+                Initial ini = state.getInitial();
+                if (ini == null) {
+                    writeInt(INITIAL_NONE);
+                } else if (ini.isGenerated()) {
+                    writeInt(INITIAL_GENERATED);
+                    writeString(state.getFirst());
+                    writeTargets(ini.getTransition().getTargets());
+                } else {
+                    writeInt(INITIAL_EXPLICIT);
+                    writeAnyTransition(ini.getTransition());
+                }
+            }
+            writeStates(ts.getChildren());
+        }
+
+        private void writeAnyTransition(final SimpleTransition t) throws IOException {
+            if (t == null) {
+                writeInt(TRANSITION_NONE);
+            } else if (t.getClass() == SimpleTransition.class) {
+                writeInt(TRANSITION_SIMPLE);
+                writeSimpleTransition(t);
+            } else if (t.getClass() == Transition.class) {
+                writeInt(TRANSITION_EVENT);
+                writeTransition((Transition)t);
+            } else {
+                throw new IOException(ERR_UNSUPPORTED + t.getClass().getName());
+            }
+        }
+
+        private void writeTransition(final Transition t) throws IOException {
+            writeString(t.getEvent());
+            writeString(t.getCond());
+            writeSimpleTransition(t);
+        }
+
+        private void writeSimpleTransition(final SimpleTransition t) throws IOException {
+            writeInt(t.getType() == null ? 0 : t.getType().ordinal() + 1);
+            writeString(t.getNext());
+            writeNamespaces(t.getNamespaces());
+            writeActions(t.getActions());
+            writeTargets(t.getTargets());
+        }
+
+        private void writeTargets(final Set<TransitionTarget> transitionTargets) throws IOException {
+            writeInt(transitionTargets.size());
+            for (TransitionTarget tt : transitionTargets) {
+                Integer index = targets.get(tt);
+                if (index == null) {
+                    throw new IOException(ERR_UNSUPPORTED + "transition target " + tt.getId()
+                            + " outside of the document");
+                }
+                writeInt(index);
+            }
+        }
+
+        private void writeInvoke(final Invoke invoke) throws IOException {
+            writeNamespaces(invoke.getNamespaces());
+            writeString(invoke.getId());
+            writeString(invoke.getIdlocation());
+            writeString(invoke.getType());
+            writeString(invoke.getTypeexpr());
+            writeString(invoke.getSrc());
+            writeString(invoke.getSrcexpr());
+            writeBoolean(invoke.getAutoForward());
+            writeString(invoke.getNamelist());
+            writePathResolver(invoke.getPathResolver());
+            writeParams(invoke);
+            writeContent(invoke.getContent());
+            Finalize finalize = invoke.getFinalize();
+            writeBoolean(finalize != null);
+            if (finalize != null) {
+                writeActions(finalize.getActions());
+            }
+        }
+
+        private void writeActions(final List<Action> actions) throws IOException {
+            writeInt(actions.size());
+            for (Action action : actions) {
+                writeAction(action);
+            }
+        }
+
+        private void writeAction(final Action action) throws IOException {
+            Class<?> type = action.getClass();
+            if (type == Assign.class) {
+                Assign assign = (Assign)action;
+                writeInt(TAG_ASSIGN);
+                writeNamespaces(assign.getNamespaces());
+                writeString(assign.getLocation());
+                writeString(assign.getSrc());
+                writeString(assign.getExpr());
+                writeInt(assign.getType() == null ? 0 : assign.getType().ordinal() + 1);
+                writeString(assign.getAttr());
+                writePathResolver(assign.getPathResolver());
+            } else if (type == Cancel.class) {
+                Cancel cancel = (Cancel)action;
+                writeInt(TAG_CANCEL);
+                writeNamespaces(cancel.getNamespaces());
+                writeString(cancel.getSendid());
+                writeString(cancel.getSendidexpr());
+            } else if (type == Else.class) {
+                writeInt(TAG_ELSE);
+                writeNamespaces(action.getNamespaces());
+            } else if (type == ElseIf.class) {
+                ElseIf elseIf = (ElseIf)action;
+                writeInt(TAG_ELSEIF);
+                writeNamespaces(elseIf.getNamespaces());
+                writeString(elseIf.getCond());
+            } else if (type == Foreach.class) {
+                Foreach foreach = (Foreach)action;
+                writeInt(TAG_FOREACH);
+                writeNamespaces(foreach.getNamespaces());
+                writeString(foreach.getArray());
+                writeString(foreach.getItem());
+                writeString(foreach.getIndex());
+                writeActions(foreach.getActions());
+            } else if (type == If.class) {
+                If iff = (If)action;
+                writeInt(TAG_IF);
+                writeNamespaces(iff.getNamespaces());
+                writeString(iff.getCond());
+                writeActions(iff.getActions());
+            } else if (type == Log.class) {
+                Log log = (Log)action;
+                writeInt(TAG_LOG);
+                writeNamespaces(log.getNamespaces());
+                writeString(log.getExpr());
+                writeString(log.getLabel());
+            } else if (type == Raise.class) {
+                Raise raise = (Raise)action;
+                writeInt(TAG_RAISE);
+                writeNamespaces(raise.getNamespaces());
+                writeString(raise.getEvent());
+            } else if (type == Script.class) {
+                Script script = (Script)action;
+                writeInt(TAG_SCRIPT);
+                writeNamespaces(script.getNamespaces());
+                writeString(script.getBody());
+            } else if (type == Send.class) {
+                Send send = (Send)action;
+                writeInt(TAG_SEND);
+                writeNamespaces(send.getNamespaces());
+                writeString(send.getId());
+                writeString(send.getIdlocation());
+                writeString(send.getEvent());
+                writeString(send.getEventexpr());
+                writeString(send.getTarget());
+                writeString(send.getTargetexpr());
+                writeString(send.getType());
+                writeString(send.getTypeexpr());
+                writeString(send.getDelay());
+                writeString(send.getDelayexpr());
+                writeString(send.getHints());
+                writeString(send.getNamelist());
+                writeParams(send);
+                writeContent(send.getContent());
+            } else if (type == Var.class) {
+                Var var = (Var)action;
+                writeInt(TAG_VAR);
+                writeNamespaces(var.getNamespaces());
+                writeString(var.getName());
+                writeString(var.getExpr());
+            } else {
+                throw new IOException(ERR_UNSUPPORTED + type.getName());
+            }
+        }
+
+        private void writeParams(final ParamsContainer container) throws IOException {
+            writeInt(container.getParams().size());
+            for (Param param : container.getParams()) {
+                writeString(param.getName());
+                writeString(param.getLocation());
+                writeString(param.getExpr());
+                writeNamespaces(param.getNamespaces());
+            }
+        }
+
+        private void writeContent(final Content content) throws IOException {
+            writeBoolean(content != null);
+            if (content == null) {
+                return;
+            }
+            writeString(content.getExpr());
+            Object body = content.getBody();
+            if (body == null) {
+                writeInt(BODY_NONE);
+            } else if (body instanceof String) {
+                writeInt(BODY_TEXT);
+                writeString((String)body);
+            } else if (body instanceof Node) {
+                writeInt(BODY_NODE);
+                writeNode((Node)body);
+            } else {
+                throw new IOException(ERR_UNSUPPORTED + "content body " + body.getClass().getName());
+            }
+        }
+
+        private void writeDatamodel(final Datamodel datamodel) throws IOException {
+            writeBoolean(datamodel != null);
+            if (datamodel == null) {
+                return;
+            }
+            writeInt(datamodel.getData().size());
+            for (Data datum : datamodel.getData()) {
+                writeString(datum.getId());
+                writeString(datum.getSrc());
+                writeString(datum.getExpr());
+                writeNamespaces(datum.getNamespaces());
+                writeBoolean(datum.getNode() != null);
+                if (datum.getNode() != null) {
+                    writeNode(datum.getNode());
+                }
+            }
+        }
+
+        private void writeNode(final Node node) throws IOException {
+            short nodeType = node.getNodeType();
+            writeInt(nodeType);
+            switch (nodeType) {
+                case Node.ELEMENT_NODE:
+                    writeString(node.getNamespaceURI());
+                    writeString(node.getNodeName());
+                    NamedNodeMap attrs = node.getAttributes();
+                    writeInt(attrs.getLength());
+                    for (int i = 0; i < attrs.getLength(); i++) {
+                        Node attr = attrs.item(i);
+                        writeString(attr.getNamespaceURI());
+                        writeString(attr.getNodeName());
+                        writeString(attr.getNodeValue());
+                    }
+                    NodeList children = node.getChildNodes();
+                    writeInt(children.getLength());
+                    for (int i = 0; i < children.getLength(); i++) {
+                        writeNode(children.item(i));
+                    }
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                case Node.COMMENT_NODE:
+                    writeString(node.getNodeValue());
+                    break;
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    writeString(node.getNodeName());
+                    writeString(node.getNodeValue());
+                    break;
+                default:
+                    throw new IOException(ERR_UNSUPPORTED + "DOM node type " + nodeType);
+            }
+        }
+
+        private void writePathResolver(final PathResolver pathResolver) throws IOException {
+            if (pathResolver == null) {
+                writeInt(RESOLVER_NULL);
+                return;
+            }
+            Integer index = resolvers.get(pathResolver);
+            if (index != null) {
+                writeInt(RESOLVER_FIRST + index);
+                return;
+            }
+            resolvers.put(pathResolver, resolvers.size());
+            String baseURL;
+            if (pathResolver instanceof URLResolver) {
+                URL url = ((URLResolver)pathResolver).getBaseURL();
+                baseURL = url != null ? url.toString() : null;
+            } else {
+                // other resolvers are only supported by the URL they resolve the document itself to
+                baseURL = pathResolver.resolvePath("");
+                try {
+                    new URL(baseURL);
+                } catch (MalformedURLException e) {
+                    throw new IOException(ERR_UNSUPPORTED + "path resolver " + pathResolver.getClass().getName(), e);
+                }
+            }
+            writeInt(RESOLVER_URL);
+            writeString(baseURL);
+        }
+
+        private void writeNamespaces(final Map<String, String> map) throws IOException {
+            if (map == null) {
+                writeInt(REF_NULL);
+                return;
+            }
+            Integer index = namespaces.get(map);
+            if (index != null) {
+                writeInt(REF_FIRST + index);
+                return;
+            }
+            namespaces.put(new HashMap<String, String>(map), namespaces.size());
+            writeInt(REF_NEW);
+            writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        private void writeString(final String s) throws IOException {
+            if (s == null) {
+                writeInt(REF_NULL);
+                return;
+            }
+            Integer index = strings.get(s);
+            if (index != null) {
+                writeInt(REF_FIRST + index);
+                return;
+            }
+            strings.put(s, strings.size());
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(REF_NEW);
+            writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeBoolean(final Boolean b) throws IOException {
+            writeInt(b == null ? 0 : b ? 2 : 1);
+        }
+
+        /**
+         * Writes a non-negative int as a variable length quantity of 7 bits per byte, least significant first.
+         */
+        private void writeInt(final int value) throws IOException {
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+    }
+
+    /**
+     * Reads the binary form of one SCXML object model.
+     */
+    private static final class BinaryReader {
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Map<String, String>> namespaces = new ArrayList<Map<String, String>>();
+        private final List<PathResolver> resolvers = new ArrayList<PathResolver>();
+        private final List<TransitionTarget> targets = new ArrayList<TransitionTarget>();
+        private final List<SimpleTransition> pendingTransitions = new ArrayList<SimpleTransition>();
+        private final List<int[]> pendingTargets = new ArrayList<int[]>();
+        private SCXML scxml;
+        private DocumentBuilder documentBuilder;
+
+        private BinaryReader(final DataInputStream in) {
+            this.in = in;
+        }
+
+        private SCXML readSCXML() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(ERR_NOT_BINARY);
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new IOException(ERR_VERSION + version);
+            }
+            scxml = new SCXML();
+            scxml.setXmlns(readString());
+            scxml.setVersion(readString());
+            scxml.setInitial(readString());
+            scxml.setName(readString());
+            scxml.setProfile(readString());
+            scxml.setExmode(readString());
+            scxml.setDatamodelName(readString());
+            scxml.setNamespaces(readNamespaces());
+            scxml.setDatamodel(readDatamodel());
+            if (readFlag()) {
+                Script globalScript = new Script();
+                globalScript.setGlobalScript(true);
+                globalScript.setNamespaces(readNamespaces());
+                globalScript.setBody(readString());
+                scxml.setGlobalScript(globalScript);
+            }
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                readState(null);
+            }
+            SimpleTransition initialTransition = readAnyTransition();
+            if (initialTransition != null) {
+                scxml.setInitialTransition(initialTransition);
+            }
+            resolveTargets();
+            return scxml;
+        }
+
+        private void readState(final TransitionalState parent) throws IOException {
+            int tag = readInt();
+            EnterableState es;
+            switch (tag) {
+                case TAG_STATE:
+                    es = new State();
+                    break;
+                case TAG_PARALLEL:
+                    es = new Parallel();
+                    break;
+                case TAG_FINAL:
+                    es = new Final();
+                    break;
+                default:
+                    throw new IOException(ERR_CORRUPT + "state tag " + tag);
+            }
+            es.setId(readString());
+            if (parent == null) {
+                scxml.addChild(es);
+            } else if (parent instanceof State) {
+                ((State)parent).addChild(es);
+            } else if (es instanceof TransitionalState) {
+                ((Parallel)parent).addChild((TransitionalState)es);
+            } else {
+                throw new IOException(ERR_CORRUPT + "final state " + es.getId() + " in parallel");
+            }
+            addTarget(es);
+
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                OnEntry onEntry = new OnEntry();
+                onEntry.setRaiseEvent(readBoolean());
+                readActions(onEntry, null);
+                es.addOnEntry(onEntry);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                OnExit onExit = new OnExit();
+                onExit.setRaiseEvent(readBoolean());
+                readActions(onExit, null);
+                es.addOnExit(onExit);
+            }
+            if (!(es instanceof TransitionalState)) {
+                return;
+            }
+            TransitionalState ts = (TransitionalState)es;
+            ts.setDatamodel(readDatamodel());
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                History h = new History();
+                h.setId(readString());
+                h.setType(readFlag() ? "deep" : "shallow");
+                ts.addHistory(h);
+                addTarget(h);
+                SimpleTransition t = readAnyTransition();
+                if (t != null) {
+                    h.setTransition(t);
+                }
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                Transition t = new Transition();
+                readTransition(t);
+                ts.addTransition(t);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readInvoke(ts);
+            }
+            if (ts instanceof State) {
+                State state = (State)ts;
+                int kind = readInt();
+                switch (kind) {
+                    case INITIAL_NONE:
+                        break;
+                    case INITIAL_GENERATED:
+                        state.setFirst(readString());
+                        readTargets(state.getInitial().getTransition());
+                        break;
+                    case INITIAL_EXPLICIT:
+                        Initial ini = new Initial();
+                        SimpleTransition t = readAnyTransition();
+                        if (t != null) {
+                            ini.setTransition(t);
+                        }
+                        state.setInitial(ini);
+                        break;
+                    default:
+                        throw new IOException(ERR_CORRUPT + "initial kind " + kind);
+                }
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readState(ts);
+            }
+        }
+
+        private void addTarget(final TransitionTarget tt) {
+            targets.add(tt);
+            scxml.addTarget(tt);
+        }
+
+        private SimpleTransition readAnyTransition() throws IOException {
+            int kind = readInt();
+            switch (kind) {
+                case TRANSITION_NONE:
+                    return null;
+                case TRANSITION_SIMPLE:
+                    SimpleTransition st = new SimpleTransition();
+                    readSimpleTransition(st);
+                    return st;
+                case TRANSITION_EVENT:
+                    Transition t = new Transition();
+                    readTransition(t);
+                    return t;
+                default:
+                    throw new IOException(ERR_CORRUPT + "transition kind " + kind);
+            }
+        }
+
+        private void readTransition(final Transition t) throws IOException {
+            t.setEvent(readString());
+            t.setCond(readString());
+            readSimpleTransition(t);
+        }
+
+        private void readSimpleTransition(final SimpleTransition t) throws IOException {
+            int type = readInt();
+            if (type > 0) {
+                TransitionType[] types = TransitionType.values();
+                if (type > types.length) {
+                    throw new IOException(ERR_CORRUPT + "transition type " + type);
+                }
+                t.setType(types[type - 1]);
+            }
+            t.setNext(readString());
+            t.setNamespaces(readNamespaces());
+            readActions(t, null);
+            readTargets(t);
+        }
+
+        /**
+         * Reads the target references of a transition, which are resolved once all states have been read.
+         */
+        private void readTargets(final SimpleTransition t) throws IOException {
+            int[] indexes = new int[readInt()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = readInt();
+            }
+            pendingTransitions.add(t);
+            pendingTargets.add(indexes);
+        }
+
+        private void resolveTargets() throws IOException {
+            for (int i = 0; i < pendingTransitions.size(); i++) {
+                Set<TransitionTarget> transitionTargets = pendingTransitions.get(i).getTargets();
+                for (int index : pendingTargets.get(i)) {
+                    if (index >= targets.size()) {
+                        throw new IOException(ERR_CORRUPT + "transition target " + index);
+                    }
+                    transitionTargets.add(targets.get(index));
+                }
+            }
+        }
+
+        private void readInvoke(final TransitionalState parent) throws IOException {
+            Invoke invoke = new Invoke();
+            invoke.setNamespaces(readNamespaces());
+            invoke.setId(readString());
+            invoke.setIdlocation(readString());
+            invoke.setType(readString());
+            invoke.setTypeexpr(readString());
+            invoke.setSrc(readString());
+            invoke.setSrcexpr(readString());
+            invoke.setAutoForward(readBoolean());
+            invoke.setNamelist(readString());
+            invoke.setPathResolver(readPathResolver());
+            readParams(invoke);
+            readContent(invoke);
+            if (readFlag()) {
+                Finalize finalize = new Finalize();
+                readActions(finalize, null);
+                invoke.setFinalize(finalize);
+                finalize.setParent(parent);
+            }
+            parent.addInvoke(invoke);
+        }
+
+        private void readActions(final Executable executable, final ActionsContainer container)
+                throws IOException {
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                Action action = readAction(executable);
+                action.setParent(executable);
+                if (container != null) {
+                    container.addAction(action);
+                } else {
+                    executable.addAction(action);
+                }
+            }
+        }
+
+        private Action readAction(final Executable executable) throws IOException {
+            int tag = readInt();
+            Map<String, String> actionNamespaces = readNamespaces();
+            Action action;
+            switch (tag) {
+                case TAG_ASSIGN:
+                    Assign assign = new Assign();
+                    assign.setLocation(readString());
+                    assign.setSrc(readString());
+                    assign.setExpr(readString());
+                    int type = readInt();
+                    if (type > 0) {
+                        Evaluator.AssignType[] types = Evaluator.AssignType.values();
+                        if (type > types.length) {
+                            throw new IOException(ERR_CORRUPT + "assign type " + type);
+                        }
+                        assign.setType(types[type - 1]);
+                    }
+                    assign.setAttr(readString());
+                    assign.setPathResolver(readPathResolver());
+                    action = assign;
+                    break;
+                case TAG_CANCEL:
+                    Cancel cancel = new Cancel();
+                    cancel.setSendid(readString());
+                    cancel.setSendidexpr(readString());
+                    action = cancel;
+                    break;
+                case TAG_ELSE:
+                    action = new Else();
+                    break;
+                case TAG_ELSEIF:
+                    ElseIf elseIf = new ElseIf();
+                    elseIf.setCond(readString());
+                    action = elseIf;
+                    break;
+                case TAG_FOREACH:
+                    Foreach foreach = new Foreach();
+                    foreach.setArray(readString());
+                    foreach.setItem(readString());
+                    foreach.setIndex(readString());
+                    readActions(executable, foreach);
+                    action = foreach;
+                    break;
+                case TAG_IF:
+                    If iff = new If();
+                    iff.setCond(readString());
+                    readActions(executable, iff);
+                    action = iff;
+                    break;
+                case TAG_LOG:
+                    Log log = new Log();
+                    log.setExpr(readString());
+                    log.setLabel(readString());
+                    action = log;
+                    break;
+                case TAG_RAISE:
+                    Raise raise = new Raise();
+                    raise.setEvent(readString());
+                    action = raise;
+                    break;
+                case TAG_SCRIPT:
+                    Script script = new Script();
+                    script.setBody(readString());
+                    action = script;
+                    break;
+                case TAG_SEND:
+                    Send send = new Send();
+                    send.setId(readString());
+                    send.setIdlocation(readString());
+                    send.setEvent(readString());
+                    send.setEventexpr(readString());
+                    send.setTarget(readString());
+                    send.setTargetexpr(readString());
+                    send.setType(readString());
+                    send.setTypeexpr(readString());
+                    send.setDelay(readString());
+                    send.setDelayexpr(readString());
+                    send.setHints(readString());
+                    send.setNamelist(readString());
+                    readParams(send);
+                    readContent(send);
+                    action = send;
+                    break;
+                case TAG_VAR:
+                    Var var = new Var();
+                    var.setName(readString());
+                    var.setExpr(readString());
+                    action = var;
+                    break;
+                default:
+                    throw new IOException(ERR_CORRUPT + "action tag " + tag);
+            }
+            action.setNamespaces(actionNamespaces);
+            return action;
+        }
+
+        private void readParams(final ParamsContainer container) throws IOException {
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                Param param = new Param();
+                param.setName(readString());
+                param.setLocation(readString());
+                param.setExpr(readString());
+                param.setNamespaces(readNamespaces());
+                container.getParams().add(param);
+            }
+        }
+
+        private void readContent(final ContentContainer container) throws IOException {
+            if (!readFlag()) {
+                return;
+            }
+            Content content = new Content();
+            content.setExpr(readString());
+            int kind = readInt();
+            switch (kind) {
+                case BODY_NONE:
+                    break;
+                case BODY_TEXT:
+                    content.setBody(readString());
+                    break;
+                case BODY_NODE:
+                    content.setBody(readRootNode());
+                    break;
+                default:
+                    throw new IOException(ERR_CORRUPT + "content body kind " + kind);
+            }
+            container.setContent(content);
+        }
+
+        private Datamodel readDatamodel() throws IOException {
+            if (!readFlag()) {
+                return null;
+            }
+            Datamodel datamodel = new Datamodel();
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                Data datum = new Data();
+                datum.setId(readString());
+                datum.setSrc(readString());
+                datum.setExpr(readString());
+                datum.setNamespaces(readNamespaces());
+                if (readFlag()) {
+                    datum.setNode(readRootNode());
+                }
+                datamodel.addData(datum);
+            }
+            return datamodel;
+        }
+
+        /**
+         * Reads a DOM node tree into a new document, like the SCXMLReader does for each &lt;data&gt; and
+         * &lt;content&gt; element.
+         */
+        private Node readRootNode() throws IOException {
+            if (documentBuilder == null) {
+                try {
+                    documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw new IOException(e);
+                }
+            }
+            Document document = documentBuilder.newDocument();
+            Node root = readNode(document);
+            if (root.getNodeType() == Node.ELEMENT_NODE) {
+                document.appendChild(root);
+            }
+            return root;
+        }
+
+        private Node readNode(final Document document) throws IOException {
+            int nodeType = readInt();
+            try {
+                switch (nodeType) {
+                    case Node.ELEMENT_NODE:
+                        Element elem = document.createElementNS(readString(), readString());
+                        int count = readInt();
+                        for (int i = 0; i < count; i++) {
+                            Attr attr = document.createAttributeNS(readString(), readString());
+                            attr.setValue(readString());
+                            elem.setAttributeNodeNS(attr);
+                        }
+                        count = readInt();
+                        for (int i = 0; i < count; i++) {
+                            elem.appendChild(readNode(document));
+                        }
+                        return elem;
+                    case Node.TEXT_NODE:
+                        return document.createTextNode(readString());
+                    case Node.CDATA_SECTION_NODE:
+                        return document.createCDATASection(readString());
+                    case Node.COMMENT_NODE:
+                        return document.createComment(readString());
+                    case Node.PROCESSING_INSTRUCTION_NODE:
+                        return document.createProcessingInstruction(readString(), readString());
+                    default:
+                        throw new IOException(ERR_CORRUPT + "DOM node type " + nodeType);
+                }
+            } catch (DOMException e) {
+                throw new IOException(ERR_CORRUPT + e.getMessage(), e);
+            }
+        }
+
+        private PathResolver readPathResolver() throws IOException {
+            int ref = readInt();
+            PathResolver pathResolver;
+            switch (ref) {
+                case RESOLVER_NULL:
+                    return null;
+                case RESOLVER_URL:
+                    String baseURL = readString();
+                    pathResolver = new URLResolver(baseURL != null ? new URL(baseURL) : null);
+                    break;
+                default:
+                    int index = ref - RESOLVER_FIRST;
+                    if (index >= resolvers.size()) {
+                        throw new IOException(ERR_CORRUPT + "path resolver reference " + ref);
+                    }
+                    return resolvers.get(index);
+            }
+            resolvers.add(pathResolver);
+            return pathResolver;
+        }
+
+        /**
+         * Reads a namespace map, as a new map for each holder like the SCXMLReader creates them.
+         */
+        private Map<String, String> readNamespaces() throws IOException {
+            int ref = readInt();
+            if (ref == REF_NULL) {
+                return null;
+            }
+            if (ref == REF_NEW) {
+                int count = readInt();
+                Map<String, String> map = new HashMap<String, String>();
+                for (int i = 0; i < count; i++) {
+                    String prefix = readString();
+                    map.put(prefix, readString());
+                }
+                namespaces.add(map);
+                return new HashMap<String, String>(map);
+            }
+            int index = ref - REF_FIRST;
+            if (index >= namespaces.size()) {
+                throw new IOException(ERR_CORRUPT + "namespaces reference " + ref);
+            }
+            return new HashMap<String, String>(namespaces.get(index));
+        }
+
+        private String readString() throws IOException {
+            int ref = readInt();
+            if (ref == REF_NULL) {
+                return null;
+            }
+            if (ref == REF_NEW) {
+                byte[] bytes = new byte[readInt()];
+                in.readFully(bytes);
+                String s = new String(bytes, StandardCharsets.UTF_8);
+                strings.add(s);
+                return s;
+            }
+            int index = ref - REF_FIRST;
+            if (index >= strings.size()) {
+                throw new IOException(ERR_CORRUPT + "string reference " + ref);
+            }
+            return strings.get(index);
+        }
+
+        private Boolean readBoolean() throws IOException {
+            int b = readInt();
+            return b == 0 ? null : b == 2;
+        }
+
+        private boolean readFlag() throws IOException {
+            return Boolean.TRUE.equals(readBoolean());
+        }
+
+        /**
+         * Reads a non-negative int written as a variable length quantity.
+         */
+        private int readInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IOException(ERR_CORRUPT + "invalid number");
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.ModelException;
+import org.apache.commons.scxml2.model.SCXML;
+import org.apache.commons.scxml2.model.TransitionTarget;
+
+/**
+ * A thread-safe, size bounded cache of parsed SCXML documents, keyed by the resolved URL of the document.
+ * <p>
+ * Each lookup checks the current version of the document, which is its last modification time or, if the URL
+ * doesn't provide one, a hash of its content, and parses the document again if it has changed (only the document
+ * itself is checked, not the documents it includes). When the cache holds more than its maximum number of
+ * documents, the least recently used document is evicted.
+ * </p>
+ * <p>
+ * The cache is used for:
+ * </p>
+ * <ul>
+ *  <li>the state machines invoked by the {@link org.apache.commons.scxml2.invoke.SimpleSCXMLInvoker}, see
+ *  {@link #getStateMachine(URL)}: the resolved state machine is shared by all executors invoking it, as executing a
+ *  state machine doesn't modify it</li>
+ *  <li>the documents included by the "src" attribute of a &lt;state&gt; or &lt;parallel&gt; element, if configured
+ *  with {@link SCXMLReader.Configuration#setDocumentCache(SCXMLDocumentCache)}: as the included states become part
+ *  of the including document, each inclusion gets its own copy, loaded from the binary form of the parsed
+ *  document</li>
+ * </ul>
+ * <p>
+ * An included document is cached as parsed with the configuration of its first inclusion, so all documents
+ * including the same document should use equivalent configurations. Included documents with custom actions can not
+ * be copied, and are parsed for each inclusion.
+ * </p>
+ */
+public class SCXMLDocumentCache {
+
+    /**
+     * The default maximum number of cached documents.
+     */
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    /**
+     * Error message for an invalid maximum size.
+     */
+    private static final String ERR_MAX_SIZE = "The maximum number of cached documents must be positive: ";
+
+    /**
+     * Key prefix for resolved state machines.
+     */
+    private static final String KEY_STATE_MACHINE = "scxml:";
+
+    /**
+     * Key prefix for the binary form of included documents.
+     */
+    private static final String KEY_INCLUDE = "src:";
+
+    /**
+     * The maximum number of cached documents.
+     */
+    private final int maxSize;
+
+    /**
+     * The cached documents, in least recently used order.
+     */
+    private final Map<String, CachedDocument> entries;
+
+    /**
+     * Constructor, with the {@link #DEFAULT_MAX_SIZE default maximum size}.
+     */
+    public SCXMLDocumentCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize The maximum number of cached documents
+     */
+    public SCXMLDocumentCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(ERR_MAX_SIZE + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, CachedDocument>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedDocument> eldest) {
+                return size() > SCXMLDocumentCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return Returns the maximum number of cached documents
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Returns the number of cached documents
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all cached documents.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the resolved state machine of the SCXML document at the URL, parsing it with the default
+     * {@link SCXMLReader.Configuration} (using this cache for its included documents) if it isn't cached or has
+     * changed.
+     * <p>
+     * The returned state machine is shared, and must not be modified.
+     * </p>
+     *
+     * @param url The resolved URL of the SCXML document
+     * @return The resolved state machine
+     *
+     * @throws IOException An IO error during parsing.
+     * @throws ModelException The Commons SCXML object model is incomplete or inconsistent (includes
+     *                        errors in the SCXML document that may not be identified by the schema).
+     * @throws XMLStreamException An exception processing the underlying {@link javax.xml.stream.XMLStreamReader}.
+     */
+    public SCXML getStateMachine(final URL url) throws IOException, ModelException, XMLStreamException {
+        String key = KEY_STATE_MACHINE + url.toExternalForm();
+        String version = getVersion(url);
+        CachedDocument entry = get(key);
+        if (entry != null && entry.version.equals(version)) {
+            return (SCXML)entry.value;
+        }
+        SCXMLReader.Configuration configuration = new SCXMLReader.Configuration();
+        configuration.setDocumentCache(this);
+        SCXML scxml = SCXMLReader.read(url, configuration);
+        put(key, new CachedDocument(version, scxml));
+        return scxml;
+    }
+
+    /**
+     * Returns a new copy of the (not yet resolved) object model of the included SCXML document at the URL, parsing
+     * it with the configuration if it isn't cached or has changed.
+     * <p>
+     * Like parsing it, a copy loaded from the cache adds all its (enterable) states to the parent document of the
+     * configuration.
+     * </p>
+     *
+     * @param url The resolved URL of the included SCXML document
+     * @param configuration The configuration for parsing the included document
+     * @return A new copy of the object model of the included document
+     *
+     * @throws IOException An IO error during parsing.
+     * @throws ModelException The Commons SCXML object model is incomplete or inconsistent (includes
+     *                        errors in the SCXML document that may not be identified by the schema).
+     * @throws XMLStreamException An exception processing the underlying {@link javax.xml.stream.XMLStreamReader}.
+     */
+    SCXML getIncludedDocument(final URL url, final SCXMLReader.Configuration configuration)
+            throws IOException, ModelException, XMLStreamException {
+        String key = KEY_INCLUDE + url.toExternalForm();
+        String version = getVersion(url);
+        CachedDocument entry = get(key);
+        if (entry != null && entry.version.equals(version)) {
+            SCXML document = SCXMLBinaryFormat.readDocument(new ByteArrayInputStream((byte[])entry.value));
+            if (configuration.parent != null) {
+                for (TransitionTarget tt : document.getTargets().values()) {
+                    if (tt instanceof EnterableState) {
+                        configuration.parent.addTarget(tt);
+                    }
+                }
+            }
+            return document;
+        }
+        SCXML document = SCXMLReader.readInternal(configuration, url, null, null, null, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            SCXMLBinaryFormat.writeDocument(document, bytes);
+            put(key, new CachedDocument(version, bytes.toByteArray()));
+        } catch (IOException e) {
+            // not supported by the binary form (custom actions): parse it again for the next inclusion
+        }
+        return document;
+    }
+
+    private synchronized CachedDocument get(final String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(final String key, final CachedDocument entry) {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Determines the current version of the document at the URL: the last modification time (and length) of a file,
+     * otherwise the last modification time reported by the URL connection or, if not available, the SHA-256 hash of
+     * the content.
+     *
+     * @param url The URL of the document
+     * @return The version of the document
+     * @throws IOException An IO error accessing the document
+     */
+    private static String getVersion(final URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                File file = new File(url.toURI());
+                if (file.isFile()) {
+                    return "t" + file.lastModified() + "/" + file.length();
+                }
+            } catch (URISyntaxException e) {
+                // not a plain file path, use the URL connection instead
+            } catch (IllegalArgumentException e) {
+                // not a plain file path, use the URL connection instead
+            }
+        }
+        URLConnection connection = url.openConnection();
+        long lastModified = connection.getLastModified();
+        InputStream in = connection.getInputStream();
+        try {
+            if (lastModified > 0) {
+                return "t" + lastModified;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > -1; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+            StringBuilder version = new StringBuilder("h");
+            for (byte b : digest.digest()) {
+                version.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return version.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A cached document: the resolved state machine, or the binary form of an included document.
+     */
+    private static final class CachedDocument {
+
+        private final String version;
+        private final Object value;
+
+        private CachedDocument(final String version, final Object value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
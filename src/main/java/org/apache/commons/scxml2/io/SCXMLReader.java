@@ -16,23 +16,34 @@
  */
 package org.apache.commons.scxml2.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.Location;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLReporter;
 import javax.xml.stream.XMLResolver;
@@ -41,10 +52,7 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.util.XMLEventAllocator;
 import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.scxml2.Evaluator;
@@ -87,6 +95,7 @@ import org.apache.commons.scxml2.model.Send;
 import org.apache.commons.scxml2.model.SimpleTransition;
 import org.apache.commons.scxml2.model.State;
 import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionTarget;
 import org.apache.commons.scxml2.model.TransitionType;
 import org.apache.commons.scxml2.model.TransitionalState;
 import org.apache.commons.scxml2.model.Var;
@@ -95,7 +104,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 /**
  * <p>The SCXMLReader provides the ability to read a SCXML document into
@@ -439,6 +450,28 @@ public final class SCXMLReader {
         return scxml;
     }
 
+    /**
+     * Load the Commons SCXML object model from its binary form, as written by
+     * {@link SCXMLWriter#writeBinary(SCXML, java.io.OutputStream)}.
+     * <p>
+     * The binary form contains the already resolved object model, so loading it skips parsing, validating and
+     * resolving the SCXML document. The stream is not closed.
+     * </p>
+     *
+     * @param scxmlStream The {@link InputStream} supplying the binary form.
+     *
+     * @return The Commons SCXML object model corresponding to the binary form.
+     *
+     * @throws IOException An IO error during loading, or the stream doesn't contain a supported binary form.
+     */
+    public static SCXML readBinary(final InputStream scxmlStream) throws IOException {
+
+        if (scxmlStream == null) {
+            throw new IllegalArgumentException(ERR_NULL_ISTR);
+        }
+        return SCXMLBinaryFormat.read(scxmlStream);
+    }
+
     /**
      * Parse the SCXML document supplied by the given {@link Reader}.
      *
@@ -548,8 +581,8 @@ public final class SCXMLReader {
      *                        errors in the SCXML document that may not be identified by the schema).
      * @throws XMLStreamException An exception processing the underlying {@link XMLStreamReader}.
      */
-    private static SCXML readInternal(final Configuration configuration, final URL scxmlURL, final String scxmlPath,
-                                      final InputStream scxmlStream, final Reader scxmlReader, final Source scxmlSource)
+    static SCXML readInternal(final Configuration configuration, final URL scxmlURL, final String scxmlPath,
+                              final InputStream scxmlStream, final Reader scxmlReader, final Source scxmlSource)
             throws IOException, ModelException, XMLStreamException {
 
         if (configuration.pathResolver == null) {
@@ -560,9 +593,182 @@ public final class SCXMLReader {
             }
         }
 
-        XMLStreamReader reader = getReader(configuration, scxmlURL, scxmlPath, scxmlStream, scxmlReader, scxmlSource);
+        Map<String, List<IncludeTask>> parentIncludeTasks = configuration.includeTasks;
+        configuration.includeTasks = null;
+        try {
+            URL url = scxmlURL;
+            String path = scxmlPath;
+            InputStream stream = scxmlStream;
+            if (configuration.includePool != null) {
+                byte[] content = readContent(configuration, scxmlURL, scxmlPath, scxmlStream);
+                if (content != null) {
+                    configuration.includeTasks = forkIncludeTasks(configuration, content);
+                    if (scxmlStream == null) {
+                        // parse the content already read instead of reading the URL again
+                        url = null;
+                        path = null;
+                        stream = new ByteArrayInputStream(content);
+                    }
+                }
+            }
+
+            XMLStreamReader reader = getReader(configuration, url, path, stream, scxmlReader, scxmlSource);
+
+            return readDocument(reader, configuration);
+        } finally {
+            if (configuration.includeTasks != null) {
+                // included documents found by the scan but not by the parser (within ignored elements)
+                for (List<IncludeTask> tasks : configuration.includeTasks.values()) {
+                    for (IncludeTask task : tasks) {
+                        task.cancel(false);
+                    }
+                }
+            }
+            configuration.includeTasks = parentIncludeTasks;
+        }
+    }
+
+    /**
+     * Read the content of the SCXML document, to scan it for included documents before parsing it.
+     *
+     * @param configuration The {@link Configuration} to use when parsing the SCXML document.
+     * @param scxmlURL The optional SCXML document {@link URL} to parse.
+     * @param scxmlPath The optional real path to the SCXML document as a string.
+     * @param scxmlStream The optional {@link InputStream} providing the SCXML document.
+     *
+     * @return The content of the SCXML document, or null if it can't be read ahead (only documents read from a URL,
+     *         a path or a stream supporting mark and reset can).
+     *
+     * @throws IOException An IO error reading the SCXML document.
+     */
+    private static byte[] readContent(final Configuration configuration, final URL scxmlURL, final String scxmlPath,
+                                      final InputStream scxmlStream) throws IOException {
+
+        InputStream in;
+        if (scxmlURL != null || scxmlPath != null) {
+            URL scxml = (scxmlURL != null ? scxmlURL : new URL(scxmlPath));
+            in = (configuration.memoryMapped ? openMappedFile(scxml) : null);
+            if (in == null) {
+                URLConnection conn = scxml.openConnection();
+                conn.setUseCaches(false);
+                in = conn.getInputStream();
+            }
+        } else if (scxmlStream != null && scxmlStream.markSupported()) {
+            in = scxmlStream;
+            in.mark(Integer.MAX_VALUE);
+        } else {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > -1; n = in.read(buffer)) {
+                content.write(buffer, 0, n);
+            }
+            return content.toByteArray();
+        } finally {
+            if (in == scxmlStream) {
+                in.reset();
+            } else {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Scan the SCXML document for the "src" attributes of its &lt;state&gt; and &lt;parallel&gt; elements, and
+     * start parsing the included documents concurrently in the {@link Configuration#getIncludePool() include pool},
+     * so that they are (being) parsed when the parser reaches the elements including them.
+     *
+     * @param configuration The {@link Configuration} to use when parsing the SCXML document.
+     * @param content The content of the SCXML document.
+     *
+     * @return The started parsing tasks, keyed by the resolved "src" attribute value, in document order, or null if
+     *         the document doesn't include documents.
+     */
+    private static Map<String, List<IncludeTask>> forkIncludeTasks(final Configuration configuration,
+                                                                   final byte[] content) {
+
+        if (!containsSrc(content)) {
+            // most included documents don't include documents themselves, no need to scan these
+            return null;
+        }
+
+        // Scan without validation or reporting, the parser validates and reports
+        Configuration scan = new Configuration(configuration.factoryId, configuration.factoryClassLoader,
+                configuration.allocator, configuration.properties, configuration.resolver, null,
+                configuration.encoding, configuration.systemId, false, null, null, null, null, false);
+        Map<String, List<IncludeTask>> includeTasks = new HashMap<String, List<IncludeTask>>();
+        try {
+            XMLStreamReader reader = getReader(scan, null, null, new ByteArrayInputStream(content), null, null);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && XMLNS_SCXML.equals(reader.getNamespaceURI())
+                        && (ELEM_STATE.equals(reader.getLocalName()) || ELEM_PARALLEL.equals(reader.getLocalName()))) {
+                    String src = readAV(reader, ATTR_SRC);
+                    if (src != null) {
+                        String source = src;
+                        if (configuration.pathResolver != null) {
+                            source = configuration.pathResolver.resolvePath(src);
+                        }
+                        IncludeTask task = new IncludeTask(configuration, src, source.split("#", 2)[0]);
+                        List<IncludeTask> tasks = includeTasks.get(source);
+                        if (tasks == null) {
+                            tasks = new LinkedList<IncludeTask>();
+                            includeTasks.put(source, tasks);
+                        }
+                        tasks.add(task);
+                        configuration.includePool.execute(task);
+                    }
+                }
+            }
+            reader.close();
+        } catch (IOException e) {
+            // the parser reports the error, the included documents found so far are parsed
+        } catch (XMLStreamException e) {
+            // not well-formed: the parser reports the error, the included documents found so far are parsed
+        }
+        return includeTasks;
+    }
+
+    /**
+     * Check whether the content of a document contains the (ASCII encoded) name of the "src" attribute anywhere,
+     * as a document can't include documents otherwise. Documents in other encodings are not scanned, and their
+     * included documents are parsed when the parser reaches them.
+     *
+     * @param content The content of the document.
+     *
+     * @return Whether the content may include documents.
+     */
+    private static boolean containsSrc(final byte[] content) {
+        for (int i = 0; i + 2 < content.length; i++) {
+            if (content[i] == 's' && content[i + 1] == 'r' && content[i + 2] == 'c') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the SCXML document included via a "src" attribute, through the document cache if configured.
+     *
+     * @param configuration The {@link Configuration} to use while parsing the included document.
+     * @param url The URL of the included document, without fragment.
+     *
+     * @return The Commons SCXML object model of the included document (not wired up to be immediately usable).
+     *
+     * @throws IOException An IO error during parsing.
+     * @throws ModelException The Commons SCXML object model is incomplete or inconsistent (includes
+     *                        errors in the SCXML document that may not be identified by the schema).
+     * @throws XMLStreamException An exception processing the underlying {@link XMLStreamReader}.
+     */
+    private static SCXML readIncludedDocument(final Configuration configuration, final URL url)
+            throws IOException, ModelException, XMLStreamException {
 
-        return readDocument(reader, configuration);
+        if (configuration.documentCache != null) {
+            return configuration.documentCache.getIncludedDocument(url, configuration);
+        }
+        return SCXMLReader.readInternal(configuration, url, null, null, null, null);
     }
 
     /*
@@ -940,7 +1146,17 @@ public final class SCXMLReader {
         // Parse external document
         SCXML externalSCXML;
         try {
-            externalSCXML = SCXMLReader.readInternal(configuration, new URL(location), null, null, null, null);
+            List<IncludeTask> tasks = (configuration.includeTasks != null ? configuration.includeTasks.get(src) : null);
+            if (tasks != null && !tasks.isEmpty()) {
+                // Already parsed concurrently, collect its targets in document order as if parsed here
+                IncludeTask task = tasks.remove(0);
+                externalSCXML = task.getDocument();
+                for (TransitionTarget tt : task.getTargets()) {
+                    configuration.parent.addTarget(tt);
+                }
+            } else {
+                externalSCXML = readIncludedDocument(configuration, new URL(location));
+            }
         } catch (Exception e) {
             MessageFormat msgFormat = new MessageFormat(ERR_STATE_SRC);
             String errMsg = msgFormat.format(new Object[] {src});
@@ -2502,9 +2718,14 @@ public final class SCXMLReader {
         InputStream urlStream = null;
         if (url != null || path != null) {
             URL scxml = (url != null ? url : new URL(path));
-            URLConnection conn = scxml.openConnection();
-            conn.setUseCaches(false);
-            urlStream = conn.getInputStream();
+            if (configuration.memoryMapped) {
+                urlStream = openMappedFile(scxml);
+            }
+            if (urlStream == null) {
+                URLConnection conn = scxml.openConnection();
+                conn.setUseCaches(false);
+                urlStream = conn.getInputStream();
+            }
         } else if (stream != null) {
             urlStream = stream;
         }
@@ -2512,77 +2733,333 @@ public final class SCXMLReader {
         // Create the XMLStreamReader
         XMLStreamReader xsr = null;
 
-        if (configuration.validate) {
-            // Validation requires us to use a Source
+        if (urlStream != null) {
+            // systemId gets preference, then encoding if either are present
+            if (configuration.systemId != null) {
+                xsr = factory.createXMLStreamReader(configuration.systemId, urlStream);
+            } else if (configuration.encoding != null) {
+                xsr = factory.createXMLStreamReader(urlStream, configuration.encoding);
+            } else {
+                xsr = factory.createXMLStreamReader(urlStream);
+            }
+        } else if (reader != null) {
+            if (configuration.systemId != null) {
+                xsr = factory.createXMLStreamReader(configuration.systemId, reader);
+            } else {
+                xsr = factory.createXMLStreamReader(reader);
+            }
+        } else if (source != null) {
+            xsr = factory.createXMLStreamReader(source);
+        }
 
-            URL scxmlSchema = new URL("TODO"); // TODO, point to appropriate location
-            SchemaFactory schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
-            Schema schema;
+        if (configuration.validate) {
+            // Validate while reading, in the same single pass over the document
+            ValidatorHandler validatorHandler;
             try {
-                schema = schemaFactory.newSchema(scxmlSchema);
+                validatorHandler = SCXMLSchema.getSchema().newValidatorHandler();
             } catch (SAXException se) {
                 throw new XMLStreamException("Failed to create SCXML Schema for validation", se);
             }
+            validatorHandler.setErrorHandler(configuration.validationErrorHandler != null
+                    ? configuration.validationErrorHandler : new SimpleErrorHandler());
+            xsr = new ValidatingXMLStreamReader(xsr, validatorHandler);
+        }
 
-            Validator validator = schema.newValidator();
-            validator.setErrorHandler(new SimpleErrorHandler());
+        return xsr;
+    }
 
-            Source src = null;
-            if (urlStream != null) {
-                // configuration.encoding is ignored
-                if (configuration.systemId != null) {
-                    src = new StreamSource(urlStream, configuration.systemId);
-                } else {
-                    src = new StreamSource(urlStream);
-                }
-            } else if (reader != null) {
-                if (configuration.systemId != null) {
-                    src = new StreamSource(reader, configuration.systemId);
-                } else {
-                    src = new StreamSource(reader);
-                }
-            } else if (source != null) {
-                src = source;
+    /**
+     * Open a local file through a read-only memory mapping.
+     *
+     * @param url The {@link URL} of the file.
+     *
+     * @return The stream reading the mapped file, or null if the URL doesn't denote a local file.
+     *
+     * @throws IOException An IO error mapping the file.
+     */
+    private static InputStream openMappedFile(final URL url) throws IOException {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            // the mapping stays valid after closing the channel
+            return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Discourage instantiation since this is a utility class.
+     */
+    private SCXMLReader() {
+        super();
+    }
+
+    //------------------------- MAPPED INPUT STREAM CLASS -------------------------//
+    /**
+     * An {@link InputStream} reading the content of a memory mapped file.
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        /**
+         * The mapped file content, positioned at the next byte to read.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer The mapped file content
+         */
+        private MappedInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    //------------------------- INCLUDE TASK CLASS -------------------------//
+    /**
+     * The concurrent parsing of a document included via the "src" attribute of a &lt;state&gt; or &lt;parallel&gt;
+     * element.
+     * <p>
+     * The targets the parser adds to the including document are collected in the parent of the configuration of the
+     * task instead, to be added to the including document when the parser reaches the including element. Likewise,
+     * the reports and validation errors are collected by the task itself, to be passed on to the reporter and error
+     * handler of the including document at that point: nothing is reported for included documents which the parser
+     * never reaches, and everything is reported in the same order as when parsed one after another.
+     * </p>
+     */
+    private static final class IncludeTask extends RecursiveTask<SCXML> implements XMLReporter, ErrorHandler {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The configuration to parse the included document with, its parent collecting the targets.
+         */
+        private final transient Configuration configuration;
+
+        /**
+         * The location of the included document, without fragment.
+         */
+        private final String location;
+
+        /**
+         * The reporter of the including document, if any.
+         */
+        private final transient XMLReporter reporter;
+
+        /**
+         * The validation error handler of the including document, if any.
+         */
+        private final transient ErrorHandler errorHandler;
+
+        /**
+         * The collected reports and validation errors, in order.
+         */
+        private final transient List<Report> reports = new ArrayList<Report>();
+
+        /**
+         * The exception parsing the included document, if any.
+         */
+        private Exception exception;
+
+        /**
+         * Constructor, using the same configuration as readState/readParallel.
+         *
+         * @param source The configuration of the including document
+         * @param src The "src" attribute value
+         * @param location The location of the included document, without fragment
+         */
+        private IncludeTask(final Configuration source, final String src, final String location) {
+            this.location = location;
+            this.reporter = source.reporter;
+            this.errorHandler = source.validationErrorHandler;
+            this.configuration = new Configuration(source, source.reporter != null ? this : null, new SCXML());
+            configuration.validationErrorHandler = this;
+            if (source.pathResolver != null) {
+                configuration.pathResolver = source.pathResolver.getResolver(src);
             }
-            xsr = factory.createXMLStreamReader(src);
+        }
+
+        @Override
+        protected SCXML compute() {
             try {
-                validator.validate(src);
-            } catch (SAXException se) {
-                throw new XMLStreamException("Failed to create apply SCXML Validator", se);
+                return readIncludedDocument(configuration, new URL(location));
+            } catch (Exception e) {
+                exception = e;
+                return null;
             }
+        }
 
-        } else {
-            // We can use the more direct XMLInputFactory API if validation isn't needed
-
-            if (urlStream != null) {
-                // systemId gets preference, then encoding if either are present
-                if (configuration.systemId != null) {
-                    xsr = factory.createXMLStreamReader(configuration.systemId, urlStream);
-                } else if (configuration.encoding != null) {
-                    xsr = factory.createXMLStreamReader(urlStream, configuration.encoding);
-                } else {
-                    xsr = factory.createXMLStreamReader(urlStream);
-                }
-            } else if (reader != null) {
-                if (configuration.systemId != null) {
-                    xsr = factory.createXMLStreamReader(configuration.systemId, reader);
+        /**
+         * Waits for the included document to be parsed, and passes on its reports and validation errors.
+         *
+         * @return The object model of the included document
+         * @throws Exception The exception parsing the included document, or thrown by the reporter or error handler
+         */
+        private SCXML getDocument() throws Exception {
+            SCXML document = join();
+            ErrorHandler handler = errorHandler != null ? errorHandler : new SimpleErrorHandler();
+            for (Report report : reports) {
+                if (report.exception == null) {
+                    reporter.report(report.message, report.errorType, report.relatedInformation, report.location);
+                } else if (report.severity == Report.WARNING) {
+                    handler.warning(report.exception);
+                } else if (report.severity == Report.ERROR) {
+                    handler.error(report.exception);
                 } else {
-                    xsr = factory.createXMLStreamReader(reader);
+                    handler.fatalError(report.exception);
                 }
-            } else if (source != null) {
-                xsr = factory.createXMLStreamReader(source);
             }
+            if (exception != null) {
+                throw exception;
+            }
+            return document;
+        }
 
+        /**
+         * @return Returns the targets to add to the including document, once parsed
+         */
+        private Iterable<TransitionTarget> getTargets() {
+            return configuration.parent.getTargets().values();
         }
 
-        return xsr;
+        @Override
+        public void report(final String message, final String errorType, final Object relatedInformation,
+                           final Location location) {
+            reports.add(new Report(message, errorType, relatedInformation,
+                    location != null ? new ReportLocation(location) : null));
+        }
+
+        @Override
+        public void warning(final SAXParseException exception) {
+            reports.add(new Report(Report.WARNING, exception));
+        }
+
+        @Override
+        public void error(final SAXParseException exception) {
+            reports.add(new Report(Report.ERROR, exception));
+        }
+
+        @Override
+        public void fatalError(final SAXParseException exception) {
+            reports.add(new Report(Report.FATAL_ERROR, exception));
+        }
     }
 
     /**
-     * Discourage instantiation since this is a utility class.
+     * A report or validation error collected while parsing an included document concurrently.
      */
-    private SCXMLReader() {
-        super();
+    private static final class Report {
+
+        private static final int WARNING = 0;
+        private static final int ERROR = 1;
+        private static final int FATAL_ERROR = 2;
+
+        private final String message;
+        private final String errorType;
+        private final Object relatedInformation;
+        private final Location location;
+        private final int severity;
+        private final SAXParseException exception;
+
+        private Report(final String message, final String errorType, final Object relatedInformation,
+                       final Location location) {
+            this.message = message;
+            this.errorType = errorType;
+            this.relatedInformation = relatedInformation;
+            this.location = location;
+            this.severity = WARNING;
+            this.exception = null;
+        }
+
+        private Report(final int severity, final SAXParseException exception) {
+            this.message = null;
+            this.errorType = null;
+            this.relatedInformation = null;
+            this.location = null;
+            this.severity = severity;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * A copy of the {@link Location} of a report, as the location of a parser may change while parsing on.
+     */
+    private static final class ReportLocation implements Location {
+
+        private final int lineNumber;
+        private final int columnNumber;
+        private final int characterOffset;
+        private final String publicId;
+        private final String systemId;
+
+        private ReportLocation(final Location location) {
+            this.lineNumber = location.getLineNumber();
+            this.columnNumber = location.getColumnNumber();
+            this.characterOffset = location.getCharacterOffset();
+            this.publicId = location.getPublicId();
+            this.systemId = location.getSystemId();
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public int getColumnNumber() {
+            return columnNumber;
+        }
+
+        public int getCharacterOffset() {
+            return characterOffset;
+        }
+
+        public String getPublicId() {
+            return publicId;
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
     }
 
     //------------------------- CONFIGURATION CLASS -------------------------//
@@ -2700,6 +3177,33 @@ public final class SCXMLReader {
          */
         boolean strict;
 
+        /**
+         * The cache for the documents included via the &lt;state&gt; or &lt;parallel&gt; element's "src" attribute,
+         * or null to parse each included document.
+         */
+        SCXMLDocumentCache documentCache;
+
+        /**
+         * The error handler for the validation errors if the input is validated, or null to log them.
+         */
+        ErrorHandler validationErrorHandler;
+
+        /**
+         * Whether to read local files through a memory mapping.
+         */
+        boolean memoryMapped;
+
+        /**
+         * The pool to parse the documents included via the &lt;state&gt; or &lt;parallel&gt; element's "src"
+         * attribute concurrently, or null to parse them one after another.
+         */
+        ForkJoinPool includePool;
+
+        /**
+         * The included documents of the document being parsed, being parsed concurrently.
+         */
+        Map<String, List<IncludeTask>> includeTasks;
+
         /*
          * Public constructors
          */
@@ -2785,10 +3289,27 @@ public final class SCXMLReader {
          * @param source The source {@link Configuration} to replicate.
          */
         Configuration(final Configuration source) {
+            this(source, source.reporter, source.parent);
+        }
+
+        /**
+         * Package access copy constructor, using another {@link XMLReporter} and parent.
+         *
+         * @param source The source {@link Configuration} to replicate.
+         * @param reporter The {@link XMLReporter} for the {@link XMLInputFactory}.
+         * @param parent The parent SCXML document if this document is src'ed in via the &lt;state&gt; or
+         *               &lt;parallel&gt; element's "src" attribute.
+         */
+        Configuration(final Configuration source, final XMLReporter reporter, final SCXML parent) {
             this(source.factoryId, source.factoryClassLoader, source.allocator, source.properties, source.resolver,
-                    source.reporter, source.encoding, source.systemId, source.validate, source.pathResolver,
-                    source.parent, source.customActions, source.customActionClassLoader,
+                    reporter, source.encoding, source.systemId, source.validate, source.pathResolver,
+                    parent, source.customActions, source.customActionClassLoader,
                     source.useContextClassLoaderForCustomActions, source.silent, source.strict);
+            this.documentCache = source.documentCache;
+            this.validationErrorHandler = source.validationErrorHandler;
+            this.memoryMapped = source.memoryMapped;
+            this.includePool = source.includePool;
+            this.includeTasks = source.includeTasks;
         }
 
         /**
@@ -2926,5 +3447,80 @@ public final class SCXMLReader {
         public void setStrict(boolean strict) {
             this.strict = strict;
         }
+
+        /**
+         * Returns the cache for the documents included via the "src" attribute, if any.
+         * @return The document cache, or null if each included document is parsed
+         */
+        public SCXMLDocumentCache getDocumentCache() {
+            return documentCache;
+        }
+
+        /**
+         * Set the cache for the documents included via the "src" attribute of &lt;state&gt; and &lt;parallel&gt;
+         * elements, so that a document included repeatedly is only parsed once (as long as it isn't modified).
+         * @param documentCache The document cache, or null to parse each included document
+         */
+        public void setDocumentCache(final SCXMLDocumentCache documentCache) {
+            this.documentCache = documentCache;
+        }
+
+        /**
+         * Returns the error handler for the validation errors, if any.
+         * @return The error handler, or null if validation errors are logged
+         */
+        public ErrorHandler getValidationErrorHandler() {
+            return validationErrorHandler;
+        }
+
+        /**
+         * Set the error handler for the validation errors, if the input is validated. The input is validated while
+         * it is read, in a single pass, so the validation errors are reported while the document is being read.
+         * @param validationErrorHandler The error handler, or null to log the validation errors
+         */
+        public void setValidationErrorHandler(final ErrorHandler validationErrorHandler) {
+            this.validationErrorHandler = validationErrorHandler;
+        }
+
+        /**
+         * Returns true if local files are read through a memory mapping.
+         * @return Whether local files are memory mapped
+         */
+        public boolean isMemoryMapped() {
+            return memoryMapped;
+        }
+
+        /**
+         * Turn on/off reading local files (file: URLs and paths) through a read-only memory mapping, instead of
+         * through a {@link URLConnection}.
+         * @param memoryMapped Whether to memory map local files
+         */
+        public void setMemoryMapped(final boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+        }
+
+        /**
+         * Returns the pool parsing the included documents concurrently, if any.
+         * @return The include pool, or null if the included documents are parsed one after another
+         */
+        public ForkJoinPool getIncludePool() {
+            return includePool;
+        }
+
+        /**
+         * Set the pool to parse the documents included via the "src" attribute of &lt;state&gt; and &lt;parallel&gt;
+         * elements concurrently, for documents read from a URL, a path or a stream supporting mark and reset. The
+         * document is scanned for its included documents first, which are parsed in the pool (along with the
+         * documents they include) while the document itself is parsed, and added to the object model in document
+         * order, so the resulting model is the same as when parsed one after another. As the included documents are
+         * parsed in the threads of the pool, the configured document cache must be thread-safe. The reports and
+         * validation errors of an included document are only passed on to the configured {@link XMLReporter} and
+         * validation error handler once the parser reaches the element including it.
+         * @param includePool The include pool, for instance {@link ForkJoinPool#commonPool()}, or null to parse the
+         *                    included documents one after another
+         */
+        public void setIncludePool(final ForkJoinPool includePool) {
+            this.includePool = includePool;
+        }
     }
 }
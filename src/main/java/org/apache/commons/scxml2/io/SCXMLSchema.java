@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.io;
+
+import java.net.URL;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.SAXException;
+
+/**
+ * The XML Schema for SCXML, compiled once from the <code>scxml.xsd</code> resource on the classpath (and the schema
+ * documents it includes) and shared process-wide, as a compiled {@link Schema} is immutable and thread-safe.
+ * <p>
+ * A {@link Validator} is not thread-safe, so each thread gets its own validator from {@link #getValidator()}, which
+ * is reused for all validations on that thread.
+ * </p>
+ */
+public final class SCXMLSchema {
+
+    /**
+     * The classpath resource of the XML Schema for SCXML.
+     */
+    private static final String SCHEMA_RESOURCE = "/scxml.xsd";
+
+    /**
+     * Error message when the schema resource is missing.
+     */
+    private static final String ERR_NO_SCHEMA = "XML Schema for SCXML not found on the classpath: " + SCHEMA_RESOURCE;
+
+    /**
+     * The compiled schema, created on first use.
+     */
+    private static volatile Schema schema;
+
+    /**
+     * The validator of each thread.
+     */
+    private static final ThreadLocal<Validator> VALIDATORS = new ThreadLocal<Validator>();
+
+    /**
+     * Discourage instantiation since this is a utility class.
+     */
+    private SCXMLSchema() {
+        super();
+    }
+
+    /**
+     * Returns the compiled XML Schema for SCXML, compiling it on first use.
+     *
+     * @return The shared schema
+     * @throws SAXException If the schema can't be found or compiled
+     */
+    public static Schema getSchema() throws SAXException {
+        Schema result = schema;
+        if (result == null) {
+            synchronized (SCXMLSchema.class) {
+                result = schema;
+                if (result == null) {
+                    URL schemaURL = SCXMLSchema.class.getResource(SCHEMA_RESOURCE);
+                    if (schemaURL == null) {
+                        throw new SAXException(ERR_NO_SCHEMA);
+                    }
+                    // compiled from its URL, so that the included schema documents resolve relative to it
+                    SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                    result = factory.newSchema(schemaURL);
+                    schema = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the validator for the XML Schema for SCXML of the current thread, reset to its initial state (so
+     * without error handler and resource resolver).
+     * <p>
+     * The validator must only be used by the current thread.
+     * </p>
+     *
+     * @return The validator of the current thread
+     * @throws SAXException If the schema can't be found or compiled
+     */
+    public static Validator getValidator() throws SAXException {
+        Validator validator = VALIDATORS.get();
+        if (validator == null) {
+            validator = getSchema().newValidator();
+            VALIDATORS.set(validator);
+        } else {
+            validator.reset();
+        }
+        return validator;
+    }
+}
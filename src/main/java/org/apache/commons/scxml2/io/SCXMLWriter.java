@@ -279,6 +279,27 @@ public class SCXMLWriter {
         }
     }
 
+    /**
+     * Write out the Commons SCXML object model in its binary form to the supplied {@link OutputStream}, which can be
+     * loaded again with {@link SCXMLReader#readBinary(java.io.InputStream)} without parsing the SCXML document.
+     * <p>
+     * The object model must have been resolved, as returned by the {@link SCXMLReader}, and may only contain the
+     * standard SCXML actions. The stream is flushed but not closed.
+     * </p>
+     *
+     * @param scxml The object model to write out.
+     * @param scxmlStream The {@link OutputStream} to write to.
+     *
+     * @throws IOException An IO error during serialization, or the object model contains custom actions.
+     */
+    public static void writeBinary(final SCXML scxml, final OutputStream scxmlStream) throws IOException {
+
+        if (scxmlStream == null) {
+            throw new IllegalArgumentException(ERR_NULL_OSTR);
+        }
+        SCXMLBinaryFormat.write(scxml, scxmlStream);
+    }
+
     /**
      * Write out the Commons SCXML object model as an SCXML document to the
      * supplied {@link Writer}.
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.io;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * An {@link XMLStreamReader} which validates the document while it is being read, by passing each event to a
+ * {@link ValidatorHandler}, so that the document is parsed and validated in a single pass.
+ * <p>
+ * Validation errors are reported to the error handler of the validator handler. If the error handler throws a
+ * {@link SAXException}, it is thrown wrapped in a {@link XMLStreamException} by the method reading the event.
+ * </p>
+ */
+final class ValidatingXMLStreamReader extends StreamReaderDelegate {
+
+    /**
+     * Error message for a validation error thrown by the error handler.
+     */
+    private static final String ERR_VALIDATION = "Failed to apply SCXML Validator";
+
+    /**
+     * The validator handler receiving the events.
+     */
+    private final ValidatorHandler handler;
+
+    /**
+     * The attributes of the current start element, reused for each start element.
+     */
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /**
+     * Constructor.
+     *
+     * @param reader The reader of the document, positioned at the start of the document
+     * @param handler The validator handler to pass the events to
+     * @throws XMLStreamException If the validator handler fails to start the document
+     */
+    ValidatingXMLStreamReader(final XMLStreamReader reader, final ValidatorHandler handler)
+            throws XMLStreamException {
+        super(reader);
+        this.handler = handler;
+        handler.setDocumentLocator(new StreamLocator());
+        try {
+            handler.startDocument();
+        } catch (SAXException se) {
+            throw new XMLStreamException(ERR_VALIDATION, reader.getLocation(), se);
+        }
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        try {
+            validate(event);
+        } catch (SAXException se) {
+            throw new XMLStreamException(ERR_VALIDATION, getLocation(), se);
+        }
+        return event;
+    }
+
+    /**
+     * Implemented on top of {@link #next()}, so that the skipped events are validated as well.
+     */
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+                || (event == XMLStreamConstants.CDATA && isWhiteSpace())
+                || event == XMLStreamConstants.SPACE
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || event == XMLStreamConstants.COMMENT) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("expected start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    /**
+     * Implemented on top of {@link #next()}, so that the text events are validated as well.
+     */
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new XMLStreamException("parser must be on START_ELEMENT to read next text", getLocation());
+        }
+        StringBuilder content = new StringBuilder();
+        int event = next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    content.append(getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                case XMLStreamConstants.COMMENT:
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("unexpected end of document when reading element text content",
+                            getLocation());
+                case XMLStreamConstants.START_ELEMENT:
+                    throw new XMLStreamException("element text content may not contain START_ELEMENT",
+                            getLocation());
+                default:
+                    throw new XMLStreamException("Unexpected event type " + event, getLocation());
+            }
+            event = next();
+        }
+        return content.toString();
+    }
+
+    /**
+     * Passes the current event to the validator handler.
+     *
+     * @param event The current event
+     * @throws SAXException A validation error thrown by the error handler
+     */
+    private void validate(final int event) throws SAXException {
+        switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                for (int i = 0; i < getNamespaceCount(); i++) {
+                    handler.startPrefixMapping(nonNull(getNamespacePrefix(i)), nonNull(getNamespaceURI(i)));
+                }
+                attributes.clear();
+                for (int i = 0; i < getAttributeCount(); i++) {
+                    String localName = getAttributeLocalName(i);
+                    attributes.addAttribute(nonNull(getAttributeNamespace(i)), localName,
+                            qName(getAttributePrefix(i), localName), getAttributeType(i), getAttributeValue(i));
+                }
+                handler.startElement(nonNull(getNamespaceURI()), getLocalName(), qName(getPrefix(), getLocalName()),
+                        attributes);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                handler.endElement(nonNull(getNamespaceURI()), getLocalName(), qName(getPrefix(), getLocalName()));
+                for (int i = 0; i < getNamespaceCount(); i++) {
+                    handler.endPrefixMapping(nonNull(getNamespacePrefix(i)));
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                handler.characters(getTextCharacters(), getTextStart(), getTextLength());
+                break;
+            case XMLStreamConstants.SPACE:
+                handler.ignorableWhitespace(getTextCharacters(), getTextStart(), getTextLength());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                handler.processingInstruction(getPITarget(), getPIData());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                handler.endDocument();
+                break;
+            default: // comments, DTDs and entity references are not validated
+        }
+    }
+
+    private static String nonNull(final String s) {
+        return s != null ? s : "";
+    }
+
+    private static String qName(final String prefix, final String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * The SAX locator of the current event, for the validation errors.
+     */
+    private final class StreamLocator implements Locator {
+
+        @Override
+        public String getPublicId() {
+            Location location = getLocation();
+            return location != null ? location.getPublicId() : null;
+        }
+
+        @Override
+        public String getSystemId() {
+            Location location = getLocation();
+            return location != null ? location.getSystemId() : null;
+        }
+
+        @Override
+        public int getLineNumber() {
+            Location location = getLocation();
+            return location != null ? location.getLineNumber() : -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            Location location = getLocation();
+            return location != null ? location.getColumnNumber() : -1;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The static variable layout of the {@link org.apache.commons.scxml2.Context} of a state (or the global context of a
+ * SCXML document), derived from the <code>id</code>s of the {@link Data} elements of its {@link Datamodel}.
+ * <p>
+ * Each declared variable is assigned a fixed slot index within its context, and the resolution of a variable name
+ * through the chain of parent contexts (up to and including the global context) is precomputed: a
+ * {@link #resolve(String) resolved reference} holds both the number of parent contexts to skip and the slot index
+ * of the nearest declaring context.
+ * </p>
+ * <p>
+ * Like the {@link TransitionIndex}, the layouts are derived from the state machine model once it has been fully
+ * wired, and thus should be rebuilt if the model is changed afterwards.
+ * </p>
+ */
+public final class ContextLayout implements Serializable {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of bits of a resolved reference used for the slot index
+     */
+    private static final int SLOT_BITS = 16;
+
+    /**
+     * The maximum number of slots of a single layout
+     */
+    public static final int MAX_SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * The layout of the parent context, null for the global context
+     */
+    private final ContextLayout parent;
+
+    /**
+     * The declared variable names, by slot index
+     */
+    private final String[] names;
+
+    /**
+     * The slot index of each declared variable name
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * The resolved references of all variables declared in this or a parent layout
+     */
+    private final Map<String, Integer> resolved;
+
+    /**
+     * Constructor.
+     *
+     * @param parent The layout of the parent context, null for the global context
+     * @param names The declared variable names (duplicates are ignored)
+     */
+    public ContextLayout(final ContextLayout parent, final List<String> names) {
+        this.parent = parent;
+        List<String> declared = new ArrayList<String>();
+        this.slots = new HashMap<String, Integer>();
+        for (String name : names) {
+            if (name != null && !slots.containsKey(name)) {
+                slots.put(name, declared.size());
+                declared.add(name);
+            }
+        }
+        if (declared.size() > MAX_SLOTS) {
+            throw new IllegalArgumentException("ContextLayout: more than " + MAX_SLOTS + " variables declared");
+        }
+        this.names = declared.toArray(new String[declared.size()]);
+        this.resolved = new HashMap<String, Integer>();
+        if (parent != null) {
+            for (Map.Entry<String, Integer> entry : parent.resolved.entrySet()) {
+                // one more parent context to skip
+                resolved.put(entry.getKey(), entry.getValue() + MAX_SLOTS);
+            }
+        }
+        for (int i = 0; i < this.names.length; i++) {
+            // local declarations shadow those of the parent contexts
+            resolved.put(this.names[i], i);
+        }
+    }
+
+    /**
+     * Creates the layout for the datamodel of a state or document.
+     *
+     * @param parent The layout of the parent context, null for the global context
+     * @param datamodel The datamodel, may be null
+     * @return The layout
+     */
+    public static ContextLayout newLayout(final ContextLayout parent, final Datamodel datamodel) {
+        List<String> names = new ArrayList<String>();
+        if (datamodel != null) {
+            for (Data datum : datamodel.getData()) {
+                names.add(datum.getId());
+            }
+        }
+        return new ContextLayout(parent, names);
+    }
+
+    /**
+     * @return Returns the layout of the parent context, null for the global context
+     */
+    public ContextLayout getParent() {
+        return parent;
+    }
+
+    /**
+     * @return Returns the number of variables declared in this layout
+     */
+    public int getSlotCount() {
+        return names.length;
+    }
+
+    /**
+     * @param slot The slot index
+     * @return Returns the name of the variable declared at the slot index
+     */
+    public String getName(final int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @param name The variable name
+     * @return Returns the slot index of the variable declared in this layout, or -1 if not declared in this layout
+     */
+    public int getSlot(final String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Resolves a variable name to the nearest layout in the parent chain declaring it.
+     *
+     * @param name The variable name
+     * @return Returns the resolved reference, or -1 if not declared in this or a parent layout
+     * @see #getDepth(int)
+     * @see #getSlot(int)
+     */
+    public int resolve(final String name) {
+        Integer reference = resolved.get(name);
+        return reference != null ? reference : -1;
+    }
+
+    /**
+     * @param reference A resolved reference
+     * @return Returns the number of parent contexts to skip for the resolved reference
+     */
+    public static int getDepth(final int reference) {
+        return reference >>> SLOT_BITS;
+    }
+
+    /**
+     * @param reference A resolved reference
+     * @return Returns the slot index within the declaring context for the resolved reference
+     */
+    public static int getSlot(final int reference) {
+        return reference & (MAX_SLOTS - 1);
+    }
+}
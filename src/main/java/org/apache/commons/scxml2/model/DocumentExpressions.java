@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.model;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * The (distinct) expressions and scripts statically defined in a SCXML document, collected by walking its model,
+ * grouped by how they are evaluated by the {@link org.apache.commons.scxml2.Evaluator}.
+ * <p>
+ * This allows an Evaluator implementation to precompile all expressions of a document once, at load time.
+ * Expressions which are only constructed at runtime are not included.
+ * </p>
+ */
+public final class DocumentExpressions {
+
+    /** The expressions evaluated through Evaluator#evalCond */
+    private final Set<String> conditions = new LinkedHashSet<String>();
+
+    /** The expressions evaluated through Evaluator#eval */
+    private final Set<String> values = new LinkedHashSet<String>();
+
+    /** The expressions evaluated through Evaluator#evalLocation or Evaluator#evalAssign */
+    private final Set<String> locations = new LinkedHashSet<String>();
+
+    /** The scripts evaluated through Evaluator#evalScript */
+    private final Set<String> scripts = new LinkedHashSet<String>();
+
+    /**
+     * Constructor, collecting the expressions of the provided document
+     *
+     * @param scxml The SCXML document
+     */
+    public DocumentExpressions(final SCXML scxml) {
+        addDatamodel(scxml.getDatamodel());
+        if (scxml.getGlobalScript() != null) {
+            addAction(scxml.getGlobalScript());
+        }
+        if (scxml.getInitialTransition() != null) {
+            addExecutable(scxml.getInitialTransition());
+        }
+        addStates(scxml.getChildren());
+    }
+
+    /**
+     * @return Returns the (unmodifiable) set of condition expressions, in document order
+     */
+    public Set<String> getConditions() {
+        return Collections.unmodifiableSet(conditions);
+    }
+
+    /**
+     * @return Returns the (unmodifiable) set of value expressions, in document order
+     */
+    public Set<String> getValues() {
+        return Collections.unmodifiableSet(values);
+    }
+
+    /**
+     * @return Returns the (unmodifiable) set of location expressions, in document order
+     */
+    public Set<String> getLocations() {
+        return Collections.unmodifiableSet(locations);
+    }
+
+    /**
+     * @return Returns the (unmodifiable) set of scripts, in document order
+     */
+    public Set<String> getScripts() {
+        return Collections.unmodifiableSet(scripts);
+    }
+
+    private void addStates(final List<EnterableState> states) {
+        for (EnterableState es : states) {
+            for (OnEntry onEntry : es.getOnEntries()) {
+                addExecutable(onEntry);
+            }
+            for (OnExit onExit : es.getOnExits()) {
+                addExecutable(onExit);
+            }
+            if (es instanceof TransitionalState) {
+                TransitionalState ts = (TransitionalState)es;
+                addDatamodel(ts.getDatamodel());
+                if (ts instanceof State && ((State)ts).getInitial() != null) {
+                    addExecutable(((State)ts).getInitial().getTransition());
+                }
+                for (Transition t : ts.getTransitionsList()) {
+                    add(conditions, t.getCond());
+                    addExecutable(t);
+                }
+                for (History h : ts.getHistory()) {
+                    addExecutable(h.getTransition());
+                }
+                for (Invoke invoke : ts.getInvokes()) {
+                    add(values, invoke.getSrcexpr());
+                    add(values, invoke.getTypeexpr());
+                    add(locations, invoke.getIdlocation());
+                    addPayload(invoke, invoke.getContent());
+                    addExecutable(invoke.getFinalize());
+                }
+                addStates(ts.getChildren());
+            }
+        }
+    }
+
+    private void addDatamodel(final Datamodel datamodel) {
+        if (datamodel != null) {
+            for (Data datum : datamodel.getData()) {
+                add(values, datum.getExpr());
+            }
+        }
+    }
+
+    private void addExecutable(final Executable executable) {
+        if (executable != null) {
+            addActions(executable.getActions());
+        }
+    }
+
+    private void addActions(final List<Action> actions) {
+        for (Action action : actions) {
+            addAction(action);
+        }
+    }
+
+    private void addAction(final Action action) {
+        if (action instanceof Assign) {
+            add(values, ((Assign)action).getExpr());
+            add(locations, ((Assign)action).getLocation());
+        }
+        else if (action instanceof ElseIf) {
+            add(conditions, ((ElseIf)action).getCond());
+        }
+        else if (action instanceof If) {
+            add(conditions, ((If)action).getCond());
+        }
+        else if (action instanceof Foreach) {
+            add(values, ((Foreach)action).getArray());
+        }
+        else if (action instanceof Var) {
+            add(values, ((Var)action).getExpr());
+        }
+        else if (action instanceof Log) {
+            add(values, ((Log)action).getExpr());
+        }
+        else if (action instanceof Cancel) {
+            add(values, ((Cancel)action).getSendidexpr());
+        }
+        else if (action instanceof Script) {
+            add(scripts, ((Script)action).getScript());
+        }
+        else if (action instanceof Send) {
+            Send send = (Send)action;
+            add(values, send.getEventexpr());
+            add(values, send.getTargetexpr());
+            add(values, send.getTypeexpr());
+            add(values, send.getDelayexpr());
+            add(values, send.getHints());
+            add(locations, send.getIdlocation());
+            addPayload(send, send.getContent());
+        }
+        if (action instanceof ActionsContainer) {
+            addActions(((ActionsContainer)action).getActions());
+        }
+    }
+
+    private void addPayload(final NamelistHolder holder, final Content content) {
+        for (Param param : holder.getParams()) {
+            add(values, param.getExpr());
+            add(values, param.getLocation());
+        }
+        if (holder.getNamelist() != null) {
+            StringTokenizer tkn = new StringTokenizer(holder.getNamelist());
+            while (tkn.hasMoreTokens()) {
+                values.add(tkn.nextToken());
+            }
+        }
+        if (content != null) {
+            add(values, content.getExpr());
+        }
+    }
+
+    private static void add(final Set<String> expressions, final String expression) {
+        if (expression != null && expression.trim().length() > 0) {
+            expressions.add(expression);
+        }
+    }
+}
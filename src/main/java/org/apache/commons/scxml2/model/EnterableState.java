@@ -29,6 +29,21 @@ public abstract class EnterableState extends TransitionTarget implements Documen
      */
     private int order;
 
+    /**
+     * The dense ordinal of this state, -1 until initialized
+     */
+    private int ordinal = -1;
+
+    /**
+     * The highest ordinal of the descendants of this state, -1 until initialized
+     */
+    private int lastDescendantOrdinal = -1;
+
+    /**
+     * The variable layout of the context of this state, null until initialized
+     */
+    private ContextLayout contextLayout;
+
     /**
      * List of optional OnEntry elements holding executable content to be run upon
      * entering this transition target.
@@ -65,6 +80,70 @@ public abstract class EnterableState extends TransitionTarget implements Documen
         this.order = order;
     }
 
+    /**
+     * Returns the ordinal of this state.
+     * <p>
+     * The ordinals of all EnterableStates within a SCXML document are assigned in document order, starting from zero
+     * without gaps, which allows representing a set of states of the same document as a bitset
+     * (see {@link EnterableStateSet}).
+     * </p>
+     * @return the ordinal of this state, or -1 if not initialized yet
+     * @see SCXML#initOrdinals()
+     */
+    public final int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Sets the ordinal of this state
+     * @param ordinal the ordinal
+     * @see #getOrdinal()
+     */
+    public final void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Returns the highest ordinal of the descendants of this state.
+     * <p>
+     * As ordinals are assigned in document order, the descendants of a state have the ordinals directly following its
+     * own ordinal, up to and including the last descendant ordinal. For a state without descendants, the last
+     * descendant ordinal is the same as its own ordinal.
+     * </p>
+     * @return the highest ordinal of the descendants of this state, or -1 if not initialized yet
+     * @see SCXML#initOrdinals()
+     */
+    public final int getLastDescendantOrdinal() {
+        return lastDescendantOrdinal;
+    }
+
+    /**
+     * Sets the highest ordinal of the descendants of this state
+     * @param lastDescendantOrdinal the last descendant ordinal
+     * @see #getLastDescendantOrdinal()
+     */
+    public final void setLastDescendantOrdinal(int lastDescendantOrdinal) {
+        this.lastDescendantOrdinal = lastDescendantOrdinal;
+    }
+
+    /**
+     * Returns the variable layout of the context of this state.
+     *
+     * @return the context layout of this state, or null if not initialized yet
+     */
+    public final ContextLayout getContextLayout() {
+        return contextLayout;
+    }
+
+    /**
+     * Sets the variable layout of the context of this state
+     * @param contextLayout the context layout
+     * @see #getContextLayout()
+     */
+    public final void setContextLayout(ContextLayout contextLayout) {
+        this.contextLayout = contextLayout;
+    }
+
     /**
      * Get the OnEntry elements.
      *
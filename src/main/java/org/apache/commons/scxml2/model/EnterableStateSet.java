@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.model;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A Set of {@link EnterableState}s backed by a BitSet indexed by the {@link EnterableState#getOrdinal() ordinal} of
+ * the states.
+ * <p>
+ * As the state ordinals are assigned in document order, iterating this set always returns its states in document
+ * order, and the {@link #nextOrdinal(int)} and {@link #previousOrdinal(int)} methods can be used for (reverse) document
+ * order iteration without creating an Iterator.
+ * </p>
+ * <p>
+ * Set operations between two EnterableStateSets, like {@link #addAll(Collection)}, {@link #removeAll(Collection)} and
+ * {@link #intersects(EnterableStateSet)}, are performed as bit operations.
+ * </p>
+ * <p>
+ * Note: only states belonging to the same SCXML document, and for which the ordinals have been initialized (see
+ * {@link SCXML#initOrdinals()}), can be added to the same set.
+ * </p>
+ */
+public class EnterableStateSet extends AbstractSet<EnterableState> implements Serializable {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final EnterableState[] NO_STATES = new EnterableState[0];
+
+    /**
+     * The (possibly shared) data of this set
+     */
+    private static final class Data implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The bits representing the ordinals of the states in this set
+         */
+        private final BitSet bits = new BitSet();
+
+        /**
+         * The states indexed by their ordinal, only valid for the ordinals set in the bits
+         */
+        private EnterableState[] states = NO_STATES;
+
+        /**
+         * The number of states in this set
+         */
+        private int size;
+    }
+
+    private final Data data;
+
+    /**
+     * Flag indicating if this set is a read-only view
+     */
+    private final boolean readOnly;
+
+    /**
+     * Constructor for an empty set.
+     */
+    public EnterableStateSet() {
+        this(new Data(), false);
+    }
+
+    /**
+     * Constructor for a set initially containing the provided states
+     *
+     * @param states the states to add
+     */
+    public EnterableStateSet(final Collection<? extends EnterableState> states) {
+        this();
+        addAll(states);
+    }
+
+    private EnterableStateSet(final Data data, final boolean readOnly) {
+        this.data = data;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return Returns a read-only view on this set, reflecting any changes made to this set.
+     */
+    public EnterableStateSet readOnlyView() {
+        return readOnly ? this : new EnterableStateSet(data, true);
+    }
+
+    private void checkModifiable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("read-only EnterableStateSet");
+        }
+    }
+
+    private static int ordinalOf(final EnterableState state) {
+        int ordinal = state.getOrdinal();
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("No ordinal initialized for state "+state.getId());
+        }
+        return ordinal;
+    }
+
+    /**
+     * @param ordinal the ordinal of a state
+     * @return Returns true if the state with the provided ordinal is a member of this set
+     */
+    public boolean containsOrdinal(final int ordinal) {
+        return data.bits.get(ordinal);
+    }
+
+    /**
+     * @param ordinal the ordinal of a state
+     * @return Returns the state with the provided ordinal if a member of this set, null otherwise
+     */
+    public EnterableState get(final int ordinal) {
+        return data.bits.get(ordinal) ? data.states[ordinal] : null;
+    }
+
+    /**
+     * @param fromOrdinal the ordinal to start checking from (inclusive)
+     * @return Returns the ordinal of the first member of this set with an ordinal equal to or after fromOrdinal,
+     * or -1 if there is no such state
+     */
+    public int nextOrdinal(final int fromOrdinal) {
+        return data.bits.nextSetBit(fromOrdinal);
+    }
+
+    /**
+     * @param fromOrdinal the ordinal to start checking from (inclusive)
+     * @return Returns the ordinal of the last member of this set with an ordinal equal to or before fromOrdinal,
+     * or -1 if there is no such state
+     */
+    public int previousOrdinal(final int fromOrdinal) {
+        return data.bits.previousSetBit(fromOrdinal);
+    }
+
+    /**
+     * @return Returns the ordinal of the last member of this set, or -1 if this set is empty
+     */
+    public int lastOrdinal() {
+        return data.bits.length()-1;
+    }
+
+    /**
+     * @param fromOrdinal the lowest ordinal of the range (inclusive)
+     * @param toOrdinal the highest ordinal of the range (inclusive)
+     * @return Returns true if this set contains any state with an ordinal within the provided range
+     */
+    public boolean intersects(final int fromOrdinal, final int toOrdinal) {
+        int next = data.bits.nextSetBit(fromOrdinal);
+        return next > -1 && next <= toOrdinal;
+    }
+
+    /**
+     * @param other another set
+     * @return Returns true if this set and the other set have any state in common
+     */
+    public boolean intersects(final EnterableStateSet other) {
+        return data.bits.intersects(other.data.bits);
+    }
+
+    @Override
+    public int size() {
+        return data.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return data.size == 0;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (o instanceof EnterableState) {
+            int ordinal = ((EnterableState)o).getOrdinal();
+            return ordinal > -1 && data.bits.get(ordinal) && data.states[ordinal] == o;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(final EnterableState state) {
+        checkModifiable();
+        int ordinal = ordinalOf(state);
+        if (data.bits.get(ordinal)) {
+            if (data.states[ordinal] != state) {
+                throw new IllegalArgumentException("State "+state.getId()+" has the same ordinal as state "
+                        +data.states[ordinal].getId());
+            }
+            return false;
+        }
+        if (ordinal >= data.states.length) {
+            data.states = Arrays.copyOf(data.states, Math.max(ordinal+1, data.states.length*2));
+        }
+        data.states[ordinal] = state;
+        data.bits.set(ordinal);
+        data.size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        checkModifiable();
+        if (contains(o)) {
+            data.bits.clear(((EnterableState)o).getOrdinal());
+            data.size--;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends EnterableState> c) {
+        if (c instanceof EnterableStateSet) {
+            checkModifiable();
+            Data other = ((EnterableStateSet)c).data;
+            if (other == data) {
+                return false;
+            }
+            int oldSize = data.size;
+            if (other.states.length > data.states.length) {
+                data.states = Arrays.copyOf(data.states, other.states.length);
+            }
+            for (int i = other.bits.nextSetBit(0); i > -1; i = other.bits.nextSetBit(i+1)) {
+                if (!data.bits.get(i)) {
+                    data.states[i] = other.states[i];
+                }
+            }
+            data.bits.or(other.bits);
+            data.size = data.bits.cardinality();
+            return data.size != oldSize;
+        }
+        return super.addAll(c);
+    }
+
+    /**
+     * Adds the states of another set with an ordinal within the provided range.
+     *
+     * @param other the set providing the states to add
+     * @param fromOrdinal the lowest ordinal of the range (inclusive)
+     * @param toOrdinal the highest ordinal of the range (inclusive)
+     * @return Returns true if this set changed as result
+     */
+    public boolean addAll(final EnterableStateSet other, final int fromOrdinal, final int toOrdinal) {
+        checkModifiable();
+        boolean changed = false;
+        for (int i = other.data.bits.nextSetBit(fromOrdinal); i > -1 && i <= toOrdinal; i = other.data.bits.nextSetBit(i+1)) {
+            changed |= add(other.data.states[i]);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        if (c instanceof EnterableStateSet) {
+            checkModifiable();
+            int oldSize = data.size;
+            if (((EnterableStateSet)c).data == data) {
+                clear();
+            }
+            else {
+                data.bits.andNot(((EnterableStateSet)c).data.bits);
+                data.size = data.bits.cardinality();
+            }
+            return data.size != oldSize;
+        }
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        if (c instanceof EnterableStateSet) {
+            checkModifiable();
+            int oldSize = data.size;
+            data.bits.and(((EnterableStateSet)c).data.bits);
+            data.size = data.bits.cardinality();
+            return data.size != oldSize;
+        }
+        return super.retainAll(c);
+    }
+
+    @Override
+    public void clear() {
+        checkModifiable();
+        data.bits.clear();
+        data.size = 0;
+    }
+
+    /**
+     * @return Returns an Iterator over the states in this set in document order
+     */
+    @Override
+    public Iterator<EnterableState> iterator() {
+        return new Iterator<EnterableState>() {
+
+            private int next = data.bits.nextSetBit(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next > -1;
+            }
+
+            @Override
+            public EnterableState next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = data.bits.nextSetBit(next+1);
+                return data.states[last];
+            }
+
+            @Override
+            public void remove() {
+                checkModifiable();
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                data.bits.clear(last);
+                data.size--;
+                last = -1;
+            }
+        };
+    }
+}
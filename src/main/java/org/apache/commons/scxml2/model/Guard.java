@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The result of the load time analysis of the <code>cond</code> guard of a {@link Transition}, for the datamodel
+ * the document was analyzed for.
+ * <p>
+ * A guard is classified as one of:
+ * </p>
+ * <ul>
+ *  <li>{@link Kind#CONSTANT}: a constant (true or false) condition, which doesn't need to be evaluated at all</li>
+ *  <li>{@link Kind#STATE_PREDICATE}: a condition only consisting of (optionally negated) <code>In()</code>
+ *  predicates, either all combined by <em>and</em> or all by <em>or</em>, which can be evaluated directly against
+ *  the active states, without invoking the Evaluator</li>
+ *  <li>{@link Kind#DATA}: a side effect free condition which only reads the datamodel variables in its
+ *  {@link #getReadSet() read set}</li>
+ *  <li>{@link Kind#GENERAL}: any other condition</li>
+ * </ul>
+ * <p>
+ * As the analysis depends on the expression language, a guard only may be used instead of the Evaluator if the
+ * Evaluator supports the same {@link #getDatamodel() datamodel}.
+ * </p>
+ */
+public final class Guard implements Serializable {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The guard classifications
+     */
+    public enum Kind {
+        CONSTANT, STATE_PREDICATE, DATA, GENERAL
+    }
+
+    private final Kind kind;
+    private final String datamodel;
+    private final boolean value;
+    private final EnterableState[] states;
+    private final boolean[] negated;
+    private final boolean conjunction;
+    private final Set<String> readSet;
+
+    private Guard(final Kind kind, final String datamodel, final boolean value, final EnterableState[] states,
+                  final boolean[] negated, final boolean conjunction, final Set<String> readSet) {
+        this.kind = kind;
+        this.datamodel = datamodel;
+        this.value = value;
+        this.states = states;
+        this.negated = negated;
+        this.conjunction = conjunction;
+        this.readSet = readSet;
+    }
+
+    /**
+     * @param datamodel The datamodel the guard was analyzed for
+     * @param value The constant value
+     * @return Returns a constant guard
+     */
+    public static Guard newConstant(final String datamodel, final boolean value) {
+        return new Guard(Kind.CONSTANT, datamodel, value, null, null, false, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param datamodel The datamodel the guard was analyzed for
+     * @param states The states of the <code>In()</code> predicates, null for an unknown state id
+     * @param negated Whether each <code>In()</code> predicate is negated
+     * @param conjunction true if the predicates are combined by <em>and</em>, false if by <em>or</em>
+     * @return Returns a state predicate guard
+     */
+    public static Guard newStatePredicate(final String datamodel, final EnterableState[] states,
+                                          final boolean[] negated, final boolean conjunction) {
+        if (states.length == 0 || states.length != negated.length) {
+            throw new IllegalArgumentException("Guard: invalid state predicate");
+        }
+        return new Guard(Kind.STATE_PREDICATE, datamodel, false, states.clone(), negated.clone(), conjunction,
+                Collections.<String>emptySet());
+    }
+
+    /**
+     * @param datamodel The datamodel the guard was analyzed for
+     * @param readSet The datamodel variables read by the guard
+     * @return Returns a datamodel only guard
+     */
+    public static Guard newData(final String datamodel, final Set<String> readSet) {
+        return new Guard(Kind.DATA, datamodel, false, null, null, false,
+                Collections.unmodifiableSet(new LinkedHashSet<String>(readSet)));
+    }
+
+    /**
+     * @param datamodel The datamodel the guard was analyzed for
+     * @return Returns a general guard
+     */
+    public static Guard newGeneral(final String datamodel) {
+        return new Guard(Kind.GENERAL, datamodel, false, null, null, false, null);
+    }
+
+    /**
+     * @return Returns the classification of the guard
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return Returns the datamodel the guard was analyzed for
+     */
+    public String getDatamodel() {
+        return datamodel;
+    }
+
+    /**
+     * @return Returns true if the guard can be evaluated without the Evaluator, using {@link #evaluate(Set)}
+     */
+    public boolean isStatic() {
+        return kind == Kind.CONSTANT || kind == Kind.STATE_PREDICATE;
+    }
+
+    /**
+     * @return Returns the (unmodifiable) set of datamodel variables read by the guard, or null if unknown
+     * (for a {@link Kind#GENERAL} guard)
+     */
+    public Set<String> getReadSet() {
+        return readSet;
+    }
+
+    /**
+     * Evaluates a {@link #isStatic() static} guard.
+     *
+     * @param activeStates The currently active states
+     * @return Returns the value of the guard
+     * @throws IllegalStateException if the guard is not static
+     */
+    public boolean evaluate(final Set<EnterableState> activeStates) {
+        if (kind == Kind.CONSTANT) {
+            return value;
+        }
+        if (kind != Kind.STATE_PREDICATE) {
+            throw new IllegalStateException("Guard: cannot statically evaluate a " + kind + " guard");
+        }
+        for (int i = 0; i < states.length; i++) {
+            boolean result = (states[i] != null && activeStates.contains(states[i])) != negated[i];
+            if (result != conjunction) {
+                // short-circuit: false for and, true for or
+                return result;
+            }
+        }
+        return conjunction;
+    }
+}
@@ -32,12 +32,37 @@ public class Parallel extends TransitionalState {
      */
     private static final long serialVersionUID = 2L;
 
+    /**
+     * Whether the transition selection for the regions of this parallel can be performed concurrently.
+     */
+    private boolean independentRegions;
+
     /**
      * Constructor.
      */
     public Parallel() {
     }
 
+    /**
+     * Returns whether the regions of this parallel are independent for transition selection: every guarded
+     * transition within its regions, of itself and of its ancestors has a guard without side effects, as
+     * determined by the load time guard analysis, so that the transitions of the regions can be selected
+     * concurrently.
+     *
+     * @return Returns true if the regions of this parallel are independent
+     * @see Guard
+     */
+    public final boolean hasIndependentRegions() {
+        return independentRegions;
+    }
+
+    /**
+     * @param independentRegions Whether the regions of this parallel are independent for transition selection
+     */
+    public final void setIndependentRegions(final boolean independentRegions) {
+        this.independentRegions = independentRegions;
+    }
+
     /**
      * {@inheritDoc}
      * @return Returns always false (a state of type Parallel is never atomic)
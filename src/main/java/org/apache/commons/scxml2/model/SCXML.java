@@ -117,6 +117,21 @@ public class SCXML implements Serializable, Observable,
      */
     private Map<String, TransitionTarget> targets;
 
+    /**
+     * The number of EnterableStates in this document, or -1 if their ordinals have not been initialized yet.
+     */
+    private int numberOfEnterableStates = -1;
+
+    /**
+     * The compiled index of the transitions of all states in this document.
+     */
+    private TransitionIndex transitionIndex;
+
+    /**
+     * The variable layout of the global context of this document.
+     */
+    private ContextLayout contextLayout;
+
     /**
      * The XML namespaces defined on the SCXML document root node,
      * preserved primarily for serialization.
@@ -256,6 +271,76 @@ public class SCXML implements Serializable, Observable,
         targets.put(target.getId(), target);
     }
 
+    /**
+     * Initialize the {@link EnterableState#getOrdinal() ordinal} of all EnterableStates in this document,
+     * in document order, as well as their {@link EnterableState#getLastDescendantOrdinal() last descendant ordinal}.
+     */
+    public final void initOrdinals() {
+        numberOfEnterableStates = initOrdinals(children, 0);
+    }
+
+    /**
+     * Initialize the ordinals and last descendant ordinals of the provided states and their descendants
+     * @param states The list of children states of a parent TransitionalState or the SCXML document itself
+     * @param nextOrdinal The next to be used ordinal
+     * @return Returns the next to be used ordinal
+     */
+    private static int initOrdinals(final List<EnterableState> states, int nextOrdinal) {
+        for (EnterableState es : states) {
+            es.setOrdinal(nextOrdinal++);
+            if (es instanceof TransitionalState) {
+                nextOrdinal = initOrdinals(((TransitionalState)es).getChildren(), nextOrdinal);
+            }
+            es.setLastDescendantOrdinal(nextOrdinal-1);
+        }
+        return nextOrdinal;
+    }
+
+    /**
+     * @return Returns the number of EnterableStates in this document, or -1 if their ordinals have not been
+     * initialized yet
+     * @see #initOrdinals()
+     */
+    public final int getNumberOfEnterableStates() {
+        return numberOfEnterableStates;
+    }
+
+    /**
+     * Get the compiled index of the transitions of all states in this document.
+     *
+     * @return Returns the transition index, or null if not (yet) compiled.
+     */
+    public final TransitionIndex getTransitionIndex() {
+        return transitionIndex;
+    }
+
+    /**
+     * Set the compiled index of the transitions of all states in this document.
+     *
+     * @param transitionIndex The transition index to set.
+     */
+    public final void setTransitionIndex(final TransitionIndex transitionIndex) {
+        this.transitionIndex = transitionIndex;
+    }
+
+    /**
+     * Get the variable layout of the global context of this document.
+     *
+     * @return Returns the context layout, or null if not (yet) initialized.
+     */
+    public final ContextLayout getContextLayout() {
+        return contextLayout;
+    }
+
+    /**
+     * Set the variable layout of the global context of this document.
+     *
+     * @param contextLayout The context layout to set.
+     */
+    public final void setContextLayout(final ContextLayout contextLayout) {
+        this.contextLayout = contextLayout;
+    }
+
     /**
      * Get the SCXML document version.
      *
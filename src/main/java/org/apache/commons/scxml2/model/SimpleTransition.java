@@ -239,6 +239,24 @@ public class SimpleTransition extends Executable
         return ts;
     }
 
+    /**
+     * (Re)initializes the derived effective Transition type and the transition domain of this transition.
+     * <p>
+     * Both are static once the targets of this transition have been resolved, and are precomputed by the
+     * SCXMLReader after wiring the state machine model, so they don't need to be derived during execution.
+     * This method only needs to be invoked again when the targets or the parent of this transition are modified
+     * thereafter.
+     * </p>
+     * @see #isTypeInternal()
+     * @see #getTransitionDomain()
+     */
+    public final void initTransitionDomain() {
+        typeInternal = null;
+        transitionDomain = null;
+        scxmlTransitionDomain = false;
+        getTransitionDomain();
+    }
+
     /**
      * Get the XML namespaces at this action node in the SCXML document.
      *
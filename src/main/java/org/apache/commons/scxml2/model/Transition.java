@@ -55,11 +55,22 @@ public class Transition extends SimpleTransition implements DocumentOrder {
      */
     private boolean allEvents;
 
+    /**
+     * This transition event descriptors as interned token symbols, null if not (yet) compiled by a
+     * {@link TransitionIndex}
+     */
+    private int[][] eventTokens;
+
     /**
      * Optional guard condition.
      */
     private String cond;
 
+    /**
+     * The load time analysis of the guard condition, null if not analyzed.
+     */
+    private Guard guard;
+
     /**
      * Constructor.
      */
@@ -102,6 +113,25 @@ public class Transition extends SimpleTransition implements DocumentOrder {
      */
     public void setCond(final String cond) {
         this.cond = cond;
+        this.guard = null;
+    }
+
+    /**
+     * Get the load time analysis of the guard condition.
+     *
+     * @return Returns the guard, or null if the guard condition is absent or has not been analyzed.
+     */
+    public final Guard getGuard() {
+        return guard;
+    }
+
+    /**
+     * Set the load time analysis of the guard condition.
+     *
+     * @param guard The guard to set.
+     */
+    public final void setGuard(final Guard guard) {
+        this.guard = guard;
     }
 
     /**
@@ -122,6 +152,7 @@ public class Transition extends SimpleTransition implements DocumentOrder {
      */
     public void setEvent(final String event) {
         this.event = event == null ? null : event.trim();
+        this.eventTokens = null;
         if (this.event != null) {
             // 'event' is a space separated list of event descriptors
             events = new ArrayList<String>();
@@ -160,6 +191,22 @@ public class Transition extends SimpleTransition implements DocumentOrder {
         return events;
     }
 
+    /**
+     * @return The event descriptors of this transition as interned token symbols, in the same order as
+     * {@link #getEvents()}, or null if not (yet) compiled by a {@link TransitionIndex}
+     * @see TransitionIndex#getEventTokens(String)
+     */
+    public final int[][] getEventTokens() {
+        return eventTokens;
+    }
+
+    /**
+     * @param eventTokens The event descriptors of this transition as interned token symbols
+     */
+    public final void setEventTokens(final int[][] eventTokens) {
+        this.eventTokens = eventTokens;
+    }
+
     /**
      * @return True if this transition is event-less
      */
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compiled, per document, index of the {@link Transition}s of every {@link TransitionalState} in a SCXML state
+ * machine, used to only select the transitions which possibly can match a given event.
+ * <p>
+ * All (dot separated) tokens of the transition event descriptors are interned into a per document symbol table,
+ * and the event descriptors of every transition are compiled into arrays of token symbols
+ * ({@link Transition#getEventTokens()}). An event name, tokenized once with {@link #getEventTokens(String)}, then
+ * matches an event descriptor if the descriptor symbols are a prefix of the event name symbols, see
+ * {@link #matches(int[], int[])}. As the symbols are interned in document order, the symbols are the same for every
+ * index built for the same document.
+ * </p>
+ * <p>
+ * For each TransitionalState the transitions are bucketed by the first token symbol of their event descriptors,
+ * while transitions matching all events (*) are added to every bucket, and used for events with a first token not
+ * matching any bucket. Within each bucket the transitions are kept in document order, so candidate transitions can
+ * be evaluated in the same order as when iterating {@link TransitionalState#getTransitionsList()}.
+ * </p>
+ * <p>
+ * The index only narrows down the candidate transitions: the full event descriptor match and the evaluation of the
+ * condition guard still needs to be done for each candidate transition.
+ * </p>
+ * <p>
+ * Like the document order, the index is derived from the state machine model once it has been fully wired, and thus
+ * should be rebuilt if the model is changed afterwards.
+ * </p>
+ */
+public final class TransitionIndex implements Serializable {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * The symbol of an event name token not used by any event descriptor
+     */
+    public static final int UNKNOWN_TOKEN = -1;
+
+    /**
+     * The candidate transitions per state
+     */
+    private final Map<TransitionalState, StateTransitions> stateTransitions =
+            new HashMap<TransitionalState, StateTransitions>();
+
+    /**
+     * The symbol table of the event descriptor tokens
+     */
+    private final Map<String, Integer> eventSymbols = new HashMap<String, Integer>();
+
+    /**
+     * The maximum number of tokens of any event descriptor
+     */
+    private int maxEventTokens;
+
+    /**
+     * The compiled candidate transitions of a single TransitionalState
+     */
+    private static final class StateTransitions implements Serializable {
+
+        private static final long serialVersionUID = 2L;
+
+        /**
+         * The event-less transitions, in document order
+         */
+        private final List<Transition> noEventsTransitions = new ArrayList<Transition>();
+
+        /**
+         * The transitions matching all events (*), in document order
+         */
+        private final List<Transition> allEventsTransitions = new ArrayList<Transition>();
+
+        /**
+         * The (ascending) first token symbols of the event descriptors
+         */
+        private int[] firstTokens;
+
+        /**
+         * The transitions per first token symbol, including the all events transitions, in document order
+         */
+        private List<Transition>[] eventTransitions;
+    }
+
+    /**
+     * Constructor, compiling the index for all TransitionalStates in the provided state machine.
+     *
+     * @param scxml The state machine to build the index for
+     */
+    public TransitionIndex(final SCXML scxml) {
+        addStates(scxml.getChildren());
+    }
+
+    /**
+     * Returns the first token of an event name.
+     *
+     * @param eventName the event name
+     * @return the event name up to (not including) its first '.' character, or null if eventName is null
+     */
+    public static String getEventToken(final String eventName) {
+        if (eventName == null) {
+            return null;
+        }
+        int dot = eventName.indexOf('.');
+        return dot < 0 ? eventName : eventName.substring(0, dot);
+    }
+
+    /**
+     * Tokenizes an event name into the token symbols of this index, which is the key used for looking up candidate
+     * transitions, and for matching their event descriptors.
+     * <p>
+     * Tokens not used by any event descriptor are represented by {@link #UNKNOWN_TOKEN}, and only as many tokens as
+     * the longest event descriptor are tokenized, as further tokens cannot affect any match.
+     * </p>
+     *
+     * @param eventName the event name
+     * @return the token symbols of the event name, or null if eventName is null
+     */
+    public int[] getEventTokens(final String eventName) {
+        if (eventName == null) {
+            return null;
+        }
+        int count = 1;
+        for (int i = eventName.indexOf('.'); i > -1 && count < maxEventTokens; i = eventName.indexOf('.', i+1)) {
+            count++;
+        }
+        int[] tokens = new int[count];
+        int begin = 0;
+        for (int i = 0; i < count; i++) {
+            int end = eventName.indexOf('.', begin);
+            Integer symbol = eventSymbols.get(end < 0 ? eventName.substring(begin) : eventName.substring(begin, end));
+            tokens[i] = symbol != null ? symbol : UNKNOWN_TOKEN;
+            begin = end+1;
+        }
+        return tokens;
+    }
+
+    /**
+     * Checks if an event descriptor matches an event name: if the descriptor tokens are a prefix of the event name
+     * tokens.
+     *
+     * @param descriptorTokens the token symbols of the event descriptor (see {@link Transition#getEventTokens()})
+     * @param eventTokens the token symbols of the event name (see {@link #getEventTokens(String)})
+     * @return true if the event descriptor matches the event name
+     */
+    public static boolean matches(final int[] descriptorTokens, final int[] eventTokens) {
+        if (descriptorTokens.length > eventTokens.length) {
+            return false;
+        }
+        for (int i = 0; i < descriptorTokens.length; i++) {
+            if (descriptorTokens[i] != eventTokens[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the transitions of a state which possibly can match an event.
+     *
+     * @param state the state providing the transitions
+     * @param eventToken the first token of the event name (see {@link #getEventToken(String)}), or null for
+     *                   selecting the event-less transitions
+     * @return the candidate transitions, in document order (may be empty, never null)
+     */
+    public List<Transition> getCandidateTransitions(final TransitionalState state, final String eventToken) {
+        return getCandidateTransitions(state, getEventTokens(eventToken));
+    }
+
+    /**
+     * Get the transitions of a state which possibly can match an event.
+     *
+     * @param state the state providing the transitions
+     * @param eventTokens the token symbols of the event name (see {@link #getEventTokens(String)}), or null for
+     *                    selecting the event-less transitions
+     * @return the candidate transitions, in document order (may be empty, never null)
+     */
+    public List<Transition> getCandidateTransitions(final TransitionalState state, final int[] eventTokens) {
+        StateTransitions st = stateTransitions.get(state);
+        if (st == null) {
+            // state not (yet) indexed: every transition is a candidate
+            return state.getTransitionsList();
+        }
+        if (eventTokens == null) {
+            return st.noEventsTransitions;
+        }
+        int bucket = eventTokens[0] != UNKNOWN_TOKEN ? Arrays.binarySearch(st.firstTokens, eventTokens[0]) : -1;
+        return bucket > -1 ? st.eventTransitions[bucket] : st.allEventsTransitions;
+    }
+
+    /**
+     * Recursively add the transitions of the provided states and their descendants to this index.
+     *
+     * @param states the states to add
+     */
+    private void addStates(final List<EnterableState> states) {
+        for (EnterableState es : states) {
+            if (es instanceof TransitionalState) {
+                TransitionalState ts = (TransitionalState)es;
+                if (!ts.getTransitionsList().isEmpty()) {
+                    stateTransitions.put(ts, compile(ts.getTransitionsList()));
+                }
+                addStates(ts.getChildren());
+            }
+        }
+    }
+
+    /**
+     * Intern the tokens of an event descriptor.
+     *
+     * @param event the event descriptor
+     * @return the token symbols of the event descriptor
+     */
+    private int[] intern(final String event) {
+        String[] tokens = event.split("\\.", -1);
+        int[] symbols = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            Integer symbol = eventSymbols.get(tokens[i]);
+            if (symbol == null) {
+                symbol = eventSymbols.size();
+                eventSymbols.put(tokens[i], symbol);
+            }
+            symbols[i] = symbol;
+        }
+        maxEventTokens = Math.max(maxEventTokens, symbols.length);
+        return symbols;
+    }
+
+    /**
+     * Compile the candidate transitions for a list of state transitions, and the event descriptor token symbols of
+     * the transitions.
+     *
+     * @param transitions the transitions of a state, in document order
+     * @return the compiled candidate transitions
+     */
+    @SuppressWarnings("unchecked")
+    private StateTransitions compile(final List<Transition> transitions) {
+        StateTransitions st = new StateTransitions();
+        Map<Integer, List<Transition>> tokenTransitionsMap = new TreeMap<Integer, List<Transition>>();
+        for (Transition t : transitions) {
+            if (t.isNoEventsTransition()) {
+                st.noEventsTransitions.add(t);
+            }
+            else if (t.isAllEventsTransition()) {
+                st.allEventsTransitions.add(t);
+                for (List<Transition> tokenTransitions : tokenTransitionsMap.values()) {
+                    tokenTransitions.add(t);
+                }
+            }
+            else {
+                int[][] eventTokens = new int[t.getEvents().size()][];
+                for (int i = 0; i < eventTokens.length; i++) {
+                    eventTokens[i] = intern(t.getEvents().get(i));
+                    List<Transition> tokenTransitions = tokenTransitionsMap.get(eventTokens[i][0]);
+                    if (tokenTransitions == null) {
+                        // seed with the preceding all events transitions
+                        tokenTransitions = new ArrayList<Transition>(st.allEventsTransitions);
+                        tokenTransitionsMap.put(eventTokens[i][0], tokenTransitions);
+                    }
+                    if (tokenTransitions.isEmpty() || tokenTransitions.get(tokenTransitions.size()-1) != t) {
+                        tokenTransitions.add(t);
+                    }
+                }
+                t.setEventTokens(eventTokens);
+            }
+        }
+        st.firstTokens = new int[tokenTransitionsMap.size()];
+        @SuppressWarnings("unchecked")
+        List<Transition>[] eventTransitions = (List<Transition>[])new List<?>[tokenTransitionsMap.size()];
+        st.eventTransitions = eventTransitions;
+        int i = 0;
+        for (Map.Entry<Integer, List<Transition>> entry : tokenTransitionsMap.entrySet()) {
+            st.firstTokens[i] = entry.getKey();
+            st.eventTransitions[i++] = entry.getValue();
+        }
+        return st;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.semantics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.scxml2.ConcurrentEvaluator;
+import org.apache.commons.scxml2.Evaluator;
+import org.apache.commons.scxml2.SCXMLExecutionContext;
+import org.apache.commons.scxml2.SCXMLExpressionException;
+import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.EnterableStateSet;
+import org.apache.commons.scxml2.model.Final;
+import org.apache.commons.scxml2.model.Guard;
+import org.apache.commons.scxml2.model.Parallel;
+import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionIndex;
+import org.apache.commons.scxml2.model.TransitionalState;
+
+/**
+ * The transition selection for the active atomic states of one region of a {@link Parallel} with
+ * {@link Parallel#hasIndependentRegions() independent regions}, computed concurrently with the other regions.
+ * <p>
+ * Each active atomic state of the region, in document order, is searched for an enabled transition up to (and
+ * including) the region state itself, like {@link SCXMLSemanticsImpl#selectTransitions(SCXMLExecutionContext, Step)}
+ * does. Guard evaluation errors are only recorded, and the search of the ancestors of the Parallel itself is left to
+ * the caller, so that merging the results of all regions in document order gives the same result, and reports the
+ * same errors in the same order, as the serial transition selection.
+ * </p>
+ */
+final class RegionSelection extends RecursiveAction {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final SCXMLSemanticsImpl semantics;
+    private final SCXMLExecutionContext exctx;
+    private final TransitionalState region;
+    private final EnterableStateSet configuration;
+    private final String eventName;
+    private final int[] eventTokens;
+    private final TransitionIndex transitionIndex;
+
+    /** The enabled transition per active atomic state, null if none */
+    private final List<Transition> transitions = new ArrayList<Transition>();
+
+    /** Whether the search escaped the region without a match, per active atomic state */
+    private final List<Boolean> escaped = new ArrayList<Boolean>();
+
+    /** The recorded guard evaluation errors, in evaluation order */
+    private final List<GuardError> errors = new ArrayList<GuardError>();
+
+    private RegionSelection(final SCXMLSemanticsImpl semantics, final SCXMLExecutionContext exctx,
+                            final TransitionalState region, final EnterableStateSet configuration,
+                            final String eventName, final int[] eventTokens, final TransitionIndex transitionIndex) {
+        this.semantics = semantics;
+        this.exctx = exctx;
+        this.region = region;
+        this.configuration = configuration;
+        this.eventName = eventName;
+        this.eventTokens = eventTokens;
+        this.transitionIndex = transitionIndex;
+    }
+
+    /**
+     * Computes the transition selection for all regions of an active Parallel concurrently, if possible.
+     * <p>
+     * This is only possible if the current Evaluator is a {@link ConcurrentEvaluator} supporting the concurrent
+     * evaluation of conditions, each state has its own context, and every transition with a guard within the active
+     * regions, of the Parallel itself and of its ancestors has a guard which can be evaluated without side effects.
+     * The latter guarantees the same evaluation order of side effecting guards as the serial transition selection,
+     * as the search continued from the Parallel for regions without an enabled transition is only performed when
+     * merging. The contexts of all active states in the regions are created upfront, so that the concurrent
+     * selection only reads the state of the SCInstance.
+     * </p>
+     *
+     * @param semantics The semantics performing the transition selection
+     * @param exctx The execution context
+     * @param parallel The active Parallel
+     * @param configuration The active states
+     * @param eventName The event name, or null for event-less transitions
+     * @param eventTokens The token symbols of the event name for the transition index, or null
+     * @param transitionIndex The transition index of the state machine, may be null
+     * @param pool The pool to run the selection on
+     * @return Returns the selections per region in document order, or null if concurrent selection isn't possible
+     */
+    static List<RegionSelection> select(final SCXMLSemanticsImpl semantics, final SCXMLExecutionContext exctx,
+                                        final Parallel parallel, final EnterableStateSet configuration,
+                                        final String eventName, final int[] eventTokens,
+                                        final TransitionIndex transitionIndex, final ForkJoinPool pool) {
+        Evaluator evaluator = exctx.getEvaluator();
+        if (parallel.getChildren().size() < 2 || exctx.getScInstance().isSingleContext()
+                || !(evaluator instanceof ConcurrentEvaluator)
+                || !((ConcurrentEvaluator)evaluator).isConcurrentEvalCondSupported()) {
+            return null;
+        }
+        String datamodel = evaluator.getSupportedDatamodel();
+        for (int i = parallel.getNumberOfAncestors()-1; i > -1; i--) {
+            if (hasGuards(parallel.getAncestor(i), datamodel) == null) {
+                return null;
+            }
+        }
+        if (hasGuards(parallel, datamodel) == null) {
+            return null;
+        }
+        for (int i = configuration.nextOrdinal(parallel.getOrdinal()+1);
+             i > -1 && i <= parallel.getLastDescendantOrdinal(); i = configuration.nextOrdinal(i+1)) {
+            EnterableState es = configuration.get(i);
+            if (es instanceof TransitionalState) {
+                Boolean hasGuards = hasGuards((TransitionalState)es, datamodel);
+                if (hasGuards == null) {
+                    return null;
+                }
+                if (hasGuards) {
+                    exctx.getScInstance().getContext(es);
+                }
+            }
+        }
+        final List<RegionSelection> selections = new ArrayList<RegionSelection>();
+        for (EnterableState child : parallel.getChildren()) {
+            selections.add(new RegionSelection(semantics, exctx, (TransitionalState)child, configuration, eventName,
+                    eventTokens, transitionIndex));
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(selections);
+            }
+        });
+        return selections;
+    }
+
+    /**
+     * @param state The state to check the transition guards of
+     * @param datamodel The datamodel of the current Evaluator
+     * @return Returns whether the state has transitions with a side effect free guard, or null if it has a transition
+     * with a guard which might have side effects
+     */
+    private static Boolean hasGuards(final TransitionalState state, final String datamodel) {
+        boolean hasGuards = false;
+        for (Transition transition : state.getTransitionsList()) {
+            if (transition.getCond() != null) {
+                Guard guard = transition.getGuard();
+                if (guard == null || guard.getKind() == Guard.Kind.GENERAL || !guard.getDatamodel().equals(datamodel)) {
+                    return null;
+                }
+                hasGuards = true;
+            }
+        }
+        return hasGuards;
+    }
+
+    @Override
+    protected void compute() {
+        EnterableStateSet visited = new EnterableStateSet();
+        for (int i = configuration.nextOrdinal(region.getOrdinal());
+             i > -1 && i <= region.getLastDescendantOrdinal(); i = configuration.nextOrdinal(i+1)) {
+            EnterableState es = configuration.get(i);
+            if (!es.isAtomicState()) {
+                continue;
+            }
+            TransitionalState state = (TransitionalState)(es instanceof Final ? es.getParent() : es);
+            TransitionalState current = state;
+            int ancestorIndex = state.getNumberOfAncestors()-1;
+            Transition matched = null;
+            boolean escapedRegion = false;
+            do {
+                List<Transition> candidates = transitionIndex != null
+                        ? transitionIndex.getCandidateTransitions(current, eventTokens)
+                        : current.getTransitionsList();
+                for (int j = 0, size = candidates.size(); j < size; j++) {
+                    Transition transition = candidates.get(j);
+                    if (semantics.matchTransition(exctx, transition, eventName, eventTokens, this)) {
+                        matched = transition;
+                        break;
+                    }
+                }
+                if (current == region) {
+                    escapedRegion = matched == null;
+                    break;
+                }
+                if (matched != null) {
+                    break;
+                }
+                current = state.getAncestor(ancestorIndex--);
+            } while (visited.add(current));
+            transitions.add(matched);
+            escaped.add(escapedRegion);
+        }
+    }
+
+    /**
+     * Records a guard evaluation error, to be reported when merging the selection.
+     *
+     * @param transition The transition
+     * @param e The guard evaluation error
+     */
+    void addError(final Transition transition, final SCXMLExpressionException e) {
+        errors.add(new GuardError(transitions.size(), transition, e));
+    }
+
+    /**
+     * @return Returns the number of active atomic states in the region
+     */
+    int getNumberOfStates() {
+        return transitions.size();
+    }
+
+    /**
+     * @param index The index of the active atomic state, in document order
+     * @return Returns the enabled transition for the active atomic state, or null if none
+     */
+    Transition getTransition(final int index) {
+        return transitions.get(index);
+    }
+
+    /**
+     * @param index The index of the active atomic state, in document order
+     * @return Returns true if no enabled transition was found up to the region state, and the search must be
+     * continued from the Parallel itself
+     */
+    boolean isEscaped(final int index) {
+        return escaped.get(index);
+    }
+
+    /**
+     * Reports the guard evaluation errors recorded while searching the transition for an active atomic state.
+     *
+     * @param index The index of the active atomic state, in document order
+     */
+    void reportErrors(final int index) {
+        for (GuardError error : errors) {
+            if (error.index == index) {
+                semantics.reportGuardError(exctx, error.transition, error.exception);
+            }
+        }
+    }
+
+    /**
+     * A guard evaluation error recorded during the concurrent selection
+     */
+    private static final class GuardError {
+
+        private final int index;
+        private final Transition transition;
+        private final SCXMLExpressionException exception;
+
+        private GuardError(final int index, final Transition transition, final SCXMLExpressionException exception) {
+            this.index = index;
+            this.transition = transition;
+            this.exception = exception;
+        }
+    }
+}
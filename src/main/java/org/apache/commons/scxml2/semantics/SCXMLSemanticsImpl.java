@@ -16,14 +16,13 @@
  */
 package org.apache.commons.scxml2.semantics;
 
-import java.util.ArrayList;
+import java.util.AbstractMap;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.scxml2.ActionExecutionContext;
 import org.apache.commons.scxml2.Context;
@@ -35,13 +34,16 @@ import org.apache.commons.scxml2.SCXMLSemantics;
 import org.apache.commons.scxml2.SCXMLSystemContext;
 import org.apache.commons.scxml2.StateConfiguration;
 import org.apache.commons.scxml2.TriggerEvent;
+import org.apache.commons.scxml2.env.SimpleContext;
 import org.apache.commons.scxml2.invoke.Invoker;
 import org.apache.commons.scxml2.invoke.InvokerException;
 import org.apache.commons.scxml2.model.Action;
 import org.apache.commons.scxml2.model.DocumentOrder;
 import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.EnterableStateSet;
 import org.apache.commons.scxml2.model.Executable;
 import org.apache.commons.scxml2.model.Final;
+import org.apache.commons.scxml2.model.Guard;
 import org.apache.commons.scxml2.model.History;
 import org.apache.commons.scxml2.model.Invoke;
 import org.apache.commons.scxml2.model.OnEntry;
@@ -54,6 +56,7 @@ import org.apache.commons.scxml2.model.Parallel;
 import org.apache.commons.scxml2.model.SCXML;
 import org.apache.commons.scxml2.model.State;
 import org.apache.commons.scxml2.model.Transition;
+import org.apache.commons.scxml2.model.TransitionIndex;
 import org.apache.commons.scxml2.model.TransitionTarget;
 import org.apache.commons.scxml2.system.EventVariable;
 
@@ -74,16 +77,52 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public static final String ERR_ILLEGAL_ALLOC = ".error.illegalalloc";
 
+    /**
+     * Whether a subclass overrides {@link #matchTransition(SCXMLExecutionContext, Transition, String)}, which then is
+     * used by the transition selection instead of the event token based matching
+     */
+    private final boolean matchTransitionOverridden =
+            isOverridden("matchTransition", SCXMLExecutionContext.class, Transition.class, String.class);
+
+    /**
+     * Whether a subclass overrides {@link #matchTransition(SCXMLExecutionContext, Transition, String, int[])}
+     */
+    private final boolean matchTransitionTokensOverridden =
+            isOverridden("matchTransition", SCXMLExecutionContext.class, Transition.class, String.class, int[].class);
+
+    /**
+     * @param name The name of a public method of this class
+     * @param parameterTypes The parameter types of the method
+     * @return Returns true if the method is overridden by a subclass
+     */
+    private boolean isOverridden(final String name, final Class<?>... parameterTypes) {
+        try {
+            return getClass().getMethod(name, parameterTypes).getDeclaringClass() != SCXMLSemanticsImpl.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     /**
      * Optional post processing immediately following SCXMLReader. May be used
      * for removing pseudo-states etc.
+     * <p>
+     * Initializes the state ordinals and compiles the {@link TransitionIndex} for the state machine if not done
+     * already by the SCXMLReader, which are used by the state configuration and
+     * {@link #selectTransitions(SCXMLExecutionContext, Step)}.
+     * </p>
      *
      * @param input  SCXML state machine
      * @param errRep ErrorReporter callback
      * @return normalized SCXML state machine, pseudo states are removed, etc.
      */
     public SCXML normalizeStateMachine(final SCXML input, final ErrorReporter errRep) {
-        //it is a no-op for now
+        if (input != null && input.getNumberOfEnterableStates() < 0) {
+            input.initOrdinals();
+        }
+        if (input != null && input.getTransitionIndex() == null) {
+            input.setTransitionIndex(new TransitionIndex(input));
+        }
         return input;
     }
 
@@ -114,8 +153,9 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         // execute global script if defined
         executeGlobalScript(exctx);
         // enter initial states
-        HashSet<TransitionalState> statesToInvoke = new HashSet<TransitionalState>();
-        Step step = new Step(null);
+        Set<TransitionalState> statesToInvoke = exctx.getStatesToInvoke();
+        statesToInvoke.clear();
+        Step step = exctx.getStep(null);
         step.getTransitList().add(exctx.getStateMachine().getInitialTransition());
         microStep(exctx, step, statesToInvoke);
         // Execute Immediate Transitions
@@ -163,12 +203,15 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
             exctx.stopRunning();
         }
         else {
+            // the datamodel may have been changed in place outside the state machine execution since the last step
+            exctx.resetGuardResults();
             setSystemEventVariable(exctx.getScInstance(), event, false);
             processInvokes(exctx, event);
-            Step step = new Step(event);
+            Step step = exctx.getStep(event);
             selectTransitions(exctx, step);
             if (!step.getTransitList().isEmpty()) {
-                HashSet<TransitionalState> statesToInvoke = new HashSet<TransitionalState>();
+                Set<TransitionalState> statesToInvoke = exctx.getStatesToInvoke();
+                statesToInvoke.clear();
                 microStep(exctx, step, statesToInvoke);
                 if (exctx.isRunning()) {
                     macroStep(exctx, statesToInvoke);
@@ -203,9 +246,10 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         if (exctx.isRunning()) {
             return;
         }
-        ArrayList<EnterableState> configuration = new ArrayList<EnterableState>(exctx.getScInstance().getStateConfiguration().getActiveStates());
-        Collections.sort(configuration, DocumentOrder.reverseDocumentOrderComparator);
-        for (EnterableState es : configuration) {
+        EnterableStateSet configuration = exctx.getScInstance().getStateConfiguration().getActiveStates();
+        // iterate in reverse document order
+        for (int i = configuration.lastOrdinal(); i > -1; i = configuration.previousOrdinal(i-1)) {
+            EnterableState es = configuration.get(i);
             for (OnExit onexit : es.getOnExits()) {
                 executeContent(exctx, onexit);
             }
@@ -217,6 +261,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
             }
             exctx.getNotificationRegistry().fireOnExit(es, es);
             exctx.getNotificationRegistry().fireOnExit(exctx.getStateMachine(), es);
+            exctx.recordExit(es);
             if (!(es instanceof Final && es.getParent() == null)) {
                 exctx.getScInstance().getStateConfiguration().exitState(es);
             }
@@ -256,24 +301,24 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
     public void buildStep(final SCXMLExecutionContext exctx, final Step step) throws ModelException {
         step.clearIntermediateState();
 
+        StateConfiguration stateConfiguration = exctx.getScInstance().getStateConfiguration();
         // compute exitSet, if there is something to exit and record their History configurations if applicable
-        if (!exctx.getScInstance().getStateConfiguration().getActiveStates().isEmpty()) {
-            computeExitSet(step, exctx.getScInstance().getStateConfiguration());
+        if (!stateConfiguration.getActiveStates().isEmpty()) {
+            computeExitSet(step, stateConfiguration);
         }
         // compute entrySet
         computeEntrySet(exctx, step);
 
-        // default result states to entrySet
-        Set<EnterableState> states = step.getEntrySet();
-        if (!step.getExitSet().isEmpty()) {
+        if (exctx.isCheckLegalConfiguration()) {
             // calculate result states by taking current states, subtracting exitSet and adding entrySet
-            states = new HashSet<EnterableState>(exctx.getScInstance().getStateConfiguration().getStates());
+            EnterableStateSet states = step.getResultStates();
+            states.addAll(stateConfiguration.getActiveStates());
             states.removeAll(step.getExitSet());
             states.addAll(step.getEntrySet());
-        }
-        // validate the result states represent a legal configuration
-        if (exctx.isCheckLegalConfiguration() && !isLegalConfiguration(states, exctx.getErrorReporter())) {
-            throw new ModelException("Illegal state machine configuration!");
+            // validate the result states represent a legal configuration
+            if (!isLegalActiveConfiguration(states, exctx.getErrorReporter())) {
+                throw new ModelException("Illegal state machine configuration!");
+            }
         }
     }
 
@@ -291,10 +336,11 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public void macroStep(final SCXMLExecutionContext exctx, final Set<TransitionalState> statesToInvoke)
             throws ModelException {
+        exctx.resetGuardResults();
         do {
             boolean macroStepDone = false;
             do {
-                Step step = new Step(null);
+                Step step = exctx.getStep(null);
                 selectTransitions(exctx, step);
                 if (step.getTransitList().isEmpty()) {
                     TriggerEvent event = exctx.nextInternalEvent();
@@ -304,7 +350,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                         }
                         else {
                             setSystemEventVariable(exctx.getScInstance(), event, true);
-                            step = new Step(event);
+                            step = exctx.getStep(event);
                             selectTransitions(exctx, step);
                         }
                     }
@@ -358,6 +404,11 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                 // root transition: every active state will be exited
                 exitSet.addAll(activeStates);
             }
+            else if (exitSet instanceof EnterableStateSet && activeStates instanceof EnterableStateSet) {
+                // the states to exit are the active descendants of the transition domain
+                ((EnterableStateSet)exitSet).addAll((EnterableStateSet)activeStates, transitionDomain.getOrdinal()+1,
+                        transitionDomain.getLastDescendantOrdinal());
+            }
             else {
                 for (EnterableState state : activeStates) {
                     if (state.isDescendantOf(transitionDomain)) {
@@ -394,9 +445,18 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                         if (deep == null) {
                             //calculate deep history for a given state once
                             deep = new HashSet<EnterableState>();
-                            for (EnterableState ott : atomicStates) {
-                                if (ott.isDescendantOf(es)) {
-                                    deep.add(ott);
+                            if (atomicStates instanceof EnterableStateSet) {
+                                EnterableStateSet states = (EnterableStateSet)atomicStates;
+                                for (int i = states.nextOrdinal(es.getOrdinal()+1);
+                                     i > -1 && i <= es.getLastDescendantOrdinal(); i = states.nextOrdinal(i+1)) {
+                                    deep.add(states.get(i));
+                                }
+                            }
+                            else {
+                                for (EnterableState ott : atomicStates) {
+                                    if (ott.isDescendantOf(es)) {
+                                        deep.add(ott);
+                                    }
                                 }
                             }
                         }
@@ -423,24 +483,19 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      * @param step The step containing the list of transitions to be taken
      */
     public void computeEntrySet(final SCXMLExecutionContext exctx, final Step step) {
-        Set<History> historyTargets = new HashSet<History>();
-        Set<EnterableState> entrySet = new HashSet<EnterableState>();
         for (SimpleTransition st : step.getTransitList()) {
             for (TransitionTarget tt : st.getTargets()) {
                 if (tt instanceof EnterableState) {
-                    entrySet.add((EnterableState) tt);
-                }
-                else {
-                    // History
-                    historyTargets.add((History)tt);
+                    addDescendantStatesToEnter(exctx, step, tt);
                 }
             }
         }
-        for (EnterableState es : entrySet) {
-            addDescendantStatesToEnter(exctx, step, es);
-        }
-        for (History h : historyTargets) {
-            addDescendantStatesToEnter(exctx, step, h);
+        for (SimpleTransition st : step.getTransitList()) {
+            for (TransitionTarget tt : st.getTargets()) {
+                if (tt instanceof History) {
+                    addDescendantStatesToEnter(exctx, step, tt);
+                }
+            }
         }
         for (SimpleTransition st : step.getTransitList()) {
             TransitionalState ancestor = st.getTransitionDomain();
@@ -538,6 +593,9 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      * @param state the state to check with
      */
     public boolean containsDescendant(Set<EnterableState> states, EnterableState state) {
+        if (states instanceof EnterableStateSet) {
+            return ((EnterableStateSet)states).intersects(state.getOrdinal()+1, state.getLastDescendantOrdinal());
+        }
         for (EnterableState es : states) {
             if (es.isDescendantOf(state)) {
                 return true;
@@ -550,20 +608,51 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      * This method corresponds to the Algorithm for SCXML processing selectTransitions() as well as the
      * selectEventlessTransitions() procedure, depending on the event (or null) in the provided step
      * <p>
+     * Only the candidate transitions from the state machine its {@link TransitionIndex} which possibly can match the
+     * event are evaluated.
+     * </p>
      * @param exctx The execution context for this step
      * @param step The step
      */
     public void selectTransitions(final SCXMLExecutionContext exctx, final Step step) throws ModelException {
         step.getTransitList().clear();
-        ArrayList<Transition> enabledTransitions = new ArrayList<Transition>();
+        List<Transition> enabledTransitions = step.getEnabledTransitions();
+        enabledTransitions.clear();
 
-        ArrayList<EnterableState> configuration = new ArrayList<EnterableState>(exctx.getScInstance().getStateConfiguration().getActiveStates());
-        Collections.sort(configuration,DocumentOrder.documentOrderComparator);
+        EnterableStateSet configuration = exctx.getScInstance().getStateConfiguration().getActiveStates();
 
-        HashSet<EnterableState> visited = new HashSet<EnterableState>();
+        EnterableStateSet visited = step.getVisitedStates();
+        visited.clear();
 
         String eventName = step.getEvent() != null ? step.getEvent().getName() : null;
-        for (EnterableState es : configuration) {
+        TransitionIndex transitionIndex = exctx.getStateMachine().getTransitionIndex();
+        int[] eventTokens = transitionIndex != null ? transitionIndex.getEventTokens(eventName) : null;
+        ForkJoinPool regionPool = exctx.getParallelRegionPool();
+        // iterate in document order
+        for (int i = configuration.nextOrdinal(0); i > -1; i = configuration.nextOrdinal(i+1)) {
+            EnterableState es = configuration.get(i);
+            if (regionPool != null && es instanceof Parallel && ((Parallel)es).hasIndependentRegions()
+                    && !matchTransitionOverridden && !matchTransitionTokensOverridden) {
+                List<RegionSelection> selections = RegionSelection.select(this, exctx, (Parallel)es, configuration,
+                        eventName, eventTokens, transitionIndex, regionPool);
+                if (selections != null) {
+                    // merge in document order, continuing the search from the parallel itself where needed
+                    for (RegionSelection selection : selections) {
+                        for (int j = 0; j < selection.getNumberOfStates(); j++) {
+                            selection.reportErrors(j);
+                            if (selection.getTransition(j) != null) {
+                                enabledTransitions.add(selection.getTransition(j));
+                            }
+                            else if (selection.isEscaped(j) && visited.add(es)) {
+                                selectTransition(exctx, (Parallel)es, visited, eventName, eventTokens,
+                                        transitionIndex, enabledTransitions);
+                            }
+                        }
+                    }
+                    i = es.getLastDescendantOrdinal();
+                    continue;
+                }
+            }
             if (es.isAtomicState()) {
                 if (es instanceof Final) {
                     // Final states don't have transitions, skip to parent
@@ -576,24 +665,49 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                         es = es.getParent();
                     }
                 }
-                TransitionalState state = (TransitionalState)es;
-                TransitionalState current = state;
-                int ancestorIndex = state.getNumberOfAncestors()-1;
-                boolean transitionMatched = false;
-                do {
-                    for (Transition transition : current.getTransitionsList()) {
-                        if (transitionMatched = matchTransition(exctx, transition, eventName)) {
-                            enabledTransitions.add(transition);
-                            break;
-                        }
-                    }
-                    current = (!transitionMatched && ancestorIndex > -1) ? state.getAncestor(ancestorIndex--) : null;
-                } while (!transitionMatched && current != null && visited.add(current));
+                selectTransition(exctx, (TransitionalState)es, visited, eventName, eventTokens, transitionIndex,
+                        enabledTransitions);
             }
         }
         removeConflictingTransitions(exctx, step, enabledTransitions);
     }
 
+    /**
+     * Searches the first enabled transition of a state, or else of its nearest ancestor having one, stopping at an
+     * already visited ancestor.
+     *
+     * @param exctx The execution context for this step
+     * @param state The state to start the search from
+     * @param visited The states already visited
+     * @param eventName The event name, or null for event-less transitions
+     * @param eventTokens The token symbols of the event name for the transition index, or null
+     * @param transitionIndex The transition index of the state machine, may be null
+     * @param enabledTransitions The list of enabled transitions to add the found transition to
+     */
+    private void selectTransition(final SCXMLExecutionContext exctx, final TransitionalState state,
+                                  final EnterableStateSet visited, final String eventName, final int[] eventTokens,
+                                  final TransitionIndex transitionIndex, final List<Transition> enabledTransitions) {
+        TransitionalState current = state;
+        int ancestorIndex = state.getNumberOfAncestors()-1;
+        boolean transitionMatched = false;
+        do {
+            List<Transition> candidates = transitionIndex != null
+                    ? transitionIndex.getCandidateTransitions(current, eventTokens)
+                    : current.getTransitionsList();
+            for (int j = 0, size = candidates.size(); j < size; j++) {
+                Transition transition = candidates.get(j);
+                transitionMatched = matchTransitionOverridden
+                        ? matchTransition(exctx, transition, eventName)
+                        : matchTransition(exctx, transition, eventName, eventTokens);
+                if (transitionMatched) {
+                    enabledTransitions.add(transition);
+                    break;
+                }
+            }
+            current = (!transitionMatched && ancestorIndex > -1) ? state.getAncestor(ancestorIndex--) : null;
+        } while (!transitionMatched && current != null && visited.add(current));
+    }
+
     /**
      * This method corresponds to the Algorithm for SCXML processing removeConflictingTransitions() procedure.
      *
@@ -603,62 +717,75 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public void removeConflictingTransitions(final SCXMLExecutionContext exctx, final Step step,
                                              final List<Transition> enabledTransitions) {
-        LinkedHashSet<Transition> filteredTransitions = new LinkedHashSet<Transition>();
-        LinkedHashSet<Transition> preemptedTransitions = new LinkedHashSet<Transition>();
-        Map<Transition, Set<EnterableState>> exitSets = new HashMap<Transition, Set<EnterableState>>();
-
-        Set<EnterableState> configuration = exctx.getScInstance().getStateConfiguration().getActiveStates();
+        List<SimpleTransition> filteredTransitions = step.getTransitList();
+        if (enabledTransitions.size() < 2) {
+            // no conflicts possible
+            for (int i = 0; i < enabledTransitions.size(); i++) {
+                filteredTransitions.add(enabledTransitions.get(i));
+            }
+            return;
+        }
+        EnterableStateSet configuration = exctx.getScInstance().getStateConfiguration().getActiveStates();
         Collections.sort(enabledTransitions, DocumentOrder.documentOrderComparator);
 
-        for (Transition t1 : enabledTransitions) {
+        for (int i = 0; i < enabledTransitions.size(); i++) {
+            Transition t1 = enabledTransitions.get(i);
             boolean t1Preempted = false;
-            Set<EnterableState> t1ExitSet = exitSets.get(t1);
-            for (Transition t2 : filteredTransitions) {
-                if (t1ExitSet == null) {
-                    t1ExitSet = new HashSet<EnterableState>();
-                    computeExitSet(t1, t1ExitSet, configuration);
-                    exitSets.put(t1, t1ExitSet);
-                }
-                Set<EnterableState> t2ExitSet = exitSets.get(t2);
-                if (t2ExitSet == null) {
-                    t2ExitSet = new HashSet<EnterableState>();
-                    computeExitSet(t2, t2ExitSet, configuration);
-                    exitSets.put(t2, t2ExitSet);
+            for (int j = 0; j < filteredTransitions.size(); j++) {
+                SimpleTransition t2 = filteredTransitions.get(j);
+                if (hasIntersectingExitSets(t1, t2, configuration) && !t1.getParent().isDescendantOf(t2.getParent())) {
+                    t1Preempted = true;
+                    break;
                 }
-                Set<EnterableState> smaller = t1ExitSet.size() < t2ExitSet.size() ? t1ExitSet : t2ExitSet;
-                Set<EnterableState> larger = smaller == t1ExitSet ? t2ExitSet : t1ExitSet;
-                boolean hasIntersection = false;
-                for (EnterableState s1 : smaller) {
-                    hasIntersection = larger.contains(s1);
-                    if (hasIntersection) {
-                        break;
-                    }
-                }
-                if (hasIntersection) {
-                    if (t1.getParent().isDescendantOf(t2.getParent())) {
-                        preemptedTransitions.add(t2);
-                    }
-                    else {
-                        t1Preempted = true;
-                        break;
-                    }
-                }
-            }
-            if (t1Preempted) {
-                exitSets.remove(t1);
             }
-            else {
-                for (Transition preempted : preemptedTransitions) {
-                    filteredTransitions.remove(preempted);
-                    exitSets.remove(preempted);
+            if (!t1Preempted) {
+                // t1 preempts every (other) filtered transition it conflicts with
+                for (int j = filteredTransitions.size()-1; j > -1; j--) {
+                    if (hasIntersectingExitSets(t1, filteredTransitions.get(j), configuration)) {
+                        filteredTransitions.remove(j);
+                    }
                 }
                 filteredTransitions.add(t1);
             }
         }
-        step.getTransitList().addAll(filteredTransitions);
     }
 
     /**
+     * Checks if the exit sets of two transitions intersect, given the current active states of the state machine.
+     * <p>
+     * The exit set of a transition with targets consists of the active descendants of its (precomputed) transition
+     * domain, or all active states if its domain is the SCXML document itself. As the descendants of a state form a
+     * consecutive range of state ordinals, this is checked as the intersection of the active states with both ranges,
+     * without computing the actual exit sets.
+     * </p>
+     *
+     * @param t1 The first transition
+     * @param t2 The second transition
+     * @param activeStates The current active states of the state machine
+     * @return Returns true if the exit sets of both transitions have any state in common
+     */
+    public boolean hasIntersectingExitSets(final SimpleTransition t1, final SimpleTransition t2,
+                                           final EnterableStateSet activeStates) {
+        if (t1.getTargets().isEmpty() || t2.getTargets().isEmpty()) {
+            // targetless transitions don't exit any state
+            return false;
+        }
+        TransitionalState d1 = t1.getTransitionDomain();
+        TransitionalState d2 = t2.getTransitionDomain();
+        int from = Math.max(d1 != null ? d1.getOrdinal()+1 : 0, d2 != null ? d2.getOrdinal()+1 : 0);
+        int to = Math.min(d1 != null ? d1.getLastDescendantOrdinal() : Integer.MAX_VALUE,
+                d2 != null ? d2.getLastDescendantOrdinal() : Integer.MAX_VALUE);
+        return from <= to && activeStates.intersects(from, to);
+    }
+
+    /**
+     * Matches a transition, delegating to {@link #matchTransition(SCXMLExecutionContext, Transition, String, int[])}.
+     * <p>
+     * Note: the transition selection matches transitions through the event token based variant, unless this method
+     * is overridden by a subclass. Overriding either variant also disables the concurrent transition selection for
+     * parallel regions.
+     * </p>
+     *
      * @param exctx The execution context for this step
      * @param transition The transition
      * @param eventName The (optional) event name to match against
@@ -666,14 +793,53 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      *         is provided, <em>AND</em> its (optional) condition guard evaluates to true.
      */
     public boolean matchTransition(final SCXMLExecutionContext exctx, final Transition transition, final String eventName) {
+        TransitionIndex transitionIndex = exctx.getStateMachine().getTransitionIndex();
+        return matchTransition(exctx, transition, eventName,
+                transitionIndex != null ? transitionIndex.getEventTokens(eventName) : null);
+    }
+
+    /**
+     * @param exctx The execution context for this step
+     * @param transition The transition
+     * @param eventName The (optional) event name to match against
+     * @param eventTokens The token symbols of the eventName for the {@link TransitionIndex} of the state machine, or
+     *                    null for matching the eventName itself
+     * @return Returns true if the transition matches against the provided eventName, or is event-less when no eventName
+     *         is provided, <em>AND</em> its (optional) condition guard evaluates to true.
+     */
+    public boolean matchTransition(final SCXMLExecutionContext exctx, final Transition transition, final String eventName,
+                                   final int[] eventTokens) {
+        return matchTransition(exctx, transition, eventName, eventTokens, null);
+    }
+
+    /**
+     * @param exctx The execution context for this step
+     * @param transition The transition
+     * @param eventName The (optional) event name to match against
+     * @param eventTokens The token symbols of the eventName, or null
+     * @param regionSelection The concurrent region selection performing the match, which records guard evaluation
+     *                        errors instead of reporting them and doesn't memoize guard results, or null
+     * @return Returns true if the transition matches
+     * @see #matchTransition(SCXMLExecutionContext, Transition, String, int[])
+     */
+    boolean matchTransition(final SCXMLExecutionContext exctx, final Transition transition, final String eventName,
+                            final int[] eventTokens, final RegionSelection regionSelection) {
         if (eventName != null) {
             if (!(transition.isNoEventsTransition() || transition.isAllEventsTransition())) {
                 boolean eventMatch = false;
-                for (String event : transition.getEvents()) {
-                    if (eventName.startsWith(event)) {
-                        if (eventName.length() == event.length() || eventName.charAt(event.length())=='.')
+                int[][] descriptorsTokens = transition.getEventTokens();
+                if (eventTokens != null && descriptorsTokens != null) {
+                    for (int i = 0; i < descriptorsTokens.length && !eventMatch; i++) {
+                        eventMatch = TransitionIndex.matches(descriptorsTokens[i], eventTokens);
+                    }
+                }
+                else {
+                    for (String event : transition.getEvents()) {
+                        if (eventName.startsWith(event) && (eventName.length() == event.length()
+                                || eventName.charAt(event.length())=='.')) {
                             eventMatch = true;
-                        break;
+                            break;
+                        }
                     }
                 }
                 if (!eventMatch) {
@@ -688,8 +854,24 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
             return false;
         }
         if (transition.getCond() != null) {
+            Guard guard = transition.getGuard();
+            if (guard != null && guard.isStatic()
+                    && guard.getDatamodel().equals(exctx.getEvaluator().getSupportedDatamodel())) {
+                // constant or In() only guard: no need to invoke the evaluator
+                return guard.evaluate(exctx.getScInstance().getStateConfiguration().getActiveStates());
+            }
             Boolean result = Boolean.FALSE;
             Context context = exctx.getScInstance().getContext(transition.getParent());
+            long version = -1;
+            if (guard != null && guard.getKind() == Guard.Kind.DATA && context instanceof SimpleContext
+                    && guard.getDatamodel().equals(exctx.getEvaluator().getSupportedDatamodel())) {
+                // datamodel only guard: reuse its result as long as the datamodel is unchanged
+                version = ((SimpleContext)context).getVersion();
+                Boolean memoized = exctx.getGuardResult(transition, version);
+                if (memoized != null) {
+                    return memoized;
+                }
+            }
             context.setLocal(Context.NAMESPACES_KEY, transition.getNamespaces());
             try {
                 if ((result = exctx.getEvaluator().evalCond(context, transition.getCond())) == null) {
@@ -699,11 +881,17 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                                 + transition.getCond() + "'");
                     }
                 }
+                if (version > -1 && regionSelection == null) {
+                    exctx.setGuardResult(transition, version, result);
+                }
             }
             catch (SCXMLExpressionException e) {
-                exctx.getInternalIOProcessor().addEvent(new TriggerEvent(TriggerEvent.ERROR_EXECUTION, TriggerEvent.ERROR_EVENT));
-                exctx.getErrorReporter().onError(ErrorConstants.EXPRESSION_ERROR, "Treating as false due to error: "
-                        + e.getMessage(), transition);
+                if (regionSelection != null) {
+                    regionSelection.addError(transition, e);
+                }
+                else {
+                    reportGuardError(exctx, transition, e);
+                }
             }
             finally {
                 context.setLocal(Context.NAMESPACES_KEY, null);
@@ -713,6 +901,20 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         return true;
     }
 
+    /**
+     * Reports the failed evaluation of a transition guard, which is treated as false.
+     *
+     * @param exctx The execution context for this step
+     * @param transition The transition
+     * @param e The guard evaluation error
+     */
+    void reportGuardError(final SCXMLExecutionContext exctx, final Transition transition,
+                          final SCXMLExpressionException e) {
+        exctx.getInternalIOProcessor().addEvent(new TriggerEvent(TriggerEvent.ERROR_EXECUTION, TriggerEvent.ERROR_EVENT));
+        exctx.getErrorReporter().onError(ErrorConstants.EXPRESSION_ERROR, "Treating as false due to error: "
+                + e.getMessage(), transition);
+    }
+
     /**
      * This method corresponds to the Algorithm for SCXML processing isFinalState() function.
      *
@@ -774,60 +976,102 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public boolean isLegalConfiguration(final Set<EnterableState> states, final ErrorReporter errRep) {
         /*
-         * For every active state we add 1 to the count of its parent. Each
-         * Parallel should reach count equal to the number of its children and
-         * contribute by 1 to its parent. Each State should reach count exactly
-         * 1. SCXML elemnt (top) should reach count exactly 1. We essentially
-         * summarize up the hierarchy tree starting with a given set of
-         * states = active configuration.
+         * Add all ancestors of the states, after which every active parent should have active children
+         * according to its type: each Parallel should have all its children active, each State exactly 1,
+         * and the SCXML element (top) should have exactly 1 active child.
          */
+        EnterableStateSet activeStates = new EnterableStateSet(states);
+        for (int i = activeStates.lastOrdinal(); i > -1; i = activeStates.previousOrdinal(i-1)) {
+            // ancestors have lower ordinals, and thus will be visited themselves later
+            EnterableState parent = activeStates.get(i).getParent();
+            if (parent != null) {
+                activeStates.add(parent);
+            }
+        }
+        return isLegalActiveConfiguration(activeStates, errRep);
+    }
+
+    /**
+     * Checks whether a given set of active states, which must include all ancestors of each of its states, is a legal
+     * Harel State Table configuration (with the respect to the definition of the OR and AND states).
+     * <p>
+     * Only active states which have at least one active child are validated, the same as with
+     * {@link #isLegalConfiguration(Set, ErrorReporter)}.
+     * </p>
+     *
+     * @param activeStates a set of states including all their ancestors
+     * @param errRep ErrorReporter to report detailed error info if needed
+     * @return true if a given state configuration is legal, false otherwise
+     */
+    public boolean isLegalActiveConfiguration(final EnterableStateSet activeStates, final ErrorReporter errRep) {
         boolean legalConfig = true; // let's be optimists
-        Map<EnterableState, Set<EnterableState>> counts = new HashMap<EnterableState, Set<EnterableState>>();
-        Set<EnterableState> scxmlCount = new HashSet<EnterableState>();
-        for (EnterableState es : states) {
-            EnterableState parent;
-            while ((parent = es.getParent()) != null) {
-                Set<EnterableState> cnt = counts.get(parent);
-                if (cnt == null) {
-                    cnt = new HashSet<EnterableState>();
-                    counts.put(parent, cnt);
-                }
-                cnt.add(es);
-                es = parent;
+        int topLevelCount = 0;
+        for (int i = activeStates.nextOrdinal(0); i > -1; i = activeStates.nextOrdinal(i+1)) {
+            if (activeStates.get(i).getParent() == null) {
+                topLevelCount++;
             }
-            //top-level contribution
-            scxmlCount.add(es);
         }
-        if (scxmlCount.size() > 1) {
+        if (topLevelCount > 1) {
+            Set<EnterableState> scxmlCount = new HashSet<EnterableState>();
+            for (EnterableState es : activeStates) {
+                if (es.getParent() == null) {
+                    scxmlCount.add(es);
+                }
+            }
             errRep.onError(ErrorConstants.ILLEGAL_CONFIG, "Multiple top-level OR states active!", scxmlCount);
             legalConfig = false;
         }
         else {
             //Validate child counts:
-            for (Map.Entry<EnterableState, Set<EnterableState>> entry : counts.entrySet()) {
-                EnterableState es = entry.getKey();
-                Set<EnterableState> count = entry.getValue();
+            for (int i = activeStates.nextOrdinal(0); i > -1; i = activeStates.nextOrdinal(i+1)) {
+                EnterableState es = activeStates.get(i);
+                if (!(es instanceof TransitionalState)) {
+                    continue;
+                }
+                List<EnterableState> children = ((TransitionalState)es).getChildren();
+                int count = 0;
+                for (EnterableState child : children) {
+                    if (activeStates.containsOrdinal(child.getOrdinal())) {
+                        count++;
+                    }
+                }
+                if (count == 0) {
+                    continue;
+                }
                 if (es instanceof Parallel) {
-                    Parallel p = (Parallel) es;
-                    if (count.size() < p.getChildren().size()) {
-                        errRep.onError(ErrorConstants.ILLEGAL_CONFIG, "Not all AND states active for parallel " + p.getId(), entry);
+                    if (count < children.size()) {
+                        errRep.onError(ErrorConstants.ILLEGAL_CONFIG, "Not all AND states active for parallel "
+                                + es.getId(), activeChildrenEntry(es, activeStates));
                         legalConfig = false;
                     }
                 } else {
-                    if (count.size() > 1) {
-                        errRep.onError(ErrorConstants.ILLEGAL_CONFIG, "Multiple OR states active for state " + es.getId(), entry);
+                    if (count > 1) {
+                        errRep.onError(ErrorConstants.ILLEGAL_CONFIG, "Multiple OR states active for state "
+                                + es.getId(), activeChildrenEntry(es, activeStates));
                         legalConfig = false;
                     }
                 }
-                count.clear(); //cleanup
             }
         }
-        //cleanup
-        scxmlCount.clear();
-        counts.clear();
         return legalConfig;
     }
 
+    /**
+     * @param es a TransitionalState
+     * @param activeStates the active states
+     * @return Returns the error context for an illegal configuration: the state and its set of active children
+     */
+    private Map.Entry<EnterableState, Set<EnterableState>> activeChildrenEntry(final EnterableState es,
+                                                                         final EnterableStateSet activeStates) {
+        Set<EnterableState> activeChildren = new HashSet<EnterableState>();
+        for (EnterableState child : ((TransitionalState)es).getChildren()) {
+            if (activeStates.contains(child)) {
+                activeChildren.add(child);
+            }
+        }
+        return new AbstractMap.SimpleImmutableEntry<EnterableState, Set<EnterableState>>(es, activeChildren);
+    }
+
     /**
      * Stores the provided event in the system context
      * <p>
@@ -889,10 +1133,10 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         if (step.getExitSet().isEmpty()) {
             return;
         }
-        ArrayList<EnterableState> exitList = new ArrayList<EnterableState>(step.getExitSet());
-        Collections.sort(exitList, DocumentOrder.reverseDocumentOrderComparator);
-
-        for (EnterableState es : exitList) {
+        EnterableStateSet exitSet = step.getExitSet();
+        // iterate in reverse document order
+        for (int i = exitSet.lastOrdinal(); i > -1; i = exitSet.previousOrdinal(i-1)) {
+            EnterableState es = exitSet.get(i);
 
             if (es instanceof TransitionalState && ((TransitionalState)es).hasHistory()) {
                 // persist the new history configurations for this state to exit
@@ -911,6 +1155,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
             }
             exctx.getNotificationRegistry().fireOnExit(es, es);
             exctx.getNotificationRegistry().fireOnExit(exctx.getStateMachine(), es);
+            exctx.recordExit(es);
 
             if (es instanceof TransitionalState && !statesToInvoke.remove(es)) {
                 // check if invokers are active in this state
@@ -945,7 +1190,12 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
     public void executeContent(SCXMLExecutionContext exctx, Executable exec) throws ModelException {
         try {
             for (Action action : exec.getActions()) {
-                action.execute(exctx.getActionExecutionContext());
+                try {
+                    action.execute(exctx.getActionExecutionContext());
+                } finally {
+                    // any executable content may have modified the datamodel in place
+                    exctx.resetGuardResults();
+                }
             }
         } catch (SCXMLExpressionException e) {
             exctx.getInternalIOProcessor().addEvent(new TriggerEvent(TriggerEvent.ERROR_EXECUTION, TriggerEvent.ERROR_EVENT));
@@ -953,6 +1203,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         }
         if (exec instanceof Transition) {
             Transition t = (Transition)exec;
+            exctx.recordTransition(t);
             if (t.getTargets().isEmpty()) {
                 notifyOnTransition(exctx, t, t.getParent());
             }
@@ -973,6 +1224,9 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public void notifyOnTransition(final SCXMLExecutionContext exctx, final Transition t,
                                       final TransitionTarget target) {
+        if (!exctx.getNotificationRegistry().hasListeners()) {
+            return;
+        }
         EventVariable event = (EventVariable)exctx.getScInstance().getSystemContext().getVars().get(SCXMLSystemContext.EVENT_KEY);
         String eventName = event != null ? event.getName() : null;
         exctx.getNotificationRegistry().fireOnTransition(t, t.getParent(), target, t, eventName);
@@ -995,9 +1249,10 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         if (step.getEntrySet().isEmpty()) {
             return;
         }
-        ArrayList<EnterableState> entryList = new ArrayList<EnterableState>(step.getEntrySet());
-        Collections.sort(entryList, DocumentOrder.documentOrderComparator);
-        for (EnterableState es : entryList) {
+        EnterableStateSet entrySet = step.getEntrySet();
+        // iterate in document order
+        for (int i = entrySet.nextOrdinal(0); i > -1; i = entrySet.nextOrdinal(i+1)) {
+            EnterableState es = entrySet.get(i);
             exctx.getScInstance().getStateConfiguration().enterState(es);
             if (es instanceof TransitionalState && !((TransitionalState)es).getInvokes().isEmpty()) {
                 statesToInvoke.add((TransitionalState) es);
@@ -1013,6 +1268,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
             }
             exctx.getNotificationRegistry().fireOnEntry(es, es);
             exctx.getNotificationRegistry().fireOnEntry(exctx.getStateMachine(), es);
+            exctx.recordEntry(es);
 
             if (es instanceof State && step.getDefaultEntrySet().contains(es) && ((State)es).getInitial() != null) {
                 executeContent(exctx, ((State)es).getInitial().getTransition());
@@ -1056,7 +1312,11 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                 Context ctx = aexctx.getContext(invoke.getParentEnterableState());
                 String exctxKey = invoke.getCurrentSCXMLExecutionContextKey();
                 ctx.setLocal(exctxKey, exctx);
-                invoke.execute(aexctx);
+                try {
+                    invoke.execute(aexctx);
+                } finally {
+                    exctx.resetGuardResults();
+                }
                 ctx.setLocal(exctxKey, null);
             }
         }
@@ -18,20 +18,25 @@ package org.apache.commons.scxml2.semantics;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.scxml2.TriggerEvent;
 import org.apache.commons.scxml2.model.EnterableState;
+import org.apache.commons.scxml2.model.EnterableStateSet;
 import org.apache.commons.scxml2.model.History;
 import org.apache.commons.scxml2.model.SimpleTransition;
+import org.apache.commons.scxml2.model.Transition;
 import org.apache.commons.scxml2.model.TransitionalState;
 
 /**
  * A logical unit of progression in the execution of a SCXML model.
- *
+ * <p>
+ * A Step can be {@link #reset(TriggerEvent) reset} and reused for processing subsequent (micro) steps, which is how
+ * the {@link org.apache.commons.scxml2.SCXMLExecutionContext#getStep(TriggerEvent) SCXMLExecutionContext} avoids
+ * creating new Step instances for every event.
+ * </p>
  */
 public class Step {
 
@@ -43,17 +48,22 @@ public class Step {
     /**
      * The set of states that were exited during this step.
      */
-    private Set<EnterableState> exitSet;
+    private EnterableStateSet exitSet;
 
     /**
      * The set of states that were entered during this step.
      */
-    private Set<EnterableState> entrySet;
+    private EnterableStateSet entrySet;
 
     /**
      * The set of states that were entered during this step by default
      */
-    private Set<EnterableState> defaultEntrySet;
+    private EnterableStateSet defaultEntrySet;
+
+    /**
+     * The set of states which will be active after this step, used for validating the resulting configuration
+     */
+    private EnterableStateSet resultStates;
 
     /**
      * The map of default History transitions to be executed as result of entering states in this step.
@@ -70,17 +80,42 @@ public class Step {
      */
     private List<SimpleTransition> transitList;
 
+    /**
+     * Reusable buffer for the enabled Transitions while selecting the transitions for this step.
+     */
+    private List<Transition> enabledTransitions;
+
+    /**
+     * Reusable buffer for the states visited while selecting the transitions for this step.
+     */
+    private EnterableStateSet visitedStates;
+
     /**
      * @param event The event received in this unit of progression
      */
     public Step(TriggerEvent event) {
         this.event = event;
-        this.exitSet = new HashSet<EnterableState>();
-        this.entrySet = new HashSet<EnterableState>();
-        this.defaultEntrySet = new HashSet<EnterableState>();
+        this.exitSet = new EnterableStateSet();
+        this.entrySet = new EnterableStateSet();
+        this.defaultEntrySet = new EnterableStateSet();
+        this.resultStates = new EnterableStateSet();
         this.defaultHistoryTransitions = new HashMap<TransitionalState, SimpleTransition>();
         this.newHistoryConfigurations = new HashMap<History, Set<EnterableState>>();
         this.transitList = new ArrayList<SimpleTransition>();
+        this.enabledTransitions = new ArrayList<Transition>();
+        this.visitedStates = new EnterableStateSet();
+    }
+
+    /**
+     * Reset this step for (re)use with another event, clearing its transitions and intermediate state
+     * @param event The event received in this unit of progression
+     */
+    public void reset(TriggerEvent event) {
+        this.event = event;
+        transitList.clear();
+        enabledTransitions.clear();
+        visitedStates.clear();
+        clearIntermediateState();
     }
 
     /**
@@ -90,6 +125,7 @@ public class Step {
         exitSet.clear();
         entrySet.clear();
         defaultEntrySet.clear();
+        resultStates.clear();
         defaultHistoryTransitions.clear();
         newHistoryConfigurations.clear();
     }
@@ -97,17 +133,24 @@ public class Step {
     /**
      * @return Returns the entrySet.
      */
-    public Set<EnterableState> getEntrySet() {
+    public EnterableStateSet getEntrySet() {
         return entrySet;
     }
 
     /**
      * @return Returns the defaultEntrySet.
      */
-    public Set<EnterableState> getDefaultEntrySet() {
+    public EnterableStateSet getDefaultEntrySet() {
         return defaultEntrySet;
     }
 
+    /**
+     * @return Returns the set of states which will be active after this step
+     */
+    public EnterableStateSet getResultStates() {
+        return resultStates;
+    }
+
     /**
      * @return Returns the map of default History transitions to be executed as result of entering states in this step
      */
@@ -125,7 +168,7 @@ public class Step {
     /**
      * @return Returns the exitSet.
      */
-    public Set<EnterableState> getExitSet() {
+    public EnterableStateSet getExitSet() {
         return exitSet;
     }
 
@@ -142,5 +185,19 @@ public class Step {
     public List<SimpleTransition> getTransitList() {
         return transitList;
     }
+
+    /**
+     * @return Returns the reusable buffer for the enabled Transitions while selecting the transitions for this step
+     */
+    public List<Transition> getEnabledTransitions() {
+        return enabledTransitions;
+    }
+
+    /**
+     * @return Returns the reusable buffer for the states visited while selecting the transitions for this step
+     */
+    public EnterableStateSet getVisitedStates() {
+        return visitedStates;
+    }
 }
 
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2;
+
+import java.io.StringReader;
+
+import org.apache.commons.scxml2.io.SCXMLReader;
+import org.apache.commons.scxml2.model.SCXML;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SCInstanceTest {
+
+    private static final String INLINE_DATA_CHART =
+            "<scxml xmlns=\"http://www.w3.org/2005/07/scxml\" version=\"1.0\" datamodel=\"xpath\" initial=\"s1\">\n" +
+            "  <datamodel><data id=\"d\"><x xmlns=\"\">1</x></data></datamodel>\n" +
+            "  <state id=\"s1\">\n" +
+            "    <transition event=\"set\" target=\"s2\">\n" +
+            "      <assign location=\"$d/x\" expr=\"'2'\"/>\n" +
+            "    </transition>\n" +
+            "  </state>\n" +
+            "  <state id=\"s2\"/>\n" +
+            "</scxml>";
+
+    @Test
+    public void testInlineDataNotSharedAcrossInstances() throws Exception {
+        SCXML document = SCXMLReader.read(new StringReader(INLINE_DATA_CHART));
+        SCXMLExecutor first = new SCXMLExecutor();
+        first.setStateMachine(document);
+        first.go();
+        SCXMLExecutor second = new SCXMLExecutor();
+        second.setStateMachine(document);
+        second.go();
+
+        first.triggerEvent(new TriggerEvent("set", TriggerEvent.SIGNAL_EVENT));
+        Assert.assertTrue(first.getStatus().isInState("s2"));
+        Assert.assertEquals("2", valueOf(first));
+        Assert.assertEquals("1", valueOf(second));
+
+        SCXMLExecutor third = new SCXMLExecutor();
+        third.setStateMachine(document);
+        third.go();
+        Assert.assertEquals("1", valueOf(third));
+    }
+
+    private static Object valueOf(final SCXMLExecutor executor) throws Exception {
+        return executor.getEvaluator().eval(executor.getGlobalContext(), "string($d/x)");
+    }
+}
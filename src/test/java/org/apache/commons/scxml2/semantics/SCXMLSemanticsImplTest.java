@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.semantics;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.scxml2.SCXMLExecutor;
+import org.apache.commons.scxml2.TriggerEvent;
+import org.apache.commons.scxml2.io.SCXMLReader;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class SCXMLSemanticsImplTest {
+
+    private static final String DATA_GUARD_CHART =
+            "<scxml xmlns=\"http://www.w3.org/2005/07/scxml\" version=\"1.0\" datamodel=\"jexl\" initial=\"s1\">\n" +
+            "  <datamodel><data id=\"counter\"/></datamodel>\n" +
+            "  <state id=\"s1\">\n" +
+            "    <transition event=\"go\" cond=\"counter.value > 0\" target=\"s2\"/>\n" +
+            "  </state>\n" +
+            "  <state id=\"s2\"/>\n" +
+            "</scxml>";
+
+    private static final String TOGGLE_CHART =
+            "<scxml xmlns=\"http://www.w3.org/2005/07/scxml\" version=\"1.0\" datamodel=\"null\" initial=\"p\">\n" +
+            "  <parallel id=\"p\">\n" +
+            "    <state id=\"r1\">\n" +
+            "      <state id=\"a1\"><transition event=\"e\" target=\"b1\"/></state>\n" +
+            "      <state id=\"b1\"><transition event=\"e\" target=\"a1\"/></state>\n" +
+            "    </state>\n" +
+            "    <state id=\"r2\">\n" +
+            "      <state id=\"a2\"><transition event=\"e\" target=\"b2\"/></state>\n" +
+            "      <state id=\"b2\"><transition event=\"e\" target=\"a2\"/></state>\n" +
+            "    </state>\n" +
+            "  </parallel>\n" +
+            "</scxml>";
+
+    /** The maximum number of bytes allocated per steady state step, which used to be more than 3 KB */
+    private static final long MAX_BYTES_PER_STEP = 1024L;
+
+    @Test
+    public void testSteadyStateStepAllocation() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)threadMXBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported()
+                && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        SCXMLExecutor exec = new SCXMLExecutor();
+        exec.setStateMachine(SCXMLReader.read(new StringReader(TOGGLE_CHART)));
+        exec.go();
+        TriggerEvent event = new TriggerEvent("e", TriggerEvent.SIGNAL_EVENT);
+        int steps = 20000;
+        for (int i = 0; i < steps; i++) {
+            exec.triggerEvent(event);
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < steps; i++) {
+            exec.triggerEvent(event);
+        }
+        long bytesPerStep = (allocationBean.getThreadAllocatedBytes(threadId) - allocated) / steps;
+        Assert.assertTrue("allocated " + bytesPerStep + " bytes per step", bytesPerStep <= MAX_BYTES_PER_STEP);
+        Assert.assertTrue(exec.getStatus().isInState("a1"));
+    }
+
+    @Test
+    public void testDataGuardReevaluatedAfterHostChange() throws Exception {
+        SCXMLExecutor exec = new SCXMLExecutor();
+        exec.setStateMachine(SCXMLReader.read(new StringReader(DATA_GUARD_CHART)));
+        exec.go();
+        Map<String, Object> counter = new HashMap<String, Object>();
+        counter.put("value", 0);
+        exec.getGlobalContext().set("counter", counter);
+
+        exec.triggerEvent(new TriggerEvent("go", TriggerEvent.SIGNAL_EVENT));
+        Assert.assertTrue(exec.getStatus().isInState("s1"));
+
+        // modified in place by the host, without changing the datamodel version
+        counter.put("value", 1);
+        exec.triggerEvent(new TriggerEvent("go", TriggerEvent.SIGNAL_EVENT));
+        Assert.assertTrue(exec.getStatus().isInState("s2"));
+    }
+}
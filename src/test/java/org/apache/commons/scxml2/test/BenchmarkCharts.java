@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Generator of synthetic SCXML documents of configurable size and shape, used by {@link StandaloneBenchmark}.
+ *
+ * <p>A generated document consists of a top level parallel state with <code>fanOut</code> regions (or a single
+ * compound state if <code>fanOut</code> is 1). Each region is a tree of compound states of the specified
+ * <code>depth</code>, in which each compound state has <code>breadth</code> children. Every atomic state has a
+ * guarded transition on the event {@link #EVENT} to the next atomic state within the same region (cycling back to the
+ * first), with an <code>In()</code> predicate as guard condition, so every event takes one transition per region.</p>
+ *
+ * <p>Except for the null datamodel, the document also declares one top level data element {@link #DATA_ID}.</p>
+ *
+ * <p>The same document can also be written as a main document including each region from a file of its own, through
+ * the <code>src</code> attribute of the region states.</p>
+ */
+public final class BenchmarkCharts {
+
+    /**
+     * The event name of the generated transitions
+     */
+    public static final String EVENT = "next";
+
+    /**
+     * The id of the data element declared in the generated documents (except for the null datamodel)
+     */
+    public static final String DATA_ID = "counter";
+
+    /**
+     * Generate a SCXML document.
+     *
+     * @param datamodel The datamodel of the document, or "null" for the minimal datamodel
+     * @param depth The depth of the compound state tree of each region (at least 1)
+     * @param breadth The number of children of each compound state (at least 1)
+     * @param fanOut The number of parallel regions (at least 1)
+     * @return the SCXML document source
+     */
+    public static String generate(final String datamodel, final int depth, final int breadth, final int fanOut) {
+        if (depth < 1 || breadth < 1 || fanOut < 1) {
+            throw new IllegalArgumentException("depth, breadth and fanOut must be at least 1");
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("<scxml xmlns=\"http://www.w3.org/2005/07/scxml\" version=\"1.0\" datamodel=\"")
+                .append(datamodel).append("\" initial=\"main\">\n");
+        if (!"null".equals(datamodel)) {
+            sb.append("<datamodel><data id=\"").append(DATA_ID).append("\" expr=\"0\"/></datamodel>\n");
+        }
+        if (fanOut > 1) {
+            sb.append("<parallel id=\"main\">\n");
+            for (int r = 0; r < fanOut; r++) {
+                appendRegion(sb, datamodel, "r" + r, depth, breadth);
+            }
+            sb.append("</parallel>\n");
+        }
+        else {
+            appendRegion(sb, datamodel, "main", depth, breadth);
+        }
+        sb.append("</scxml>\n");
+        return sb.toString();
+    }
+
+    /**
+     * Write a SCXML document including each of its parallel regions from a separate file.
+     *
+     * @param directory The directory to write the main document and the included documents to
+     * @param datamodel The datamodel of the document, or "null" for the minimal datamodel
+     * @param depth The depth of the compound state tree of each region (at least 1)
+     * @param breadth The number of children of each compound state (at least 1)
+     * @param fanOut The number of parallel regions, and so of included documents (at least 2)
+     * @return the main document file
+     * @throws IOException if writing a document fails
+     */
+    public static File writeIncluding(final File directory, final String datamodel, final int depth,
+                                      final int breadth, final int fanOut) throws IOException {
+        if (depth < 1 || breadth < 1 || fanOut < 2) {
+            throw new IllegalArgumentException("depth and breadth must be at least 1, fanOut at least 2");
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("<scxml xmlns=\"http://www.w3.org/2005/07/scxml\" version=\"1.0\" datamodel=\"")
+                .append(datamodel).append("\" initial=\"main\">\n");
+        if (!"null".equals(datamodel)) {
+            sb.append("<datamodel><data id=\"").append(DATA_ID).append("\" expr=\"0\"/></datamodel>\n");
+        }
+        sb.append("<parallel id=\"main\">\n");
+        for (int r = 0; r < fanOut; r++) {
+            String regionId = "r" + r;
+            String fileName = "region" + r + ".xml";
+            // the region state of the included document is a fragment, so only its descendants are included
+            sb.append("<state id=\"").append(regionId).append("\" src=\"").append(fileName).append('#')
+                    .append(regionId).append("\"/>\n");
+            StringBuilder region = new StringBuilder();
+            region.append("<scxml xmlns=\"http://www.w3.org/2005/07/scxml\" version=\"1.0\" datamodel=\"")
+                    .append(datamodel).append("\" initial=\"").append(regionId).append("\">\n");
+            appendRegion(region, datamodel, regionId, depth, breadth);
+            region.append("</scxml>\n");
+            write(new File(directory, fileName), region);
+        }
+        sb.append("</parallel>\n");
+        sb.append("</scxml>\n");
+        File main = new File(directory, "main.xml");
+        write(main, sb);
+        return main;
+    }
+
+    private static void write(final File file, final CharSequence document) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.append(document);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param depth The depth of the compound state tree of each region
+     * @param breadth The number of children of each compound state
+     * @return the number of atomic states per region
+     */
+    public static int atomicStatesPerRegion(final int depth, final int breadth) {
+        int count = 1;
+        for (int i = 0; i < depth; i++) {
+            count *= breadth;
+        }
+        return count;
+    }
+
+    private static void appendRegion(final StringBuilder sb, final String datamodel, final String regionId,
+                                     final int depth, final int breadth) {
+        int leaves = atomicStatesPerRegion(depth, breadth);
+        sb.append("<state id=\"").append(regionId).append("\">\n");
+        appendChildren(sb, datamodel, regionId, 1, depth, breadth, 0, leaves);
+        sb.append("</state>\n");
+    }
+
+    private static int appendChildren(final StringBuilder sb, final String datamodel, final String regionId,
+                                      final int level, final int depth, final int breadth, int leaf,
+                                      final int leaves) {
+        for (int i = 0; i < breadth; i++) {
+            if (level == depth) {
+                String id = leafId(regionId, leaf);
+                String target = leafId(regionId, (leaf + 1) % leaves);
+                sb.append("<state id=\"").append(id).append("\"><transition event=\"").append(EVENT)
+                        .append("\" cond=\"").append(guard(datamodel, id)).append("\" target=\"").append(target)
+                        .append("\"/></state>\n");
+                leaf++;
+            }
+            else {
+                sb.append("<state id=\"").append(regionId).append("_l").append(level).append("_").append(leaf)
+                        .append("\">\n");
+                leaf = appendChildren(sb, datamodel, regionId, level + 1, depth, breadth, leaf, leaves);
+                sb.append("</state>\n");
+            }
+        }
+        return leaf;
+    }
+
+    private static String leafId(final String regionId, final int leaf) {
+        return regionId + "_a" + leaf;
+    }
+
+    private static String guard(final String datamodel, final String stateId) {
+        // the minimal datamodel only supports the In() predicate with an unquoted state id
+        return "null".equals(datamodel) ? "In(" + stateId + ")" : "In('" + stateId + "')";
+    }
+
+    /**
+     * Discourage instantiation since this is a utility class.
+     */
+    private BenchmarkCharts() {
+        super();
+    }
+}
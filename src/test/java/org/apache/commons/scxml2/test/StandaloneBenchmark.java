@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.scxml2.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.scxml2.Context;
+import org.apache.commons.scxml2.ErrorReporter;
+import org.apache.commons.scxml2.Evaluator;
+import org.apache.commons.scxml2.SCXMLExecutor;
+import org.apache.commons.scxml2.SCXMLExpressionException;
+import org.apache.commons.scxml2.SCXMLIOProcessor;
+import org.apache.commons.scxml2.TriggerEvent;
+import org.apache.commons.scxml2.env.SimpleDispatcher;
+import org.apache.commons.scxml2.env.TimerWheelDispatcher;
+import org.apache.commons.scxml2.env.javascript.JSEvaluator;
+import org.apache.commons.scxml2.io.SCXMLReader;
+import org.apache.commons.scxml2.model.SCXML;
+
+/**
+ * Standalone micro benchmark of the SCXML engine hot paths, useful for command-line tracking of performance
+ * regressions.
+ *
+ * <p>The benchmark uses documents generated by {@link BenchmarkCharts} and measures:</p>
+ * <ul>
+ *  <li><code>read</code>: parsing the document with {@link SCXMLReader}</li>
+ *  <li><code>readIncludes</code>: parsing a document including each of its {@link #INCLUDED_FILES} regions from a
+ *      separate file, and <code>readIncludes.parallel</code>: the same with an include pool</li>
+ *  <li><code>go</code>: starting a new executor for the (already parsed) document</li>
+ *  <li><code>triggerEvent.&lt;datamodel&gt;</code>: event processing throughput, for each datamodel</li>
+ *  <li><code>evalCond.&lt;datamodel&gt;</code>: guard condition evaluation, for each datamodel</li>
+ *  <li><code>evalAssign.&lt;datamodel&gt;</code>: assigning a data element, for each datamodel (except null)</li>
+ *  <li><code>triggerEvent.ecmascript.&lt;mode&gt;</code> and <code>evalCond.ecmascript.&lt;mode&gt;</code>: the
+ *      same for the ecmascript datamodel, with a {@link JSEvaluator} creating a new engine per evaluation
+ *      (<code>uncached</code>), and one reusing its engine and caching the compiled scripts (<code>cached</code>)</li>
+ *  <li><code>send.&lt;dispatcher&gt;</code>: scheduling and cancelling a delayed event</li>
+ * </ul>
+ * <p>A benchmark for a datamodel which is not available in the current runtime (like ecmascript without a
+ * Javascript engine) is reported as skipped. Errors reported by the executors while benchmarking (which are otherwise
+ * only logged) are counted and reported per benchmark, and fail the run once the results are written.</p>
+ *
+ * <p>The results are written as JSON, to the standard output or to the specified file.</p>
+ *
+ * <p>The benchmark is part of the test sources, so it is not packaged with the library. Run it with the test
+ * classpath, for instance after <code>mvn test-compile</code>.</p>
+ *
+ * <p>USAGE:</p>
+ * <p><code>java org.apache.commons.scxml2.test.StandaloneBenchmark
+ *          [depth [breadth [fanOut [iterations [outputFile]]]]]</code></p>
+ */
+public final class StandaloneBenchmark {
+
+    /**
+     * The datamodels to benchmark
+     */
+    private static final String[] DATAMODELS = {"jexl", "ecmascript", "groovy", "xpath", "null"};
+
+    /**
+     * The number of operations per measured iteration
+     */
+    private static final int OPS_PER_ITERATION = 1000;
+
+    /**
+     * The number of included files (and parallel regions) of the document read by the readIncludes benchmarks
+     */
+    private static final int INCLUDED_FILES = 16;
+
+    /**
+     * The number of operations per measured iteration of the readIncludes benchmarks, as each reads many files
+     */
+    private static final int INCLUDE_OPS_PER_ITERATION = 20;
+
+    /**
+     * A benchmarked operation
+     */
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Error reporter counting the errors reported by the executors of a benchmark
+     */
+    private static final class CountingErrorReporter implements ErrorReporter {
+
+        private int errors;
+        private String firstError;
+
+        public synchronized void onError(final String errCode, final String errDetail, final Object errCtx) {
+            if (errors++ == 0) {
+                firstError = errCode + ": " + errDetail;
+            }
+        }
+    }
+
+    /**
+     * The total number of errors reported by the executors
+     */
+    private static int totalErrors;
+
+    /**
+     * Launcher.
+     * @param args The optional arguments: depth (default 3), breadth (default 3), parallel fanOut (default 2),
+     *             number of measured iterations (default 10) and output file (default: standard output)
+     * @throws Exception if the benchmark fails
+     */
+    public static void main(final String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int breadth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int fanOut = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"depth\": ").append(depth).append(",\n  \"breadth\": ").append(breadth)
+                .append(",\n  \"fanOut\": ").append(fanOut).append(",\n  \"iterations\": ").append(iterations)
+                .append(",\n  \"opsPerIteration\": ").append(OPS_PER_ITERATION)
+                .append(",\n  \"results\": [");
+        boolean first = true;
+
+        final String jexlChart = BenchmarkCharts.generate("jexl", depth, breadth, fanOut);
+        final SCXML jexlDocument = read(jexlChart);
+        first = appendResult(json, first, "read", measure(iterations, new Operation() {
+            public void run() throws Exception {
+                read(jexlChart);
+            }
+        }), null);
+        File includeDirectory = File.createTempFile("scxml-benchmark", "");
+        if (!includeDirectory.delete() || !includeDirectory.mkdir()) {
+            throw new IllegalStateException("Cannot create directory " + includeDirectory);
+        }
+        final ForkJoinPool includePool = new ForkJoinPool();
+        try {
+            final File including = BenchmarkCharts.writeIncluding(includeDirectory, "jexl", depth, breadth,
+                    INCLUDED_FILES);
+            first = appendResult(json, first, "readIncludes", measure(iterations, INCLUDE_OPS_PER_ITERATION,
+                    new Operation() {
+                        public void run() throws Exception {
+                            SCXMLReader.read(including.toURI().toURL());
+                        }
+                    }), null);
+            first = appendResult(json, first, "readIncludes.parallel", measure(iterations, INCLUDE_OPS_PER_ITERATION,
+                    new Operation() {
+                        public void run() throws Exception {
+                            SCXMLReader.Configuration configuration = new SCXMLReader.Configuration();
+                            configuration.setIncludePool(includePool);
+                            SCXMLReader.read(including.toURI().toURL(), configuration);
+                        }
+                    }), null);
+        }
+        finally {
+            includePool.shutdown();
+            File[] files = includeDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            includeDirectory.delete();
+        }
+        final CountingErrorReporter goErrors = new CountingErrorReporter();
+        first = appendResult(json, first, "go", measure(iterations, new Operation() {
+            public void run() throws Exception {
+                SCXMLExecutor executor = new SCXMLExecutor(null, null, goErrors);
+                executor.setStateMachine(jexlDocument);
+                executor.go();
+            }
+        }), goErrors);
+
+        for (String datamodel : DATAMODELS) {
+            final SCXML document = read(BenchmarkCharts.generate(datamodel, depth, breadth, fanOut));
+            final CountingErrorReporter errors = new CountingErrorReporter();
+            final SCXMLExecutor executor = new SCXMLExecutor(null, null, errors);
+            executor.setStateMachine(document);
+            executor.go();
+            final Evaluator evaluator = executor.getEvaluator();
+            final Context context = executor.getGlobalContext();
+            final String cond = "null".equals(datamodel) ? "In(main)" : "In('main')";
+            try {
+                evaluator.evalCond(context, cond);
+            }
+            catch (SCXMLExpressionException e) {
+                // the datamodel can't evaluate anything in this runtime
+                first = appendResult(json, first, "triggerEvent." + datamodel, null, null);
+                first = appendResult(json, first, "evalCond." + datamodel, null, null);
+                first = appendResult(json, first, "evalAssign." + datamodel, null, null);
+                continue;
+            }
+            final TriggerEvent event = new TriggerEvent(BenchmarkCharts.EVENT, TriggerEvent.SIGNAL_EVENT);
+            first = appendResult(json, first, "triggerEvent." + datamodel, measure(iterations, new Operation() {
+                public void run() throws Exception {
+                    executor.triggerEvent(event);
+                }
+            }), errors);
+            first = appendResult(json, first, "evalCond." + datamodel, measure(iterations, new Operation() {
+                public void run() throws Exception {
+                    evaluator.evalCond(context, cond);
+                }
+            }), null);
+            if ("null".equals(datamodel)) {
+                first = appendResult(json, first, "evalAssign." + datamodel, null, null);
+                continue;
+            }
+            final String location = "xpath".equals(datamodel) ? "$" + BenchmarkCharts.DATA_ID : BenchmarkCharts.DATA_ID;
+            final Integer value = 1;
+            first = appendResult(json, first, "evalAssign." + datamodel, measure(iterations, new Operation() {
+                public void run() throws Exception {
+                    evaluator.evalAssign(context, location, value, Evaluator.AssignType.REPLACE_CHILDREN, null);
+                }
+            }), null);
+        }
+
+        final SCXML jsDocument = read(BenchmarkCharts.generate("ecmascript", depth, breadth, fanOut));
+        for (boolean cached : new boolean[] {false, true}) {
+            final String mode = cached ? "cached" : "uncached";
+            final CountingErrorReporter errors = new CountingErrorReporter();
+            final SCXMLExecutor executor = new SCXMLExecutor(new JSEvaluator(cached), null, errors);
+            executor.setStateMachine(jsDocument);
+            executor.go();
+            final Evaluator evaluator = executor.getEvaluator();
+            final Context context = executor.getGlobalContext();
+            try {
+                evaluator.evalCond(context, "In('main')");
+            }
+            catch (SCXMLExpressionException e) {
+                // no Javascript engine in this runtime
+                first = appendResult(json, first, "triggerEvent.ecmascript." + mode, null, null);
+                first = appendResult(json, first, "evalCond.ecmascript." + mode, null, null);
+                continue;
+            }
+            final TriggerEvent event = new TriggerEvent(BenchmarkCharts.EVENT, TriggerEvent.SIGNAL_EVENT);
+            first = appendResult(json, first, "triggerEvent.ecmascript." + mode, measure(iterations, new Operation() {
+                public void run() throws Exception {
+                    executor.triggerEvent(event);
+                }
+            }), errors);
+            first = appendResult(json, first, "evalCond.ecmascript." + mode, measure(iterations, new Operation() {
+                public void run() throws Exception {
+                    evaluator.evalCond(context, "In('main')");
+                }
+            }), null);
+        }
+
+        final Map<String, SCXMLIOProcessor> ioProcessors = new HashMap<String, SCXMLIOProcessor>();
+        ioProcessors.put(SCXMLIOProcessor.SCXML_EVENT_PROCESSOR, new SCXMLIOProcessor() {
+            public void addEvent(final TriggerEvent event) {
+            }
+        });
+        final SimpleDispatcher[] dispatchers = {new SimpleDispatcher(), new TimerWheelDispatcher()};
+        for (final SimpleDispatcher dispatcher : dispatchers) {
+            first = appendResult(json, first, "send." + dispatcher.getClass().getSimpleName(),
+                    measure(iterations, new Operation() {
+                        public void run() throws Exception {
+                            dispatcher.send(ioProcessors, "benchmark", null, null, BenchmarkCharts.EVENT, null, null,
+                                    60000L);
+                            dispatcher.cancel("benchmark");
+                        }
+                    }), null);
+        }
+        json.append("\n  ]\n}\n");
+
+        if (args.length > 4) {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(args[4]), "UTF-8");
+            try {
+                writer.write(json.toString());
+            }
+            finally {
+                writer.close();
+            }
+        }
+        else {
+            System.out.print(json);
+        }
+        if (totalErrors > 0) {
+            throw new IllegalStateException(totalErrors + " error(s) reported while benchmarking, see the results");
+        }
+    }
+
+    private static SCXML read(final String chart) throws Exception {
+        return SCXMLReader.read(new StringReader(chart));
+    }
+
+    /**
+     * Measure an operation, after an equal number of warm-up iterations
+     * @return the average number of nanoseconds per operation
+     */
+    private static double measure(final int iterations, final Operation operation) throws Exception {
+        return measure(iterations, OPS_PER_ITERATION, operation);
+    }
+
+    /**
+     * Measure an operation, after an equal number of warm-up iterations
+     * @param opsPerIteration the number of operations per iteration
+     * @return the average number of nanoseconds per operation
+     */
+    private static double measure(final int iterations, final int opsPerIteration, final Operation operation)
+            throws Exception {
+        long nanos = 0L;
+        for (int i = 0; i < iterations * 2; i++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < opsPerIteration; j++) {
+                operation.run();
+            }
+            if (i >= iterations) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        return (double)nanos / ((long)iterations * opsPerIteration);
+    }
+
+    /**
+     * Append the result of a benchmark, including the errors reported by its executor(s) if any
+     * @param errors the error reporter of the executor(s) used by the benchmark, or null if none
+     */
+    private static boolean appendResult(final StringBuilder json, final boolean first, final String benchmark,
+                                        final Double nanosPerOp, final CountingErrorReporter errors) {
+        json.append(first ? "\n" : ",\n").append("    {\"benchmark\": \"").append(benchmark).append('"');
+        if (nanosPerOp == null) {
+            json.append(", \"skipped\": true}");
+        }
+        else {
+            json.append(", \"nanosPerOp\": ").append(String.format(Locale.ROOT, "%.1f", nanosPerOp))
+                    .append(", \"opsPerSecond\": ").append(String.format(Locale.ROOT, "%.1f", 1e9d / nanosPerOp));
+            if (errors != null && errors.errors > 0) {
+                totalErrors += errors.errors;
+                json.append(", \"errors\": ").append(errors.errors).append(", \"firstError\": \"")
+                        .append(errors.firstError.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            json.append('}');
+        }
+        return false;
+    }
+
+    /**
+     * Discourage instantiation since this is a utility class.
+     */
+    private StandaloneBenchmark() {
+        super();
+    }
+}